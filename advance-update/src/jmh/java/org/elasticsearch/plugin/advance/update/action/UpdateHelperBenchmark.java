@@ -0,0 +1,102 @@
+package org.elasticsearch.plugin.advance.update.action;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.get.GetResult;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.script.Script;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how {@link UpdateHelper} translates an update of an existing document: parsing the stored source, merging the
+ * partial document into it, or building the script context, and building the resulting index request.
+ * <p>
+ * The documents have <tt>fields</tt> leaves spread over <tt>depth</tt> levels of objects. An update changes a tenth of that
+ * number of leaves, <tt>overlap</tt> being the share of them that already exist in the document, the others being new.
+ * Script updates run without a script service, so they measure everything but the script itself.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class UpdateHelperBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int fields;
+
+    @Param({"1", "3", "6"})
+    public int depth;
+
+    @Param({"0.0", "0.5", "1.0"})
+    public double overlap;
+
+    @Param({"doc", "script"})
+    public String update;
+
+    private final ShardId shardId = new ShardId("index", "_na_", 0);
+    private UpdateHelper updateHelper;
+    private GetResult getResult;
+    private UpdateRequest updateRequest;
+
+    @Setup
+    public void setUp() throws IOException {
+        updateHelper = new UpdateHelper(Settings.EMPTY, null);
+        final Map<String, Object> source = new HashMap<>();
+        for (int i = 0; i < fields; i++) {
+            put(source, i, "f" + i, "value-" + i);
+        }
+        final BytesReference sourceBytes = XContentFactory.jsonBuilder().map(source).bytes();
+        getResult = new GetResult("index", "type", "1", 1L, true, sourceBytes, Collections.emptyMap());
+
+        updateRequest = new UpdateRequest("index", "type", "1");
+        if ("script".equals(update)) {
+            updateRequest.script(new Script("ctx._source.f0 = params.value"));
+        } else {
+            final int changes = Math.max(1, fields / 10);
+            final int existing = (int) Math.round(changes * overlap);
+            final Map<String, Object> doc = new HashMap<>();
+            for (int i = 0; i < changes; i++) {
+                put(doc, i, i < existing ? "f" + i : "g" + i, "changed-" + i);
+            }
+            updateRequest.doc(doc);
+        }
+    }
+
+    /**
+     * Puts the leaf below <tt>depth - 1</tt> levels of objects, picking one of four objects on every level.
+     */
+    @SuppressWarnings("unchecked")
+    private void put(Map<String, Object> map, int leaf, String name, Object value) {
+        Map<String, Object> current = map;
+        int branch = leaf;
+        for (int level = 1; level < depth; level++) {
+            current = (Map<String, Object>) current.computeIfAbsent("o" + (branch % 4), k -> new HashMap<String, Object>());
+            branch /= 4;
+        }
+        current.put(name, value);
+    }
+
+    @Benchmark
+    public UpdateHelper.Result prepare() {
+        return updateHelper.prepare(shardId, updateRequest, getResult, System::currentTimeMillis);
+    }
+}
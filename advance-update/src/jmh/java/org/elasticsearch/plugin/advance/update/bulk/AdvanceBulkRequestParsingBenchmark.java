@@ -0,0 +1,103 @@
+package org.elasticsearch.plugin.advance.update.bulk;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast the coordinating node parses an <tt>_advancebulk</tt> body into its items. Every invocation parses a
+ * body of {@link #ITEMS} items and counts as that many operations, so the throughput is in items per second and the
+ * <tt>gc.alloc.rate.norm</tt> of the GC profiler in bytes allocated per item.
+ * <p>
+ * <tt>mix</tt> is the ratio of index, update and delete items, <tt>fields</tt> the number of fields of their documents, and
+ * <tt>format</tt> the content type and line ending of the body.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class AdvanceBulkRequestParsingBenchmark {
+
+    static final int ITEMS = 1000;
+
+    @Param({"1:0:0", "0:1:0", "1:2:1"})
+    public String mix;
+
+    @Param({"5", "50", "500"})
+    public int fields;
+
+    @Param({"json_lf", "json_crlf", "smile"})
+    public String format;
+
+    private XContentType xContentType;
+    private BytesReference body;
+
+    @Setup
+    public void setUp() throws IOException {
+        final String[] ratio = mix.split(":");
+        final int indexWeight = Integer.parseInt(ratio[0]);
+        final int updateWeight = Integer.parseInt(ratio[1]);
+        final int totalWeight = indexWeight + updateWeight + Integer.parseInt(ratio[2]);
+        xContentType = format.startsWith("json") ? XContentType.JSON : XContentType.SMILE;
+        final Random random = new Random(42);
+        final BytesStreamOutput out = new BytesStreamOutput();
+        for (int i = 0; i < ITEMS; i++) {
+            final int pick = random.nextInt(totalWeight);
+            final String action = pick < indexWeight ? "index" : pick < indexWeight + updateWeight ? "update" : "delete";
+            XContentBuilder metadata = XContentFactory.contentBuilder(xContentType).startObject()
+                .startObject(action).field("_index", "index").field("_type", "type").field("_id", Integer.toString(i))
+                .endObject().endObject();
+            writeLine(out, metadata);
+            if ("delete".equals(action)) {
+                continue;
+            }
+            XContentBuilder source = XContentFactory.contentBuilder(xContentType).startObject();
+            if ("update".equals(action)) {
+                source.startObject("doc");
+            }
+            for (int f = 0; f < fields; f++) {
+                source.field("field" + f, f % 2 == 0 ? (Object) random.nextLong() : "value-" + random.nextInt());
+            }
+            if ("update".equals(action)) {
+                source.endObject();
+            }
+            writeLine(out, source.endObject());
+        }
+        body = new BytesArray(BytesReference.toBytes(out.bytes()));
+    }
+
+    private void writeLine(BytesStreamOutput out, XContentBuilder line) throws IOException {
+        line.bytes().writeTo(out);
+        if ("json_crlf".equals(format)) {
+            out.writeByte((byte) '\r');
+        }
+        out.writeByte(xContentType.xContent().streamSeparator());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public AdvanceBulkRequest parse() throws Exception {
+        return new AdvanceBulkRequest().add(body, null, null, null, null, null, null, null, true, xContentType);
+    }
+}
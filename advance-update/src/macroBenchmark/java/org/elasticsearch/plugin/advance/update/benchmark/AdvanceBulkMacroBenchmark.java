@@ -0,0 +1,307 @@
+package org.elasticsearch.plugin.advance.update.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares <tt>_advancebulk</tt> with the update of the core <tt>_bulk</tt> on a running cluster, which the
+ * <tt>macroBenchmark</tt> task of the build starts with two nodes and the plugin installed.
+ * <p>
+ * For every number of replicas and workload the benchmark index is created again and loaded with a synthetic corpus, then
+ * both APIs send the same kind of update bulks from concurrent clients. The docs per second and the p50 and p99 latency of
+ * the bulks are printed and written as JSON to the output file.
+ * <p>
+ * Arguments: the comma separated <tt>host:port</tt> of the HTTP endpoints, the output file, and optionally <tt>key=value</tt>
+ * pairs overriding the {@link #DEFAULTS}.
+ */
+public class AdvanceBulkMacroBenchmark {
+
+    static final String INDEX = "advance-bulk-benchmark";
+
+    static final Map<String, Integer> DEFAULTS;
+
+    static {
+        Map<String, Integer> defaults = new HashMap<>();
+        defaults.put("docs", 100_000);       // documents of the corpus
+        defaults.put("bulk_size", 500);      // items per bulk
+        defaults.put("bulks", 400);          // measured bulks per API and workload
+        defaults.put("warmup_bulks", 40);    // bulks sent before measuring
+        defaults.put("clients", 4);          // concurrent clients
+        defaults.put("hot_docs", 100);       // documents the conflict heavy workload updates
+        defaults.put("fields", 20);          // fields of a document
+        DEFAULTS = defaults;
+    }
+
+    enum Workload {
+        /** updates of random documents of the corpus */
+        UPDATE,
+        /** concurrent updates of a few hot documents, retried on conflict */
+        CONFLICT,
+        /** updates with doc_as_upsert, mostly of documents that don't exist yet */
+        UPSERT
+    }
+
+    private final String[] hosts;
+    private final Map<String, Integer> options;
+    private final AtomicLong upsertIds = new AtomicLong();
+
+    AdvanceBulkMacroBenchmark(String[] hosts, Map<String, Integer> options) {
+        this.hosts = hosts;
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("usage: AdvanceBulkMacroBenchmark <host:port,...> <output file> [key=value ...]");
+        }
+        final Map<String, Integer> options = new HashMap<>(DEFAULTS);
+        for (String arg : Arrays.copyOfRange(args, 2, args.length)) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2 || DEFAULTS.containsKey(option[0]) == false) {
+                throw new IllegalArgumentException("unknown option [" + arg + "], expected one of " + DEFAULTS.keySet());
+            }
+            options.put(option[0], Integer.parseInt(option[1]));
+        }
+        final AdvanceBulkMacroBenchmark benchmark = new AdvanceBulkMacroBenchmark(args[0].split(","), options);
+        final List<Result> results = new ArrayList<>();
+        for (int replicas = 0; replicas <= 1; replicas++) {
+            for (Workload workload : Workload.values()) {
+                for (String api : new String[] {"_bulk", "_advancebulk"}) {
+                    Result result = benchmark.run(api, replicas, workload);
+                    System.out.println(result);
+                    results.add(result);
+                }
+            }
+        }
+        final Path output = Paths.get(args[1]);
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        final StringBuilder json = new StringBuilder("{\"options\":{");
+        options.forEach((key, value) -> json.append('"').append(key).append("\":").append(value).append(','));
+        json.setLength(json.length() - 1);
+        json.append("},\"results\":[");
+        for (int i = 0; i < results.size(); i++) {
+            json.append(i == 0 ? "" : ",").append(results.get(i).toJson());
+        }
+        Files.write(output, json.append("]}").toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    Result run(String api, int replicas, Workload workload) throws Exception {
+        createIndex(replicas);
+        loadCorpus();
+        final int clients = options.get("clients");
+        final int warmupBulks = options.get("warmup_bulks");
+        final int bulks = options.get("bulks");
+        sendBulks(api, workload, clients, warmupBulks, new long[warmupBulks], new AtomicLong());
+
+        final long[] latencies = new long[bulks];
+        final AtomicLong failedItems = new AtomicLong();
+        final long start = System.nanoTime();
+        sendBulks(api, workload, clients, bulks, latencies, failedItems);
+        final long tookNanos = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        return new Result(api, replicas, workload, (long) bulks * options.get("bulk_size"), failedItems.get(), tookNanos,
+            percentile(latencies, 0.50), percentile(latencies, 0.99));
+    }
+
+    private void createIndex(int replicas) throws IOException {
+        request("DELETE", "/" + INDEX, null, 404);
+        request("PUT", "/" + INDEX, "{\"settings\":{\"number_of_shards\":2,\"number_of_replicas\":" + replicas + "}}");
+        request("GET", "/_cluster/health/" + INDEX + "?wait_for_status=green&timeout=60s", null);
+    }
+
+    private void loadCorpus() throws IOException {
+        final int docs = options.get("docs");
+        final StringBuilder bulk = new StringBuilder();
+        for (int id = 0; id < docs; id++) {
+            bulk.append("{\"index\":{\"_index\":\"").append(INDEX).append("\",\"_type\":\"doc\",\"_id\":\"").append(id)
+                .append("\"}}\n").append(document(id)).append('\n');
+            if ((id + 1) % 1000 == 0 || id == docs - 1) {
+                request("POST", "/_bulk", bulk.toString());
+                bulk.setLength(0);
+            }
+        }
+        request("POST", "/" + INDEX + "/_refresh", null);
+        upsertIds.set(docs);
+    }
+
+    private String document(long id) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final StringBuilder doc = new StringBuilder("{\"id\":").append(id);
+        for (int f = 0; f < options.get("fields"); f++) {
+            doc.append(",\"field").append(f).append("\":");
+            if (f % 2 == 0) {
+                doc.append(random.nextLong());
+            } else {
+                doc.append("\"value-").append(random.nextInt(1000)).append('"');
+            }
+        }
+        return doc.append('}').toString();
+    }
+
+    private void sendBulks(String api, Workload workload, int clients, int bulks, long[] latencies, AtomicLong failedItems)
+        throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            final AtomicLong next = new AtomicLong();
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                final String host = hosts[c % hosts.length];
+                futures.add(executor.submit(() -> {
+                    for (int b = (int) next.getAndIncrement(); b < bulks; b = (int) next.getAndIncrement()) {
+                        final String body = updateBulk(workload);
+                        final long start = System.nanoTime();
+                        final String response = send(host, "POST", "/" + api, body);
+                        latencies[b] = System.nanoTime() - start;
+                        failedItems.addAndGet(countFailures(response));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private String updateBulk(Workload workload) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final StringBuilder bulk = new StringBuilder();
+        for (int i = 0; i < options.get("bulk_size"); i++) {
+            final long id;
+            switch (workload) {
+                case CONFLICT:
+                    id = random.nextInt(options.get("hot_docs"));
+                    break;
+                case UPSERT:
+                    // nine in ten upserts create a document
+                    id = random.nextInt(10) == 0 ? random.nextInt(options.get("docs")) : upsertIds.getAndIncrement();
+                    break;
+                default:
+                    id = random.nextInt(options.get("docs"));
+            }
+            bulk.append("{\"update\":{\"_index\":\"").append(INDEX).append("\",\"_type\":\"doc\",\"_id\":\"").append(id).append('"');
+            if (workload == Workload.CONFLICT) {
+                bulk.append(",\"_retry_on_conflict\":3");
+            }
+            bulk.append("}}\n{\"doc\":").append(document(id));
+            if (workload == Workload.UPSERT) {
+                bulk.append(",\"doc_as_upsert\":true");
+            }
+            bulk.append("}\n");
+        }
+        return bulk.toString();
+    }
+
+    /**
+     * Counts the items that failed, by their <tt>error</tt> objects, without parsing the whole response.
+     */
+    static long countFailures(String response) {
+        if (response.contains("\"errors\":false")) {
+            return 0;
+        }
+        long failures = 0;
+        for (int i = response.indexOf("\"error\":{"); i >= 0; i = response.indexOf("\"error\":{", i + 1)) {
+            failures++;
+        }
+        return failures;
+    }
+
+    static long percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private String request(String method, String path, String body, int... ignoredStatuses) throws IOException {
+        return send(hosts[0], method, path, body, ignoredStatuses);
+    }
+
+    private static String send(String host, String method, String path, String body, int... ignoredStatuses)
+        throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http://" + host + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", path.endsWith("bulk") ? "application/x-ndjson" : "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        final int status = connection.getResponseCode();
+        final boolean ok = status < 300 || Arrays.stream(ignoredStatuses).anyMatch(ignored -> ignored == status);
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            final ByteArrayOutputStream response = new ByteArrayOutputStream();
+            if (in != null) {
+                final byte[] buffer = new byte[8192];
+                for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                    response.write(buffer, 0, read);
+                }
+            }
+            final String content = new String(response.toByteArray(), StandardCharsets.UTF_8);
+            if (ok == false) {
+                throw new IOException(method + " " + path + " failed with [" + status + "]: " + content);
+            }
+            return content;
+        }
+    }
+
+    static final class Result {
+        final String api;
+        final int replicas;
+        final Workload workload;
+        final long items;
+        final long failedItems;
+        final long tookNanos;
+        final long p50Nanos;
+        final long p99Nanos;
+
+        Result(String api, int replicas, Workload workload, long items, long failedItems, long tookNanos, long p50Nanos,
+               long p99Nanos) {
+            this.api = api;
+            this.replicas = replicas;
+            this.workload = workload;
+            this.items = items;
+            this.failedItems = failedItems;
+            this.tookNanos = tookNanos;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+        }
+
+        double docsPerSecond() {
+            return items * (double) TimeUnit.SECONDS.toNanos(1) / tookNanos;
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT, "{\"api\":\"%s\",\"replicas\":%d,\"workload\":\"%s\",\"items\":%d," +
+                    "\"failed_items\":%d,\"docs_per_second\":%.1f,\"p50_millis\":%.2f,\"p99_millis\":%.2f}", api, replicas,
+                workload.name().toLowerCase(Locale.ROOT), items, failedItems, docsPerSecond(), p50Nanos / 1e6, p99Nanos / 1e6);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-12s replicas=%d %-8s %10.1f docs/s  p50 %8.2fms  p99 %8.2fms  failed %d", api,
+                replicas, workload, docsPerSecond(), p50Nanos / 1e6, p99Nanos / 1e6, failedItems);
+        }
+    }
+}
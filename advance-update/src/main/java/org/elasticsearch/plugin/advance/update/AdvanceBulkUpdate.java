@@ -7,28 +7,103 @@ import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.IndexScopedSettings;
+import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.SettingsFilter;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.plugin.advance.update.action.ConflictBackoffPolicy;
+import org.elasticsearch.plugin.advance.update.action.TransportUpdateAction;
+import org.elasticsearch.plugin.advance.update.action.UpdateAction;
+import org.elasticsearch.plugin.advance.update.action.UpdateHelper;
 import org.elasticsearch.plugin.advance.update.bulk.AdvanceBulkAction;
 import org.elasticsearch.plugin.advance.update.bulk.AdvanceBulkUpdateAction;
+import org.elasticsearch.plugin.advance.update.bulk.AdvanceRefreshCoalescer;
+import org.elasticsearch.plugin.advance.update.bulk.AdvanceShardBulkCoalescer;
 import org.elasticsearch.plugin.advance.update.bulk.AdvanceTransportBulkAction;
+import org.elasticsearch.plugin.advance.update.bulk.AdvanceUpdateSlowLog;
 import org.elasticsearch.plugin.advance.update.bulk.TransportShardAdvanceBulkAction;
+import org.elasticsearch.plugin.advance.update.byquery.AdvanceDropFieldsAction;
+import org.elasticsearch.plugin.advance.update.byquery.AdvanceUpdateByQueryAction;
+import org.elasticsearch.plugin.advance.update.byquery.TransportAdvanceDropFieldsAction;
+import org.elasticsearch.plugin.advance.update.byquery.TransportAdvanceUpdateByQueryAction;
+import org.elasticsearch.plugin.advance.update.jobs.AdvanceJobAction;
+import org.elasticsearch.plugin.advance.update.jobs.AdvanceJobService;
+import org.elasticsearch.plugin.advance.update.jobs.TransportAdvanceJobAction;
+import org.elasticsearch.plugin.advance.update.routing.AdvanceRoutingAction;
+import org.elasticsearch.plugin.advance.update.routing.TransportAdvanceRoutingAction;
+import org.elasticsearch.plugin.advance.update.rest.AdvanceUpdateAction;
+import org.elasticsearch.plugin.advance.update.rest.RestAdvanceDropFieldsAction;
+import org.elasticsearch.plugin.advance.update.rest.RestAdvanceJobAction;
+import org.elasticsearch.plugin.advance.update.rest.RestAdvanceRoutingAction;
+import org.elasticsearch.plugin.advance.update.rest.RestAdvanceUpdateStatsAction;
+import org.elasticsearch.plugin.advance.update.rest.RestAdvanceUpdateByQueryAction;
+import org.elasticsearch.plugin.advance.update.stats.AdvanceUpdateStatsAction;
+import org.elasticsearch.plugin.advance.update.stats.TransportAdvanceUpdateStatsAction;
 import org.elasticsearch.plugins.ActionPlugin;
 import org.elasticsearch.plugins.Plugin;
 import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestHandler;
+import org.elasticsearch.threadpool.ExecutorBuilder;
+import org.elasticsearch.threadpool.FixedExecutorBuilder;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.function.Supplier;
 
 public class AdvanceBulkUpdate extends Plugin implements ActionPlugin {
 
+    /**
+     * Executor used on the coordinating node to parse advance bulk bodies and to resolve and group the items per shard.
+     */
+    public static final String COORDINATING_THREAD_POOL_NAME = "advance_bulk_coordinating";
+
+    /**
+     * Executor the shard level advance bulk runs on, both on the primary and on the replicas. The replication action binds a
+     * single executor for both phases; replica operations are always force-executed, so the queue only bounds primary work.
+     */
+    public static final String WRITE_THREAD_POOL_NAME = "advance_bulk_write";
+
+    /**
+     * Executor single document advance updates are translated and executed on.
+     */
+    public static final String UPDATE_THREAD_POOL_NAME = "advance_update";
+
+    @Override
+    public List<ExecutorBuilder<?>> getExecutorBuilders(Settings settings) {
+        final int availableProcessors = EsExecutors.numberOfProcessors(settings);
+        List<ExecutorBuilder<?>> executorBuilders = new ArrayList<>();
+        executorBuilders.add(new FixedExecutorBuilder(settings, COORDINATING_THREAD_POOL_NAME, availableProcessors, 50));
+        executorBuilders.add(new FixedExecutorBuilder(settings, WRITE_THREAD_POOL_NAME, availableProcessors, 200));
+        executorBuilders.add(new FixedExecutorBuilder(settings, UPDATE_THREAD_POOL_NAME, availableProcessors, 200));
+        return executorBuilders;
+    }
+
+    @Override
+    public List<Setting<?>> getSettings() {
+        List<Setting<?>> settings = new ArrayList<>();
+        settings.add(AdvanceTransportBulkAction.INGEST_CONCURRENCY_SETTING);
+        settings.add(AdvanceTransportBulkAction.INGEST_MIN_CHUNK_SIZE_SETTING);
+        settings.addAll(ConflictBackoffPolicy.getSettings());
+        settings.addAll(AdvanceShardBulkCoalescer.getSettings());
+        settings.addAll(AdvanceRefreshCoalescer.getSettings());
+        settings.addAll(AdvanceUpdateSlowLog.getSettings());
+        settings.addAll(UpdateHelper.getSettings());
+        settings.addAll(AdvanceJobService.getSettings());
+        return settings;
+    }
+
     @Override
     public List<ActionHandler<? extends ActionRequest, ? extends ActionResponse>> getActions() {
         GenericAction instance = AdvanceBulkAction.INSTANCE;
-        return Collections.singletonList(new ActionHandler<>(instance, AdvanceTransportBulkAction.class, TransportShardAdvanceBulkAction.class));
+        List<ActionHandler<? extends ActionRequest, ? extends ActionResponse>> actions = new ArrayList<>();
+        actions.add(new ActionHandler<>(instance, AdvanceTransportBulkAction.class, TransportShardAdvanceBulkAction.class));
+        actions.add(new ActionHandler<>(UpdateAction.INSTANCE, TransportUpdateAction.class));
+        actions.add(new ActionHandler<>(AdvanceUpdateByQueryAction.INSTANCE, TransportAdvanceUpdateByQueryAction.class));
+        actions.add(new ActionHandler<>(AdvanceDropFieldsAction.INSTANCE, TransportAdvanceDropFieldsAction.class));
+        actions.add(new ActionHandler<>(AdvanceJobAction.INSTANCE, TransportAdvanceJobAction.class));
+        actions.add(new ActionHandler<>(AdvanceRoutingAction.INSTANCE, TransportAdvanceRoutingAction.class));
+        actions.add(new ActionHandler<>(AdvanceUpdateStatsAction.INSTANCE, TransportAdvanceUpdateStatsAction.class));
+        return actions;
     }
 
     @Override
@@ -42,6 +117,12 @@ public class AdvanceBulkUpdate extends Plugin implements ActionPlugin {
         AdvanceBulkUpdateAction handler = new AdvanceBulkUpdateAction(settings, restController);
         List<RestHandler> listHandlers = new ArrayList<>();
         listHandlers.add(handler);
+        listHandlers.add(new AdvanceUpdateAction(settings, restController));
+        listHandlers.add(new RestAdvanceUpdateByQueryAction(settings, restController));
+        listHandlers.add(new RestAdvanceDropFieldsAction(settings, restController));
+        listHandlers.add(new RestAdvanceJobAction(settings, restController));
+        listHandlers.add(new RestAdvanceRoutingAction(settings, restController));
+        listHandlers.add(new RestAdvanceUpdateStatsAction(settings, restController));
         return listHandlers;
     }
 
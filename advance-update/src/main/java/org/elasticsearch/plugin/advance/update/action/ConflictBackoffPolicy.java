@@ -0,0 +1,73 @@
+package org.elasticsearch.plugin.advance.update.action;
+
+import org.elasticsearch.common.Randomness;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decides how long an update waits before it is retried after a version conflict. The delay grows exponentially with the number
+ * of retries up to a maximum, and is randomized by the configured jitter so that updates racing on the same document don't
+ * conflict again in lock step.
+ */
+@Singleton
+public class ConflictBackoffPolicy extends AbstractComponent {
+
+    public static final Setting<TimeValue> INITIAL_BACKOFF_SETTING =
+        Setting.timeSetting("advance_update.retry_on_conflict.initial_backoff", TimeValue.timeValueMillis(10),
+            TimeValue.timeValueMillis(0), Property.NodeScope);
+
+    public static final Setting<TimeValue> MAX_BACKOFF_SETTING =
+        Setting.timeSetting("advance_update.retry_on_conflict.max_backoff", TimeValue.timeValueSeconds(1),
+            TimeValue.timeValueMillis(0), Property.NodeScope);
+
+    /**
+     * The fraction of the exponential delay that is randomized, <code>0</code> always waits the full delay.
+     */
+    public static final Setting<Double> JITTER_SETTING =
+        Setting.doubleSetting("advance_update.retry_on_conflict.jitter", 0.5, 0.0, Property.NodeScope);
+
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final double jitter;
+
+    @Inject
+    public ConflictBackoffPolicy(Settings settings) {
+        super(settings);
+        this.initialBackoffMillis = INITIAL_BACKOFF_SETTING.get(settings).millis();
+        this.maxBackoffMillis = MAX_BACKOFF_SETTING.get(settings).millis();
+        this.jitter = Math.min(1.0, JITTER_SETTING.get(settings));
+    }
+
+    public static List<Setting<?>> getSettings() {
+        return Arrays.asList(INITIAL_BACKOFF_SETTING, MAX_BACKOFF_SETTING, JITTER_SETTING);
+    }
+
+    /**
+     * Returns whether an update that ran into a version conflict is allowed to retry it.
+     * @param retryCount the number of retries that were already done
+     * @param retryOnConflict the number of retries the request allows
+     */
+    public boolean onConflict(int retryCount, int retryOnConflict) {
+        return retryCount < retryOnConflict;
+    }
+
+    /**
+     * The delay before the next attempt of an update that was already retried <code>retryCount</code> times.
+     */
+    public TimeValue nextDelay(int retryCount) {
+        long delay = initialBackoffMillis << Math.min(retryCount, 30);
+        if (delay < 0 || delay > maxBackoffMillis) {
+            delay = maxBackoffMillis;
+        }
+        long randomized = (long) (delay * jitter * Randomness.get().nextDouble());
+        return TimeValue.timeValueMillis(delay - randomized);
+    }
+}
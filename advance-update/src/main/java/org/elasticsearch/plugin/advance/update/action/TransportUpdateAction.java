@@ -19,20 +19,17 @@
 
 package org.elasticsearch.plugin.advance.update.action;
 
-import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.ResourceAlreadyExistsException;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRunnable;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
 import org.elasticsearch.action.RoutingMissingException;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
 import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
 import org.elasticsearch.action.admin.indices.create.TransportCreateIndexAction;
 import org.elasticsearch.action.delete.DeleteRequest;
-import org.elasticsearch.action.delete.DeleteResponse;
-import org.elasticsearch.action.delete.TransportDeleteAction;
 import org.elasticsearch.action.index.IndexRequest;
-import org.elasticsearch.action.index.IndexResponse;
-import org.elasticsearch.action.index.TransportIndexAction;
 import org.elasticsearch.action.support.ActionFilters;
 import org.elasticsearch.action.support.AutoCreateIndex;
 import org.elasticsearch.action.support.TransportActions;
@@ -49,6 +46,7 @@ import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.io.stream.NotSerializableExceptionWrapper;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.IndexService;
@@ -56,6 +54,9 @@ import org.elasticsearch.index.engine.VersionConflictEngineException;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.plugin.advance.update.AdvanceBulkUpdate;
+import org.elasticsearch.plugin.advance.update.bulk.AdvanceShardBulkCoalescer;
+import org.elasticsearch.plugin.advance.update.stats.AdvanceUpdateStats;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportService;
 
@@ -68,30 +69,34 @@ import static org.elasticsearch.ExceptionsHelper.unwrapCause;
  */
 public class TransportUpdateAction extends TransportInstanceSingleOperationAction<UpdateRequest, UpdateResponse> {
 
-    private final TransportDeleteAction deleteAction;
-    private final TransportIndexAction indexAction;
+    private final AdvanceShardBulkCoalescer shardBulkCoalescer;
+    private final boolean allowIdGeneration;
     private final AutoCreateIndex autoCreateIndex;
     private final TransportCreateIndexAction createIndexAction;
     private final UpdateHelper updateHelper;
+    private final ConflictBackoffPolicy backoffPolicy;
     private final IndicesService indicesService;
+    private final AdvanceUpdateStats stats;
 
     @Inject
     public TransportUpdateAction(Settings settings, ThreadPool threadPool, ClusterService clusterService, TransportService transportService,
-                                 TransportIndexAction indexAction, TransportDeleteAction deleteAction, TransportCreateIndexAction createIndexAction,
-                                 UpdateHelper updateHelper, ActionFilters actionFilters, IndexNameExpressionResolver indexNameExpressionResolver,
-                                 IndicesService indicesService, AutoCreateIndex autoCreateIndex) {
+                                 AdvanceShardBulkCoalescer shardBulkCoalescer, TransportCreateIndexAction createIndexAction,
+                                 UpdateHelper updateHelper, ConflictBackoffPolicy backoffPolicy, ActionFilters actionFilters, IndexNameExpressionResolver indexNameExpressionResolver,
+                                 IndicesService indicesService, AutoCreateIndex autoCreateIndex, AdvanceUpdateStats stats) {
         super(settings, UpdateAction.NAME, threadPool, clusterService, transportService, actionFilters, indexNameExpressionResolver, UpdateRequest::new);
-        this.indexAction = indexAction;
-        this.deleteAction = deleteAction;
+        this.shardBulkCoalescer = shardBulkCoalescer;
+        this.allowIdGeneration = settings.getAsBoolean("action.allow_id_generation", true);
         this.createIndexAction = createIndexAction;
         this.updateHelper = updateHelper;
+        this.backoffPolicy = backoffPolicy;
         this.indicesService = indicesService;
         this.autoCreateIndex = autoCreateIndex;
+        this.stats = stats;
     }
 
     @Override
     protected String executor() {
-        return ThreadPool.Names.INDEX;
+        return AdvanceBulkUpdate.UPDATE_THREAD_POOL_NAME;
     }
 
     @Override
@@ -176,15 +181,23 @@ public class TransportUpdateAction extends TransportInstanceSingleOperationActio
         final ShardId shardId = request.getShardId();
         final IndexService indexService = indicesService.indexServiceSafe(shardId.getIndex());
         final IndexShard indexShard = indexService.getShard(shardId.getId());
+        if (retryCount == 0) {
+            // the write the update translates to is counted once more, with its result, by the shard bulk it runs in
+            stats.onItem(DocWriteRequest.OpType.UPDATE, AdvanceUpdateStats.sourceBytes(request));
+        }
         final UpdateHelper.Result result = updateHelper.prepare(request, indexShard, threadPool::absoluteTimeInMillis);
+        // this already runs on the node of the primary, so the translated write is applied to the resolved shard directly
+        // instead of going through the index and delete actions, which would resolve and route it once more
         switch (result.getResponseResult()) {
             case CREATED:
                 IndexRequest upsertRequest = result.action();
+                upsertRequest.process(indexShard.indexSettings().getIndexMetaData().mappingOrDefault(upsertRequest.type()),
+                    allowIdGeneration, request.concreteIndex());
                 // we fetch it from the index request so we don't generate the bytes twice, its already done in the index request
                 final BytesReference upsertSourceBytes = upsertRequest.source();
-                indexAction.execute(upsertRequest, new ActionListener<IndexResponse>() {
+                shardBulkCoalescer.executeSingleItem(shardId, upsertRequest, request.getParentTask(), new ActionListener<DocWriteResponse>() {
                     @Override
-                    public void onResponse(IndexResponse response) {
+                    public void onResponse(DocWriteResponse response) {
                         UpdateResponse update = new UpdateResponse(response.getShardInfo(), response.getShardId(), response.getType(), response.getId(), response.getVersion(), response.getResult());
                         if ((request.fetchSource() != null && request.fetchSource().fetchSource()) ||
                             (request.fields() != null && request.fields().length > 0)) {
@@ -200,21 +213,7 @@ public class TransportUpdateAction extends TransportInstanceSingleOperationActio
 
                     @Override
                     public void onFailure(Exception e) {
-                        final Throwable cause = ExceptionsHelper.unwrapCause(e);
-                        if (cause instanceof VersionConflictEngineException) {
-                            if (retryCount < request.retryOnConflict()) {
-                                logger.trace("Retry attempt [{}] of [{}] on version conflict on [{}][{}][{}]",
-                                        retryCount + 1, request.retryOnConflict(), request.index(), request.getShardId(), request.id());
-                                threadPool.executor(executor()).execute(new ActionRunnable<UpdateResponse>(listener) {
-                                    @Override
-                                    protected void doRun() {
-                                        shardOperation(request, listener, retryCount + 1);
-                                    }
-                                });
-                                return;
-                            }
-                        }
-                        listener.onFailure(cause instanceof Exception ? (Exception) cause : new NotSerializableExceptionWrapper(cause));
+                        onOperationFailure(request, listener, retryCount, e);
                     }
                 });
                 break;
@@ -222,38 +221,37 @@ public class TransportUpdateAction extends TransportInstanceSingleOperationActio
                 IndexRequest indexRequest = result.action();
                 // we fetch it from the index request so we don't generate the bytes twice, its already done in the index request
                 final BytesReference indexSourceBytes = indexRequest.source();
-                indexAction.execute(indexRequest, new ActionListener<IndexResponse>() {
-                    @Override
-                    public void onResponse(IndexResponse response) {
-                        UpdateResponse update = new UpdateResponse(response.getShardInfo(), response.getShardId(), response.getType(), response.getId(), response.getVersion(), response.getResult());
-                        update.setGetResult(updateHelper.extractGetResult(request, request.concreteIndex(), response.getVersion(), result.updatedSourceAsMap(), result.updateSourceContentType(), indexSourceBytes));
-                        update.setForcedRefresh(response.forcedRefresh());
-                        listener.onResponse(update);
-                    }
+                try {
+                    indexRequest.process(indexShard.indexSettings().getIndexMetaData().mappingOrDefault(indexRequest.type()),
+                        allowIdGeneration, request.concreteIndex());
+                    shardBulkCoalescer.executeSingleItem(shardId, indexRequest, request.getParentTask(), new ActionListener<DocWriteResponse>() {
+                        @Override
+                        public void onResponse(DocWriteResponse response) {
+                            UpdateResponse update = new UpdateResponse(response.getShardInfo(), response.getShardId(), response.getType(), response.getId(), response.getVersion(), response.getResult());
+                            update.setGetResult(updateHelper.extractGetResult(request, request.concreteIndex(), response.getVersion(), result.updatedSourceAsMap(), result.updateSourceContentType(), indexSourceBytes));
+                            update.setForcedRefresh(response.forcedRefresh());
+                            // the shard bulk was replicated, the recycled pages of the source can be reused
+                            result.close();
+                            listener.onResponse(update);
+                        }
 
-                    @Override
-                    public void onFailure(Exception e) {
-                        final Throwable cause = unwrapCause(e);
-                        if (cause instanceof VersionConflictEngineException) {
-                            if (retryCount < request.retryOnConflict()) {
-                                threadPool.executor(executor()).execute(new ActionRunnable<UpdateResponse>(listener) {
-                                    @Override
-                                    protected void doRun() {
-                                        shardOperation(request, listener, retryCount + 1);
-                                    }
-                                });
-                                return;
-                            }
+                        @Override
+                        public void onFailure(Exception e) {
+                            result.close();
+                            onOperationFailure(request, listener, retryCount, e);
                         }
-                        listener.onFailure(cause instanceof Exception ? (Exception) cause : new NotSerializableExceptionWrapper(cause));
-                    }
-                });
+                    });
+                } catch (RuntimeException e) {
+                    // the shard bulk was never sent, nothing else releases the pages of the source
+                    result.close();
+                    throw e;
+                }
                 break;
             case DELETED:
                 DeleteRequest deleteRequest = result.action();
-                deleteAction.execute(deleteRequest, new ActionListener<DeleteResponse>() {
+                shardBulkCoalescer.executeSingleItem(shardId, deleteRequest, request.getParentTask(), new ActionListener<DocWriteResponse>() {
                     @Override
-                    public void onResponse(DeleteResponse response) {
+                    public void onResponse(DocWriteResponse response) {
                         UpdateResponse update = new UpdateResponse(response.getShardInfo(), response.getShardId(), response.getType(), response.getId(), response.getVersion(), response.getResult());
                         update.setGetResult(updateHelper.extractGetResult(request, request.concreteIndex(), response.getVersion(), result.updatedSourceAsMap(), result.updateSourceContentType(), null));
                         update.setForcedRefresh(response.forcedRefresh());
@@ -262,19 +260,7 @@ public class TransportUpdateAction extends TransportInstanceSingleOperationActio
 
                     @Override
                     public void onFailure(Exception e) {
-                        final Throwable cause = unwrapCause(e);
-                        if (cause instanceof VersionConflictEngineException) {
-                            if (retryCount < request.retryOnConflict()) {
-                                threadPool.executor(executor()).execute(new ActionRunnable<UpdateResponse>(listener) {
-                                    @Override
-                                    protected void doRun() {
-                                        shardOperation(request, listener, retryCount + 1);
-                                    }
-                                });
-                                return;
-                            }
-                        }
-                        listener.onFailure(cause instanceof Exception ? (Exception) cause : new NotSerializableExceptionWrapper(cause));
+                        onOperationFailure(request, listener, retryCount, e);
                     }
                 });
                 break;
@@ -287,10 +273,35 @@ public class TransportUpdateAction extends TransportInstanceSingleOperationActio
                         shard.noopUpdate(request.type());
                     }
                 }
+                stats.onResult(DocWriteResponse.Result.NOOP, 0);
                 listener.onResponse(update);
                 break;
             default:
                 throw new IllegalStateException("Illegal result " + result.getResponseResult());
         }
     }
+
+    /**
+     * Retries the update after a backoff when it failed on a version conflict and has retries left, fails the listener otherwise.
+     * The retry is scheduled instead of being executed right away, so that updates contending for the same document don't spin
+     * on the get and merge only to conflict again.
+     */
+    private void onOperationFailure(final UpdateRequest request, final ActionListener<UpdateResponse> listener, final int retryCount,
+                                    final Exception e) {
+        final Throwable cause = unwrapCause(e);
+        if (cause instanceof VersionConflictEngineException && backoffPolicy.onConflict(retryCount, request.retryOnConflict())) {
+            final TimeValue delay = backoffPolicy.nextDelay(retryCount);
+            stats.onConflictRetry();
+            logger.trace("Retry attempt [{}] of [{}] in [{}] on version conflict on [{}][{}][{}]",
+                    retryCount + 1, request.retryOnConflict(), delay, request.index(), request.getShardId(), request.id());
+            threadPool.schedule(delay, executor(), new ActionRunnable<UpdateResponse>(listener) {
+                @Override
+                protected void doRun() {
+                    shardOperation(request, listener, retryCount + 1);
+                }
+            });
+            return;
+        }
+        listener.onFailure(cause instanceof Exception ? (Exception) cause : new NotSerializableExceptionWrapper(cause));
+    }
 }
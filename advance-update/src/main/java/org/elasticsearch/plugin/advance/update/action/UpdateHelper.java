@@ -26,14 +26,22 @@ import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.Requests;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.inject.Inject;
-import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.ReleasableBytesStreamOutput;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentType;
@@ -48,13 +56,18 @@ import org.elasticsearch.index.mapper.TTLFieldMapper;
 import org.elasticsearch.index.mapper.TimestampFieldMapper;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
+import org.elasticsearch.indices.breaker.NoneCircuitBreakerService;
+import org.elasticsearch.plugin.advance.update.stats.AdvanceUpdateStats;
 import org.elasticsearch.script.*;
 import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 import org.elasticsearch.search.lookup.SourceLookup;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.LongSupplier;
@@ -63,29 +76,85 @@ import java.util.function.LongSupplier;
  * Helper for translating an update request to an index, delete request or update response.
  */
 public class UpdateHelper extends AbstractComponent {
+
+    /**
+     * How many times the size of the sources the maps of a translation are estimated to take on the heap: the current
+     * document, the partial document or upsert, and the merged or scripted result.
+     */
+    public static final Setting<Double> SOURCE_MAP_OVERHEAD_SETTING =
+        Setting.doubleSetting("advance_update.breaker.source_map_overhead", 5.0, 0.0, Property.NodeScope);
+
     private final ScriptService scriptService;
+    private final AdvanceUpdateStats stats;
+    private final CircuitBreakerService circuitBreakerService;
+    private final BigArrays bigArrays;
+    private final double sourceMapOverhead;
 
-    @Inject
     public UpdateHelper(Settings settings, ScriptService scriptService) {
+        this(settings, scriptService, new AdvanceUpdateStats(settings), new NoneCircuitBreakerService(),
+            BigArrays.NON_RECYCLING_INSTANCE);
+    }
+
+    @Inject
+    public UpdateHelper(Settings settings, ScriptService scriptService, AdvanceUpdateStats stats,
+                        CircuitBreakerService circuitBreakerService, BigArrays bigArrays) {
         super(settings);
         this.scriptService = scriptService;
+        this.stats = stats;
+        this.circuitBreakerService = circuitBreakerService;
+        this.bigArrays = bigArrays;
+        this.sourceMapOverhead = SOURCE_MAP_OVERHEAD_SETTING.get(settings);
+    }
+
+    public static List<Setting<?>> getSettings() {
+        return Collections.singletonList(SOURCE_MAP_OVERHEAD_SETTING);
     }
 
     /**
      * Prepares an update request by converting it into an index or delete request or an update response (no action).
      */
     public Result prepare(UpdateRequest request, IndexShard indexShard, LongSupplier nowInMillis) {
-        final GetResult getResult = indexShard.getService().get(request.type(), request.id(),
+        return prepare(indexShard.shardId(), request, get(request, indexShard), nowInMillis);
+    }
+
+    /**
+     * Reads the current document the update applies to, with the metadata fields the translation carries over.
+     */
+    public GetResult get(UpdateRequest request, IndexShard indexShard) {
+        return indexShard.getService().get(request.type(), request.id(),
                 new String[]{RoutingFieldMapper.NAME, ParentFieldMapper.NAME, TTLFieldMapper.NAME, TimestampFieldMapper.NAME},
                 true, request.version(), request.versionType(), FetchSourceContext.FETCH_SOURCE);
-        return prepare(indexShard.shardId(), request, getResult, nowInMillis);
     }
 
     /**
      * Prepares an update request by converting it into an index or delete request or an update response (no action).
+     * The maps the translation builds are charged to the request circuit breaker while it runs.
+     *
+     * @throws CircuitBreakingException if they would exceed the limit of the breaker
      */
+    public Result prepare(ShardId shardId, UpdateRequest request, final GetResult getResult, LongSupplier nowInMillis) {
+        final CircuitBreaker breaker = circuitBreakerService.getBreaker(CircuitBreaker.REQUEST);
+        final long sourceMapBytes = estimateSourceMapBytes(request, getResult);
+        breaker.addEstimateBytesAndMaybeBreak(sourceMapBytes, "<advance_update_source_map>");
+        final long startNanos = System.nanoTime();
+        try {
+            return translate(shardId, request, getResult, nowInMillis);
+        } finally {
+            stats.onTranslate(System.nanoTime() - startNanos);
+            breaker.addWithoutBreaking(-sourceMapBytes);
+        }
+    }
+
+    private long estimateSourceMapBytes(UpdateRequest request, GetResult getResult) {
+        long sourceBytes = AdvanceUpdateStats.sourceBytes(request);
+        if (getResult.isExists() && getResult.internalSourceRef() != null) {
+            sourceBytes += getResult.internalSourceRef().length();
+        }
+        return (long) (sourceBytes * sourceMapOverhead);
+    }
+
     @SuppressWarnings("unchecked")
-    protected Result prepare(ShardId shardId, UpdateRequest request, final GetResult getResult, LongSupplier nowInMillis) {
+    private Result translate(ShardId shardId, UpdateRequest request, final GetResult getResult, LongSupplier nowInMillis) {
         long getDateNS = System.nanoTime();
         if (!getResult.isExists()) {
             if (request.upsertRequest() == null && !request.docAsUpsert()) {
@@ -123,7 +192,7 @@ public class UpdateHelper extends AbstractComponent {
                     update.setGetResult(getResult);
                     return new Result(update, DocWriteResponse.Result.NOOP, upsertDoc, XContentType.JSON);
                 }
-                indexRequest.source((Map) ctx.get("_source"));
+                indexRequest.source(toBytes(ctx.get("_source"), Requests.INDEX_CONTENT_TYPE), Requests.INDEX_CONTENT_TYPE);
             }
 
             indexRequest.index(request.index()).type(request.type()).id(request.id())
@@ -227,14 +296,16 @@ public class UpdateHelper extends AbstractComponent {
         }
 
         if (operation == null || "index".equals(operation)) {
+            // the merged source stays in recycled pages until the write is done, see Result#close
+            final ReleasableBytesStreamOutput pages = serialize(updatedSourceMap, updateSourceContentType);
             final IndexRequest indexRequest = Requests.indexRequest(request.index()).type(request.type()).id(request.id()).routing(routing).parent(parent)
-                    .source(updatedSourceMap, updateSourceContentType)
+                    .source(pages.bytes(), updateSourceContentType)
                     .version(updateVersion).versionType(request.versionType())
                     .waitForActiveShards(request.waitForActiveShards())
                     .timestamp(timestamp).ttl(ttl)
                     .timeout(request.timeout())
                     .setRefreshPolicy(request.getRefreshPolicy());
-            return new Result(indexRequest, DocWriteResponse.Result.UPDATED, updatedSourceMap, updateSourceContentType);
+            return new Result(indexRequest, DocWriteResponse.Result.UPDATED, updatedSourceMap, updateSourceContentType, pages);
         } else if ("delete".equals(operation)) {
             DeleteRequest deleteRequest = Requests.deleteRequest(request.index()).type(request.type()).id(request.id()).routing(routing).parent(parent)
                     .version(updateVersion).versionType(request.versionType())
@@ -259,6 +330,7 @@ public class UpdateHelper extends AbstractComponent {
                 CompiledScript compiledScript = scriptService.compile(script, ScriptContext.Standard.UPDATE);
                 ExecutableScript executableScript = scriptService.executable(compiledScript, script.getParams());
                 executableScript.setNextVar("ctx", ctx);
+                stats.onScriptExecution();
                 executableScript.run();
                 // we need to unwrap the ctx...
                 ctx = (Map<String, Object>) executableScript.unwrap(ctx);
@@ -351,35 +423,82 @@ public class UpdateHelper extends AbstractComponent {
             sourceRequested = true;
             if (request.fetchSource().includes().length > 0 || request.fetchSource().excludes().length > 0) {
                 Object value = sourceLookup.filter(request.fetchSource());
-                try {
-                    final int initialCapacity = Math.min(1024, sourceAsBytes.length());
-                    BytesStreamOutput streamOutput = new BytesStreamOutput(initialCapacity);
-                    try (XContentBuilder builder = new XContentBuilder(sourceContentType.xContent(), streamOutput)) {
-                        builder.value(value);
-                        sourceFilteredAsBytes = builder.bytes();
-                    }
-                } catch (IOException e) {
-                    throw new ElasticsearchException("Error filtering source", e);
-                }
+                sourceFilteredAsBytes = toBytes(value, sourceContentType);
             }
         }
 
         // TODO when using delete/none, we can still return the source as bytes by generating it (using the sourceContentType)
+        if (sourceRequested && sourceFilteredAsBytes != null) {
+            // the response outlives the recycled pages the source of the translated request may be in; a source that is a
+            // whole array already is not copied
+            sourceFilteredAsBytes = new BytesArray(BytesReference.toBytes(sourceFilteredAsBytes));
+        }
         return new GetResult(concreteIndex, request.type(), request.id(), version, true, sourceRequested ? sourceFilteredAsBytes : null, fields);
     }
 
-    public static class Result {
+    /**
+     * Serializes a source into recycled pages and copies it out once at its final size, for sources that outlive any point
+     * the pages could be released at: the filtered source of a response, the upsert request a script rewrites in place.
+     */
+    private BytesReference toBytes(Object source, XContentType contentType) {
+        try (ReleasableBytesStreamOutput out = serialize(source, contentType)) {
+            return new BytesArray(BytesReference.toBytes(out.bytes()));
+        }
+    }
+
+    /**
+     * Serializes a source into recycled pages, the caller releases them once nothing reads the source anymore.
+     */
+    private ReleasableBytesStreamOutput serialize(Object source, XContentType contentType) {
+        final ReleasableBytesStreamOutput out = new ReleasableBytesStreamOutput(bigArrays);
+        boolean success = false;
+        try {
+            // the builder is flushed, not closed, closing it would close and release the pages
+            final XContentBuilder builder = new XContentBuilder(contentType.xContent(), out);
+            builder.value(source);
+            builder.flush();
+            success = true;
+            return out;
+        } catch (IOException e) {
+            throw new ElasticsearchException("Error serializing source", e);
+        } finally {
+            if (success == false) {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * The translation of an update. The source of its index request may be in recycled pages: the result must be closed once
+     * the write is done, after the replicas got the request, and the source must not be read after that.
+     */
+    public static class Result implements Releasable {
 
         private final Streamable action;
         private final DocWriteResponse.Result result;
         private final Map<String, Object> updatedSourceAsMap;
         private final XContentType updateSourceContentType;
+        private Releasable pages;
 
         public Result(Streamable action, DocWriteResponse.Result result, Map<String, Object> updatedSourceAsMap, XContentType updateSourceContentType) {
+            this(action, result, updatedSourceAsMap, updateSourceContentType, null);
+        }
+
+        Result(Streamable action, DocWriteResponse.Result result, Map<String, Object> updatedSourceAsMap, XContentType updateSourceContentType,
+               @Nullable Releasable pages) {
             this.action = action;
             this.result = result;
             this.updatedSourceAsMap = updatedSourceAsMap;
             this.updateSourceContentType = updateSourceContentType;
+            this.pages = pages;
+        }
+
+        @Override
+        public void close() {
+            // closed once by whoever finishes the write, or failed it, first
+            final Releasable toClose = pages;
+            pages = null;
+            Releasables.close(toClose);
         }
 
         @SuppressWarnings("unchecked")
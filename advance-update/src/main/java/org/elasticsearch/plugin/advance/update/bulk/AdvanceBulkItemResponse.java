@@ -346,6 +346,17 @@ public class AdvanceBulkItemResponse implements Streamable, StatusToXContentObje
         return this.failure;
     }
 
+    /**
+     * A copy of this item response that reports the given slot of the bulk request instead, used when the items of one bulk
+     * were executed as part of another one.
+     */
+    AdvanceBulkItemResponse withItemId(int itemId) {
+        if (failure != null) {
+            return new AdvanceBulkItemResponse(itemId, opType, failure);
+        }
+        return new AdvanceBulkItemResponse(itemId, opType, response);
+    }
+
     public static AdvanceBulkItemResponse readBulkItem(StreamInput in) throws IOException {
         AdvanceBulkItemResponse response = new AdvanceBulkItemResponse();
         response.readFrom(in);
@@ -0,0 +1,461 @@
+package org.elasticsearch.plugin.advance.update.bulk;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.util.concurrent.FutureUtils;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The advance bulk counterpart of the core <code>BulkProcessor</code>. Requests are collected and sent as an
+ * {@link AdvanceBulkRequest} once a number of actions or a size is reached, or when the flush interval passed. At most
+ * <tt>concurrentRequests</tt> bulks are in flight, and items that were rejected because a thread pool was full are sent again
+ * after the delay of the {@link BackoffPolicy}, without the items that already succeeded.
+ * <p>
+ * Callers can pass a listener with every request that is told about the outcome of that one item, once it is final.
+ */
+public class AdvanceBulkProcessor implements Closeable {
+
+    /**
+     * A listener for the bulks the processor sends.
+     */
+    public interface Listener {
+
+        /**
+         * Callback before the bulk is executed.
+         */
+        void beforeBulk(long executionId, AdvanceBulkRequest request);
+
+        /**
+         * Callback after a bulk executed, with the final outcome of every item after the retries.
+         */
+        void afterBulk(long executionId, AdvanceBulkRequest request, AdvanceBulkResponse response);
+
+        /**
+         * Callback after a bulk failed as a whole, e.g. because the node could not be reached.
+         */
+        void afterBulk(long executionId, AdvanceBulkRequest request, Throwable failure);
+    }
+
+    /**
+     * A builder used to create an instance of an advance bulk processor.
+     */
+    public static class Builder {
+
+        private final Client client;
+        private final Listener listener;
+
+        private String name;
+        private int concurrentRequests = 1;
+        private int bulkActions = 1000;
+        private ByteSizeValue bulkSize = new ByteSizeValue(5, ByteSizeUnit.MB);
+        private TimeValue flushInterval = null;
+        private BackoffPolicy backoffPolicy = BackoffPolicy.exponentialBackoff();
+
+        Builder(Client client, Listener listener) {
+            this.client = client;
+            this.listener = listener;
+        }
+
+        /**
+         * Sets an optional name to identify this processor.
+         */
+        public Builder setName(String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * Sets the number of concurrent requests allowed to be executed. A value of 0 means that only a single request will be
+         * allowed to be executed, synchronously with the call that triggered it. A value of 1 means 1 concurrent request is
+         * allowed to be executed while accumulating new bulk requests. Defaults to <tt>1</tt>.
+         */
+        public Builder setConcurrentRequests(int concurrentRequests) {
+            this.concurrentRequests = concurrentRequests;
+            return this;
+        }
+
+        /**
+         * Sets when to flush a new bulk request based on the number of actions currently added. Defaults to <tt>1000</tt>. Can
+         * be set to <tt>-1</tt> to disable it.
+         */
+        public Builder setBulkActions(int bulkActions) {
+            this.bulkActions = bulkActions;
+            return this;
+        }
+
+        /**
+         * Sets when to flush a new bulk request based on the size of actions currently added. Defaults to <tt>5mb</tt>. Can be
+         * set to <tt>-1</tt> to disable it.
+         */
+        public Builder setBulkSize(ByteSizeValue bulkSize) {
+            this.bulkSize = bulkSize;
+            return this;
+        }
+
+        /**
+         * Sets a flush interval flushing *any* bulk actions pending if the interval passes. Defaults to not set.
+         */
+        public Builder setFlushInterval(TimeValue flushInterval) {
+            this.flushInterval = flushInterval;
+            return this;
+        }
+
+        /**
+         * Sets a custom backoff policy for the items that were rejected because of a full thread pool. Defaults to
+         * {@link BackoffPolicy#exponentialBackoff()}, {@link BackoffPolicy#noBackoff()} disables the retries.
+         */
+        public Builder setBackoffPolicy(BackoffPolicy backoffPolicy) {
+            this.backoffPolicy = Objects.requireNonNull(backoffPolicy, "backoffPolicy must not be null");
+            return this;
+        }
+
+        /**
+         * Builds a new advance bulk processor.
+         */
+        public AdvanceBulkProcessor build() {
+            return new AdvanceBulkProcessor(client, backoffPolicy, listener, name, concurrentRequests, bulkActions, bulkSize,
+                flushInterval);
+        }
+    }
+
+    public static Builder builder(Client client, Listener listener) {
+        Objects.requireNonNull(client, "client");
+        Objects.requireNonNull(listener, "listener");
+        return new Builder(client, listener);
+    }
+
+    private final Client client;
+    private final BackoffPolicy backoffPolicy;
+    private final Listener listener;
+    private final int concurrentRequests;
+    private final Semaphore semaphore;
+    private final int bulkActions;
+    private final long bulkSize;
+
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ScheduledFuture<?> scheduledFuture;
+
+    private final AtomicLong executionIdGen = new AtomicLong();
+
+    private AdvanceBulkRequest bulkRequest;
+
+    private volatile boolean closed = false;
+
+    AdvanceBulkProcessor(Client client, BackoffPolicy backoffPolicy, Listener listener, @Nullable String name, int concurrentRequests,
+                         int bulkActions, ByteSizeValue bulkSize, @Nullable TimeValue flushInterval) {
+        this.client = client;
+        this.backoffPolicy = backoffPolicy;
+        this.listener = listener;
+        this.concurrentRequests = concurrentRequests;
+        this.semaphore = new Semaphore(concurrentRequests > 0 ? concurrentRequests : 1);
+        this.bulkActions = bulkActions;
+        this.bulkSize = bulkSize.getBytes();
+        this.bulkRequest = new AdvanceBulkRequest();
+
+        if (flushInterval != null) {
+            this.scheduler = (ScheduledThreadPoolExecutor) Executors.newScheduledThreadPool(1, EsExecutors.daemonThreadFactory(
+                client.settings(), (name != null ? "[" + name + "]" : "") + "advance_bulk_processor"));
+            this.scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            this.scheduler.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+            this.scheduledFuture = this.scheduler.scheduleWithFixedDelay(new Flush(), flushInterval.millis(),
+                flushInterval.millis(), TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+            this.scheduledFuture = null;
+        }
+    }
+
+    /**
+     * Closes the processor. If flushing by time is enabled, then it's shutdown. Any remaining bulk actions are flushed.
+     */
+    @Override
+    public void close() {
+        try {
+            awaitClose(0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Closes the processor. If flushing by time is enabled, then it's shutdown. Any remaining bulk actions are flushed.
+     * <p>
+     * If concurrent requests are not enabled, returns {@code true} immediately. If concurrent requests are enabled, waits for
+     * up to the specified timeout for all bulk requests, including their retries, to complete then returns {@code true}. If
+     * the specified waiting time elapses before all bulk requests complete, {@code false} is returned.
+     */
+    public synchronized boolean awaitClose(long timeout, TimeUnit unit) throws InterruptedException {
+        if (closed) {
+            return true;
+        }
+        closed = true;
+        if (this.scheduledFuture != null) {
+            FutureUtils.cancel(this.scheduledFuture);
+            this.scheduler.shutdown();
+        }
+        if (bulkRequest.numberOfActions() > 0) {
+            execute();
+        }
+        if (concurrentRequests < 1) {
+            return true;
+        }
+        if (semaphore.tryAcquire(concurrentRequests, timeout, unit)) {
+            semaphore.release(concurrentRequests);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds a request to the list of actions to execute.
+     */
+    public AdvanceBulkProcessor add(DocWriteRequest request) {
+        return add(request, null);
+    }
+
+    /**
+     * Adds a request to the list of actions to execute. The listener is told about the response of the item, or about its
+     * failure, once it will not be retried anymore.
+     */
+    public synchronized AdvanceBulkProcessor add(DocWriteRequest request, @Nullable ActionListener<DocWriteResponse> itemListener) {
+        ensureOpen();
+        bulkRequest.add(request, itemListener);
+        executeIfNeeded();
+        return this;
+    }
+
+    /**
+     * Adds the data from the bytes to be processed by the processor, with the default index and type, like the body of an
+     * <tt>_advancebulk</tt> request.
+     */
+    public synchronized AdvanceBulkProcessor add(BytesReference data, @Nullable String defaultIndex, @Nullable String defaultType,
+                                                 XContentType xContentType) throws Exception {
+        ensureOpen();
+        bulkRequest.add(data, defaultIndex, defaultType, null, null, null, null, null, true, xContentType);
+        executeIfNeeded();
+        return this;
+    }
+
+    /**
+     * Flushes open bulk actions.
+     */
+    public synchronized void flush() {
+        ensureOpen();
+        if (bulkRequest.numberOfActions() > 0) {
+            execute();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("advance bulk processor already closed");
+        }
+    }
+
+    private void executeIfNeeded() {
+        ensureOpen();
+        if (isOverTheLimit() == false) {
+            return;
+        }
+        execute();
+    }
+
+    private boolean isOverTheLimit() {
+        if (bulkActions != -1 && bulkRequest.numberOfActions() >= bulkActions) {
+            return true;
+        }
+        if (bulkSize != -1 && bulkRequest.estimatedSizeInBytes() >= bulkSize) {
+            return true;
+        }
+        return false;
+    }
+
+    // (currently) needs to be executed under a lock
+    private void execute() {
+        final AdvanceBulkRequest bulkRequest = this.bulkRequest;
+        final long executionId = executionIdGen.incrementAndGet();
+
+        this.bulkRequest = new AdvanceBulkRequest();
+        new Execution(executionId, bulkRequest).start();
+    }
+
+    private class Flush implements Runnable {
+
+        @Override
+        public void run() {
+            synchronized (AdvanceBulkProcessor.this) {
+                if (closed) {
+                    return;
+                }
+                if (bulkRequest.numberOfActions() == 0) {
+                    return;
+                }
+                execute();
+            }
+        }
+    }
+
+    /**
+     * A bulk and its retries. Every attempt only carries the items that were rejected by the previous one, their final
+     * responses are collected at the position of the item in the original bulk.
+     */
+    private final class Execution {
+        private final long executionId;
+        private final AdvanceBulkRequest request;
+        private final AdvanceBulkItemResponse[] responses;
+        private final Iterator<TimeValue> backoff = backoffPolicy.iterator();
+        private final long startTimeInNanos = System.nanoTime();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        Execution(long executionId, AdvanceBulkRequest request) {
+            this.executionId = executionId;
+            this.request = request;
+            this.responses = new AdvanceBulkItemResponse[request.numberOfActions()];
+        }
+
+        void start() {
+            boolean acquired = false;
+            try {
+                listener.beforeBulk(executionId, request);
+                semaphore.acquire();
+                acquired = true;
+                int[] slots = new int[request.numberOfActions()];
+                for (int i = 0; i < slots.length; i++) {
+                    slots[i] = i;
+                }
+                send(request, slots);
+                if (concurrentRequests < 1) {
+                    done.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (acquired == false) {
+                    listener.afterBulk(executionId, request, e);
+                }
+            } catch (Exception e) {
+                if (acquired) {
+                    semaphore.release();
+                }
+                listener.afterBulk(executionId, request, e);
+            }
+        }
+
+        /**
+         * Sends an attempt whose item <code>i</code> is the item <code>slots[i]</code> of the original bulk.
+         */
+        private void send(AdvanceBulkRequest attempt, int[] slots) {
+            client.execute(AdvanceBulkAction.INSTANCE, attempt, new ActionListener<AdvanceBulkResponse>() {
+                @Override
+                public void onResponse(AdvanceBulkResponse response) {
+                    List<Integer> rejected = new ArrayList<>();
+                    final boolean canRetry = backoff.hasNext();
+                    for (AdvanceBulkItemResponse item : response.getItems()) {
+                        final int slot = slots[item.getItemId()];
+                        if (canRetry && item.isFailed() && item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+                            rejected.add(slot);
+                        } else {
+                            onItem(slot, item.withItemId(slot));
+                        }
+                    }
+                    if (rejected.isEmpty()) {
+                        finish();
+                    } else {
+                        retry(rejected.stream().mapToInt(Integer::intValue).toArray());
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    if (backoff.hasNext() && ExceptionsHelper.unwrapCause(e) instanceof EsRejectedExecutionException) {
+                        retry(slots);
+                    } else {
+                        fail(slots, e);
+                    }
+                }
+            });
+        }
+
+        private void retry(int[] slots) {
+            final AdvanceBulkRequest attempt = AdvanceTransportBulkAction.copyWithoutItems(request);
+            for (int slot : slots) {
+                attempt.add(request.requests().get(slot));
+            }
+            client.threadPool().schedule(backoff.next(), ThreadPool.Names.SAME, () -> send(attempt, slots));
+        }
+
+        private void onItem(int slot, AdvanceBulkItemResponse item) {
+            responses[slot] = item;
+            final ActionListener<DocWriteResponse> itemListener = itemListener(slot);
+            if (itemListener == null) {
+                return;
+            }
+            if (item.isFailed()) {
+                itemListener.onFailure(item.getFailure().getCause());
+            } else {
+                itemListener.onResponse(item.getResponse());
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Nullable
+        private ActionListener<DocWriteResponse> itemListener(int slot) {
+            final List<Object> payloads = request.payloads();
+            if (payloads == null) {
+                return null;
+            }
+            final Object payload = payloads.get(slot);
+            return payload instanceof ActionListener ? (ActionListener<DocWriteResponse>) payload : null;
+        }
+
+        private void finish() {
+            try {
+                long tookInMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTimeInNanos);
+                listener.afterBulk(executionId, request, new AdvanceBulkResponse(responses, tookInMillis));
+            } finally {
+                semaphore.release();
+                done.countDown();
+            }
+        }
+
+        private void fail(int[] pendingSlots, Exception e) {
+            try {
+                for (int slot : pendingSlots) {
+                    final ActionListener<DocWriteResponse> itemListener = itemListener(slot);
+                    if (itemListener != null) {
+                        itemListener.onFailure(e);
+                    }
+                }
+                listener.afterBulk(executionId, request, e);
+            } finally {
+                semaphore.release();
+                done.countDown();
+            }
+        }
+    }
+}
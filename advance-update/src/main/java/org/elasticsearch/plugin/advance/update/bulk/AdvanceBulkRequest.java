@@ -15,6 +15,7 @@ import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
 import org.elasticsearch.common.logging.DeprecationLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.lucene.uid.Versions;
@@ -23,10 +24,13 @@ import org.elasticsearch.common.xcontent.*;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.plugin.advance.update.action.UpdateRequest;
 import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.tasks.TaskId;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 
 import static org.elasticsearch.action.ValidateActions.addValidationError;
@@ -37,6 +41,11 @@ public class AdvanceBulkRequest extends ActionRequest implements CompositeIndice
 
     private static final int REQUEST_OVERHEAD = 50;
 
+    /**
+     * The {@link #routingVersion()} of requests that the receiving node routes, the default.
+     */
+    public static final long NOT_PRE_ROUTED = -1L;
+
     /**
      * Requests that are part of this request. It is only possible to add things that are both {@link ActionRequest}s and
      * {@link WriteRequest}s to this but java doesn't support syntax to declare that everything in the array has both types so we declare
@@ -48,6 +57,12 @@ public class AdvanceBulkRequest extends ActionRequest implements CompositeIndice
     protected TimeValue timeout = AdvanceBulkShardRequest.DEFAULT_TIMEOUT;
     private ActiveShardCount waitForActiveShards = ActiveShardCount.DEFAULT;
     private RefreshPolicy refreshPolicy = RefreshPolicy.NONE;
+    private ResponseMode responseMode = ResponseMode.FULL;
+    private Durability durability = Durability.REQUEST;
+    private TimeValue deferredSyncDelay = Durability.DEFAULT_DEFERRED_SYNC_DELAY;
+    private long routingVersion = NOT_PRE_ROUTED;
+    private boolean tookBreakdown;
+    private long parseNanos;
 
     private long sizeInBytes = 0;
 
@@ -472,6 +487,19 @@ public class AdvanceBulkRequest extends ActionRequest implements CompositeIndice
         return this;
     }
 
+    /**
+     * Adds framed data in the columnar format, a header line declaring the columns of a batch followed by one row of
+     * values per document, see {@link AdvanceColumnarBulkParser}.
+     */
+    public AdvanceBulkRequest addColumnar(BytesReference data, @Nullable String defaultIndex, @Nullable String defaultType,
+                                          @Nullable String defaultRouting, @Nullable String[] defaultFields,
+                                          @Nullable FetchSourceContext defaultFetchSourceContext, @Nullable String defaultPipeline,
+                                          @Nullable Object payload, boolean allowExplicitIndex, XContentType xContentType) throws IOException {
+        AdvanceColumnarBulkParser.parse(this, data, defaultIndex, defaultType, defaultRouting, defaultFields,
+            defaultFetchSourceContext, defaultPipeline, payload, allowExplicitIndex, xContentType);
+        return this;
+    }
+
     /**
      * Returns the sliced {@link BytesReference}. If the {@link XContentType} is JSON, the byte preceding the marker is checked to see
      * if it is a carriage return and if so, the BytesReference is sliced so that the carriage return is ignored
@@ -519,6 +547,102 @@ public class AdvanceBulkRequest extends ActionRequest implements CompositeIndice
         return refreshPolicy;
     }
 
+    /**
+     * Controls how much of the per item outcome is materialized in the {@link AdvanceBulkResponse}. Defaults to
+     * {@link ResponseMode#FULL}.
+     */
+    public AdvanceBulkRequest responseMode(ResponseMode responseMode) {
+        this.responseMode = Objects.requireNonNull(responseMode, "'responseMode' must not be null");
+        return this;
+    }
+
+    public ResponseMode responseMode() {
+        return responseMode;
+    }
+
+    /**
+     * How the translog of the shards is synced for the items of this request. Only applies to indices with a translog
+     * durability of <tt>request</tt>, indices that sync asynchronously keep doing so. Defaults to {@link Durability#REQUEST}.
+     * @param deferredSyncDelay how long {@link Durability#DEFERRED} waits before it syncs, ignored by the other levels
+     */
+    public AdvanceBulkRequest durability(Durability durability, TimeValue deferredSyncDelay) {
+        this.durability = Objects.requireNonNull(durability, "'durability' must not be null");
+        this.deferredSyncDelay = Objects.requireNonNull(deferredSyncDelay, "'deferredSyncDelay' must not be null");
+        return this;
+    }
+
+    /**
+     * Sets the durability from its rest value, one of <tt>request</tt>, <tt>async</tt>, <tt>deferred</tt> or
+     * <tt>deferred(delay)</tt>, e.g. <tt>deferred(500ms)</tt>. <code>null</code> means {@link Durability#REQUEST}.
+     */
+    public AdvanceBulkRequest durability(@Nullable String value) {
+        if (value == null) {
+            return durability(Durability.REQUEST, Durability.DEFAULT_DEFERRED_SYNC_DELAY);
+        }
+        String lowercase = value.toLowerCase(Locale.ROOT);
+        int open = lowercase.indexOf('(');
+        if (open >= 0 && lowercase.endsWith(")")) {
+            Durability durability = Durability.parse(lowercase.substring(0, open));
+            if (durability != Durability.DEFERRED) {
+                throw new IllegalArgumentException("Only [deferred] durability takes a delay, got [" + value + "].");
+            }
+            TimeValue delay = TimeValue.parseTimeValue(lowercase.substring(open + 1, lowercase.length() - 1), "durability");
+            return durability(durability, delay);
+        }
+        return durability(Durability.parse(lowercase), Durability.DEFAULT_DEFERRED_SYNC_DELAY);
+    }
+
+    public Durability durability() {
+        return durability;
+    }
+
+    public TimeValue deferredSyncDelay() {
+        return deferredSyncDelay;
+    }
+
+    /**
+     * Marks the request as pre-routed by a client that split its items by the node holding their primaries, using routing
+     * that came from the cluster state with the given version. The receiving node only executes the request when it holds the
+     * primaries of all items, and rejects it otherwise so that the client refreshes its routing.
+     */
+    public AdvanceBulkRequest routingVersion(long routingVersion) {
+        this.routingVersion = routingVersion;
+        return this;
+    }
+
+    public long routingVersion() {
+        return routingVersion;
+    }
+
+    public boolean isPreRouted() {
+        return routingVersion != NOT_PRE_ROUTED;
+    }
+
+    /**
+     * Whether the response reports where the time of the bulk went, see {@link AdvanceBulkTookBreakdown}. The phases are only
+     * timed when asked for.
+     */
+    public AdvanceBulkRequest tookBreakdown(boolean tookBreakdown) {
+        this.tookBreakdown = tookBreakdown;
+        return this;
+    }
+
+    public boolean tookBreakdown() {
+        return tookBreakdown;
+    }
+
+    /**
+     * How long parsing the body of the request took, reported as the parse phase of the {@link #tookBreakdown(boolean)}.
+     */
+    public AdvanceBulkRequest parseNanos(long parseNanos) {
+        this.parseNanos = parseNanos;
+        return this;
+    }
+
+    public long parseNanos() {
+        return parseNanos;
+    }
+
     /**
      * A timeout to wait if the index operation can't be performed immediately. Defaults to <tt>1m</tt>.
      */
@@ -582,11 +706,28 @@ public class AdvanceBulkRequest extends ActionRequest implements CompositeIndice
                 }
                 validationException.addValidationErrors(ex.validationErrors());
             }
+            if (isPreRouted() && request.id() == null) {
+                // a generated id would route the item to a shard the client did not pick
+                validationException = addValidationError("a pre-routed request needs an id on every item", validationException);
+            }
+        }
+        if (isPreRouted() && hasIndexRequestsWithPipelines()) {
+            validationException = addValidationError("a pre-routed request can't use ingest pipelines", validationException);
         }
 
         return validationException;
     }
 
+    @Override
+    public Task createTask(long id, String type, String action, TaskId parentTaskId) {
+        return new AdvanceBulkTask(id, type, action, getDescription(), parentTaskId);
+    }
+
+    @Override
+    public String getDescription() {
+        return "requests[" + requests.size() + "]";
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
@@ -597,6 +738,12 @@ public class AdvanceBulkRequest extends ActionRequest implements CompositeIndice
         }
         refreshPolicy = RefreshPolicy.readFrom(in);
         timeout = new TimeValue(in);
+        responseMode = ResponseMode.readFrom(in);
+        durability = Durability.readFrom(in);
+        deferredSyncDelay = new TimeValue(in);
+        routingVersion = in.readLong();
+        tookBreakdown = in.readBoolean();
+        parseNanos = in.readVLong();
     }
 
     @Override
@@ -609,5 +756,125 @@ public class AdvanceBulkRequest extends ActionRequest implements CompositeIndice
         }
         refreshPolicy.writeTo(out);
         timeout.writeTo(out);
+        responseMode.writeTo(out);
+        durability.writeTo(out);
+        deferredSyncDelay.writeTo(out);
+        out.writeLong(routingVersion);
+        out.writeBoolean(tookBreakdown);
+        out.writeVLong(parseNanos);
+    }
+
+    /**
+     * How the outcome of the items is reported back.
+     */
+    public enum ResponseMode implements Writeable {
+        /**
+         * Every item gets its own {@link AdvanceBulkItemResponse}. This is the default.
+         */
+        FULL("full"),
+        /**
+         * Only failed items are materialized, successful items are kept as a bitset plus counters in an {@link AdvanceBulkSummary}.
+         */
+        ERRORS_ONLY("errors_only"),
+        /**
+         * No item is materialized, the response only carries the counters of the {@link AdvanceBulkSummary}.
+         */
+        SUMMARY("summary"),
+        /**
+         * Every item is reported, but the index, type and shard information is rendered once per shard in a table the items
+         * refer to by ordinal. The response is rendered in the content type of the request, so a SMILE or CBOR bulk gets a
+         * binary response.
+         */
+        COMPACT("compact");
+
+        private final String value;
+
+        ResponseMode(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * Whether successful items are only counted in an {@link AdvanceBulkSummary} instead of being materialized.
+         */
+        public boolean isSummarized() {
+            return this == ERRORS_ONLY || this == SUMMARY;
+        }
+
+        /**
+         * Parses the mode from its rest value, <code>null</code> means {@link #FULL}.
+         */
+        public static ResponseMode parse(@Nullable String value) {
+            if (value == null) {
+                return FULL;
+            }
+            for (ResponseMode mode : values()) {
+                if (mode.value.equals(value.toLowerCase(Locale.ROOT))) {
+                    return mode;
+                }
+            }
+            throw new IllegalArgumentException("Unknown value for response: [" + value + "].");
+        }
+
+        public static ResponseMode readFrom(StreamInput in) throws IOException {
+            return ResponseMode.values()[in.readByte()];
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeByte((byte) ordinal());
+        }
+    }
+
+    /**
+     * How the translog is synced after the items of a request were written.
+     */
+    public enum Durability implements Writeable {
+        /**
+         * The translog is synced before the request returns, as the index durability <tt>request</tt> does. This is the default.
+         */
+        REQUEST("request"),
+        /**
+         * The request does not sync the translog, it is left to the periodic sync of the index.
+         */
+        ASYNC("async"),
+        /**
+         * The request returns without a sync, and the translog is synced once a delay has passed. This bounds the window of
+         * writes that can be lost tighter than {@link #ASYNC} without the request waiting for an fsync.
+         */
+        DEFERRED("deferred");
+
+        public static final TimeValue DEFAULT_DEFERRED_SYNC_DELAY = TimeValue.timeValueSeconds(1);
+
+        private final String value;
+
+        Durability(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        static Durability parse(String value) {
+            for (Durability durability : values()) {
+                if (durability.value.equals(value)) {
+                    return durability;
+                }
+            }
+            throw new IllegalArgumentException("Unknown value for durability: [" + value + "].");
+        }
+
+        public static Durability readFrom(StreamInput in) throws IOException {
+            return Durability.values()[in.readByte()];
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeByte((byte) ordinal());
+        }
     }
 }
@@ -11,6 +11,7 @@ import org.elasticsearch.action.support.replication.ReplicationRequest;
 import org.elasticsearch.action.update.UpdateRequestBuilder;
 import org.elasticsearch.client.ElasticsearchClient;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.plugin.advance.update.action.UpdateRequest;
@@ -107,6 +108,15 @@ public class AdvanceBulkRequestBuilder extends ActionRequestBuilder<AdvanceBulkR
         return this;
     }
 
+    /**
+     * Adds framed data in the columnar format, the body of an <code>_advancebulk?body_format=columnar</code> request
+     */
+    public AdvanceBulkRequestBuilder addColumnar(BytesReference data, @Nullable String defaultIndex, @Nullable String defaultType,
+                                                 XContentType xContentType) throws Exception {
+        request.addColumnar(data, defaultIndex, defaultType, null, null, null, null, null, true, xContentType);
+        return this;
+    }
+
     /**
      * Sets the number of shard copies that must be active before proceeding with the write.
      * See {@link ReplicationRequest#waitForActiveShards(ActiveShardCount)} for details.
@@ -125,6 +135,24 @@ public class AdvanceBulkRequestBuilder extends ActionRequestBuilder<AdvanceBulkR
         return setWaitForActiveShards(ActiveShardCount.from(waitForActiveShards));
     }
 
+    /**
+     * Controls how much of the per item outcome is materialized in the response.
+     * See {@link AdvanceBulkRequest#responseMode(AdvanceBulkRequest.ResponseMode)} for details.
+     */
+    public AdvanceBulkRequestBuilder setResponseMode(AdvanceBulkRequest.ResponseMode responseMode) {
+        request.responseMode(responseMode);
+        return this;
+    }
+
+    /**
+     * How the translog is synced for the items of this request.
+     * See {@link AdvanceBulkRequest#durability(AdvanceBulkRequest.Durability, TimeValue)} for details.
+     */
+    public AdvanceBulkRequestBuilder setDurability(AdvanceBulkRequest.Durability durability, TimeValue deferredSyncDelay) {
+        request.durability(durability, deferredSyncDelay);
+        return this;
+    }
+
     /**
      * A timeout to wait if the index operation can't be performed immediately. Defaults to <tt>1m</tt>.
      */
@@ -1,19 +1,26 @@
 package org.elasticsearch.plugin.advance.update.bulk;
 
+import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.StatusToXContentObject;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.rest.RestStatus;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.elasticsearch.common.xcontent.XContentParserUtils.*;
 import static org.elasticsearch.plugin.advance.update.bulk.AdvanceBulkItemResponse.readBulkItem;
@@ -24,12 +31,28 @@ public class AdvanceBulkResponse extends ActionResponse implements Iterable<Adva
     private static final String ERRORS = "errors";
     private static final String TOOK = "took";
     private static final String INGEST_TOOK = "ingest_took";
+    private static final String SUMMARY = "summary";
+    private static final String TOOK_BREAKDOWN = "took_breakdown";
+    private static final String SHARDS = "shards";
+    private static final String RESPONSE_PARAM = "response";
+    private static final String _INDEX = "_index";
+    private static final String _TYPE = "_type";
+    private static final String _ID = "_id";
+    private static final String _SHARD = "_shard";
+    private static final String _SHARDS = "_shards";
+    private static final String OP = "op";
+    private static final String STATUS = "status";
+    private static final String ERROR = "error";
 
     public static final long NO_INGEST_TOOK = -1L;
 
     private AdvanceBulkItemResponse[] responses;
     private long tookInMillis;
     private long ingestTookInMillis;
+    @Nullable
+    private AdvanceBulkSummary summary;
+    @Nullable
+    private AdvanceBulkTookBreakdown tookBreakdown;
 
     AdvanceBulkResponse() {
     }
@@ -39,9 +62,19 @@ public class AdvanceBulkResponse extends ActionResponse implements Iterable<Adva
     }
 
     public AdvanceBulkResponse(AdvanceBulkItemResponse[] responses, long tookInMillis, long ingestTookInMillis) {
+        this(responses, tookInMillis, ingestTookInMillis, null);
+    }
+
+    /**
+     * @param summary the counters of a bulk executed with {@link AdvanceBulkRequest.ResponseMode#ERRORS_ONLY} or
+     *                {@link AdvanceBulkRequest.ResponseMode#SUMMARY}, in which case <code>responses</code> only holds failures
+     */
+    public AdvanceBulkResponse(AdvanceBulkItemResponse[] responses, long tookInMillis, long ingestTookInMillis,
+                               @Nullable AdvanceBulkSummary summary) {
         this.responses = responses;
         this.tookInMillis = tookInMillis;
         this.ingestTookInMillis = ingestTookInMillis;
+        this.summary = summary;
     }
 
     /**
@@ -72,10 +105,34 @@ public class AdvanceBulkResponse extends ActionResponse implements Iterable<Adva
         return ingestTookInMillis;
     }
 
+    /**
+     * The counters of the items, <code>null</code> if every item was materialized in {@link #getItems()}.
+     */
+    @Nullable
+    public AdvanceBulkSummary getSummary() {
+        return summary;
+    }
+
+    /**
+     * Where the time of the bulk went, <code>null</code> unless the bulk asked for it with
+     * {@link AdvanceBulkRequest#tookBreakdown(boolean)}.
+     */
+    @Nullable
+    public AdvanceBulkTookBreakdown getTookBreakdown() {
+        return tookBreakdown;
+    }
+
+    void setTookBreakdown(@Nullable AdvanceBulkTookBreakdown tookBreakdown) {
+        this.tookBreakdown = tookBreakdown;
+    }
+
     /**
      * Has anything failed with the execution.
      */
     public boolean hasFailures() {
+        if (summary != null) {
+            return summary.getFailed() > 0;
+        }
         for (AdvanceBulkItemResponse response : responses) {
             if (response.isFailed()) {
                 return true;
@@ -99,7 +156,9 @@ public class AdvanceBulkResponse extends ActionResponse implements Iterable<Adva
     }
 
     /**
-     * The items representing each action performed in the bulk operation (in the same order!).
+     * The items representing each action performed in the bulk operation (in the same order!). If the bulk was
+     * executed with a {@link #getSummary() summary} only the failed items are returned, use
+     * {@link AdvanceBulkItemResponse#getItemId()} to map them back to the request.
      */
     public AdvanceBulkItemResponse[] getItems() {
         return responses;
@@ -119,6 +178,8 @@ public class AdvanceBulkResponse extends ActionResponse implements Iterable<Adva
         }
         tookInMillis = in.readVLong();
         ingestTookInMillis = in.readZLong();
+        summary = in.readOptionalWriteable(AdvanceBulkSummary::new);
+        tookBreakdown = in.readOptionalWriteable(AdvanceBulkTookBreakdown::new);
     }
 
     @Override
@@ -130,6 +191,8 @@ public class AdvanceBulkResponse extends ActionResponse implements Iterable<Adva
         }
         out.writeVLong(tookInMillis);
         out.writeZLong(ingestTookInMillis);
+        out.writeOptionalWriteable(summary);
+        out.writeOptionalWriteable(tookBreakdown);
     }
 
     @Override
@@ -139,12 +202,21 @@ public class AdvanceBulkResponse extends ActionResponse implements Iterable<Adva
 
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        if (AdvanceBulkRequest.ResponseMode.COMPACT.getValue().equals(params.param(RESPONSE_PARAM))) {
+            return compactToXContent(builder, params);
+        }
         builder.startObject();
         builder.field(TOOK, tookInMillis);
         if (ingestTookInMillis != AdvanceBulkResponse.NO_INGEST_TOOK) {
             builder.field(INGEST_TOOK, ingestTookInMillis);
         }
+        if (tookBreakdown != null) {
+            builder.field(TOOK_BREAKDOWN, tookBreakdown);
+        }
         builder.field(ERRORS, hasFailures());
+        if (summary != null) {
+            builder.field(SUMMARY, summary);
+        }
         builder.startArray(ITEMS);
         for (AdvanceBulkItemResponse item : this) {
             item.toXContent(builder, params);
@@ -154,6 +226,79 @@ public class AdvanceBulkResponse extends ActionResponse implements Iterable<Adva
         return builder;
     }
 
+    /**
+     * Renders the {@link AdvanceBulkRequest.ResponseMode#COMPACT} layout: the index, type and shard information is rendered once
+     * in the <code>shards</code> table and every successful item is an array of
+     * <code>[op type id, shard table ordinal, id, version, result op, status]</code>. Failed items keep their full form.
+     */
+    private XContentBuilder compactToXContent(XContentBuilder builder, Params params) throws IOException {
+        Map<Tuple<ShardId, String>, Integer> ordinals = new LinkedHashMap<>();
+        List<DocWriteResponse> shardTable = new ArrayList<>();
+        for (AdvanceBulkItemResponse item : responses) {
+            if (item.isFailed() == false) {
+                DocWriteResponse response = item.getResponse();
+                Tuple<ShardId, String> key = new Tuple<>(response.getShardId(), response.getType());
+                if (ordinals.containsKey(key) == false) {
+                    ordinals.put(key, shardTable.size());
+                    shardTable.add(response);
+                }
+            }
+        }
+
+        builder.startObject();
+        builder.field(TOOK, tookInMillis);
+        if (ingestTookInMillis != AdvanceBulkResponse.NO_INGEST_TOOK) {
+            builder.field(INGEST_TOOK, ingestTookInMillis);
+        }
+        if (tookBreakdown != null) {
+            builder.field(TOOK_BREAKDOWN, tookBreakdown);
+        }
+        builder.field(ERRORS, hasFailures());
+        builder.startArray(SHARDS);
+        for (DocWriteResponse response : shardTable) {
+            builder.startObject();
+            builder.field(_INDEX, response.getIndex());
+            builder.field(_TYPE, response.getType());
+            builder.field(_SHARD, response.getShardId().id());
+            builder.field(_SHARDS, response.getShardInfo());
+            builder.endObject();
+        }
+        builder.endArray();
+        builder.startArray(ITEMS);
+        for (AdvanceBulkItemResponse item : responses) {
+            if (item.isFailed()) {
+                AdvanceBulkItemResponse.Failure failure = item.getFailure();
+                builder.startObject();
+                builder.field(OP, item.getOpType().getId());
+                builder.field(_INDEX, failure.getIndex());
+                builder.field(_TYPE, failure.getType());
+                builder.field(_ID, failure.getId());
+                builder.field(STATUS, failure.getStatus().getStatus());
+                builder.startObject(ERROR);
+                ElasticsearchException.generateThrowableXContent(builder, params, failure.getCause());
+                builder.endObject();
+                builder.endObject();
+            } else {
+                DocWriteResponse response = item.getResponse();
+                builder.startArray();
+                builder.value(item.getOpType().getId());
+                builder.value(ordinals.get(new Tuple<>(response.getShardId(), response.getType())).intValue());
+                builder.value(response.getId());
+                builder.value(response.getVersion());
+                builder.value(response.getResult().getOp());
+                builder.value(response.status().getStatus());
+                builder.endArray();
+            }
+        }
+        builder.endArray();
+        builder.endObject();
+        return builder;
+    }
+
+    /**
+     * Parses the default layout of the response, the {@link AdvanceBulkRequest.ResponseMode#COMPACT} layout is meant for
+     * high volume loaders that decode it themselves.
+     */
     public static AdvanceBulkResponse fromXContent(XContentParser parser) throws IOException {
         XContentParser.Token token = parser.nextToken();
         ensureExpectedToken(XContentParser.Token.START_OBJECT, token, parser::getTokenLocation);
@@ -161,6 +306,8 @@ public class AdvanceBulkResponse extends ActionResponse implements Iterable<Adva
         long took = -1L;
         long ingestTook = NO_INGEST_TOOK;
         List<AdvanceBulkItemResponse> items = new ArrayList<>();
+        AdvanceBulkSummary summary = null;
+        AdvanceBulkTookBreakdown tookBreakdown = null;
 
         String currentFieldName = parser.currentName();
         while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
@@ -182,10 +329,17 @@ public class AdvanceBulkResponse extends ActionResponse implements Iterable<Adva
                 } else {
                     throwUnknownField(currentFieldName, parser.getTokenLocation());
                 }
+            } else if (token == XContentParser.Token.START_OBJECT && SUMMARY.equals(currentFieldName)) {
+                summary = AdvanceBulkSummary.fromXContent(parser);
+            } else if (token == XContentParser.Token.START_OBJECT && TOOK_BREAKDOWN.equals(currentFieldName)) {
+                tookBreakdown = AdvanceBulkTookBreakdown.fromXContent(parser);
             } else {
                 throwUnknownToken(token, parser.getTokenLocation());
             }
         }
-        return new AdvanceBulkResponse(items.toArray(new AdvanceBulkItemResponse[items.size()]), took, ingestTook);
+        AdvanceBulkResponse response =
+            new AdvanceBulkResponse(items.toArray(new AdvanceBulkItemResponse[items.size()]), took, ingestTook, summary);
+        response.setTookBreakdown(tookBreakdown);
+        return response;
     }
 }
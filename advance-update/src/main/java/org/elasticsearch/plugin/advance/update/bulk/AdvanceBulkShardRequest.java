@@ -1,10 +1,20 @@
 package org.elasticsearch.plugin.advance.update.bulk;
 
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.support.replication.ReplicatedWriteRequest;
 import org.elasticsearch.action.support.replication.ReplicationRequest;
+import org.elasticsearch.action.support.replication.ReplicationTask;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.tasks.TaskId;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -13,11 +23,31 @@ import java.util.List;
 public class AdvanceBulkShardRequest extends ReplicatedWriteRequest<AdvanceBulkShardRequest> {
 
     private AdvanceBulkItemRequest[] items;
+    private AdvanceBulkRequest.Durability durability = AdvanceBulkRequest.Durability.REQUEST;
+    private TimeValue deferredSyncDelay = AdvanceBulkRequest.Durability.DEFAULT_DEFERRED_SYNC_DELAY;
+    private boolean coalescedRefresh;
+    private boolean tookBreakdown;
+    private boolean retryConflictsOnCoordinator;
+    /** when the request reached this node, not serialized */
+    private long receivedNanos = System.nanoTime();
+    private boolean hasDeadline;
+    /** the {@link System#nanoTime()} of this node the items must have started by, sent as the time left */
+    private long deadlineNanos;
+    /** the distinct tasks the items belong to, several when the request merges shard bulks of different bulks */
+    private TaskId[] bulkTasks = NO_BULK_TASKS;
+    /** per item, the index of its task in {@link #bulkTasks}, <code>-1</code> for none */
+    private int[] itemBulkTasks;
+    /** the recycled pages the sources of the translated items are in on the primary, not serialized */
+    private List<Releasable> pages;
+    /** per entry of {@link #pages}, the item whose source is in them */
+    private List<Integer> pagedItems;
+
+    private static final TaskId[] NO_BULK_TASKS = new TaskId[0];
 
     public AdvanceBulkShardRequest() {
     }
 
-    AdvanceBulkShardRequest(ShardId shardId, RefreshPolicy refreshPolicy, AdvanceBulkItemRequest[] items) {
+    public AdvanceBulkShardRequest(ShardId shardId, RefreshPolicy refreshPolicy, AdvanceBulkItemRequest[] items) {
         super(shardId);
         this.items = items;
         setRefreshPolicy(refreshPolicy);
@@ -27,6 +57,173 @@ public class AdvanceBulkShardRequest extends ReplicatedWriteRequest<AdvanceBulkS
         return items;
     }
 
+    /**
+     * How the primary and the replicas sync their translog after the items were written.
+     */
+    AdvanceBulkShardRequest durability(AdvanceBulkRequest.Durability durability, TimeValue deferredSyncDelay) {
+        this.durability = durability;
+        this.deferredSyncDelay = deferredSyncDelay;
+        return this;
+    }
+
+    public AdvanceBulkRequest.Durability durability() {
+        return durability;
+    }
+
+    public TimeValue deferredSyncDelay() {
+        return deferredSyncDelay;
+    }
+
+    /**
+     * Marks a request whose <tt>refresh=true</tt> the primary turned into a wait for a shared refresh, see
+     * {@link AdvanceRefreshCoalescer}.
+     */
+    void coalescedRefresh(boolean coalescedRefresh) {
+        this.coalescedRefresh = coalescedRefresh;
+    }
+
+    boolean coalescedRefresh() {
+        return coalescedRefresh;
+    }
+
+    /**
+     * Whether the primary times the phases of the request, see {@link AdvanceBulkTookBreakdown}.
+     */
+    void tookBreakdown(boolean tookBreakdown) {
+        this.tookBreakdown = tookBreakdown;
+    }
+
+    boolean tookBreakdown() {
+        return tookBreakdown;
+    }
+
+    /**
+     * Sets the time, as a {@link System#nanoTime()} of this node, after which the primary fails the items that did not run
+     * yet instead of executing them. It travels as the time left, so the clocks of the nodes don't need to agree.
+     */
+    void deadline(long deadlineNanos) {
+        this.hasDeadline = true;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    long deadlineNanos() {
+        return deadlineNanos;
+    }
+
+    /**
+     * Sets the task all items belong to, the one the primary registers the execution of the items under so that
+     * cancelling it stops them. The parent task of the request can't be used for that: the replication action replaces
+     * it with its own reroute task, which is not cancellable.
+     */
+    public void bulkTask(TaskId bulkTask) {
+        if (bulkTask.isSet() == false) {
+            bulkTasks(NO_BULK_TASKS, null);
+            return;
+        }
+        final int[] itemTasks = new int[items.length];
+        bulkTasks(new TaskId[] {bulkTask}, itemTasks);
+    }
+
+    /**
+     * Sets the tasks of the items of a merged request, <code>itemTasks</code> giving the index in <code>tasks</code> of each
+     * item or <code>-1</code>.
+     */
+    void bulkTasks(TaskId[] tasks, int[] itemTasks) {
+        assert tasks.length == 0 || itemTasks.length == items.length;
+        this.bulkTasks = tasks;
+        this.itemBulkTasks = tasks.length == 0 ? null : itemTasks;
+    }
+
+    TaskId[] bulkTasks() {
+        return bulkTasks;
+    }
+
+    /**
+     * The index in {@link #bulkTasks()} of the task of an item, <code>-1</code> if it belongs to none.
+     */
+    int itemBulkTask(int itemIndex) {
+        return itemBulkTasks == null ? -1 : itemBulkTasks[itemIndex];
+    }
+
+    /**
+     * Marks a request whose sender retries the updates that run into a version conflict itself, after a backoff. The primary
+     * then fails them on the first conflict instead of retrying them on its write thread.
+     */
+    void retryConflictsOnCoordinator(boolean retryConflictsOnCoordinator) {
+        this.retryConflictsOnCoordinator = retryConflictsOnCoordinator;
+    }
+
+    boolean retryConflictsOnCoordinator() {
+        return retryConflictsOnCoordinator;
+    }
+
+    /**
+     * Keeps the recycled pages of the translated item at <code>itemIndex</code> until the write is done, see
+     * {@link #releasePages()} and {@link #detachPages()}.
+     */
+    void releaseAfterWrite(int itemIndex, Releasable releasable) {
+        if (pages == null) {
+            pages = new ArrayList<>();
+            pagedItems = new ArrayList<>();
+        }
+        pages.add(releasable);
+        pagedItems.add(itemIndex);
+    }
+
+    /**
+     * Releases the pages of the translated items once the primary and the replicas wrote them.
+     */
+    void releasePages() {
+        if (pages != null) {
+            Releasables.close(pages);
+            pages = null;
+            pagedItems = null;
+        }
+    }
+
+    /**
+     * Copies the sources of the translated items out of their pages and releases the pages, for a request whose write failed:
+     * it may be executed again, or sent to another node, with the items it was rewritten with.
+     */
+    void detachPages() {
+        if (pages == null) {
+            return;
+        }
+        for (int itemIndex : pagedItems) {
+            final DocWriteRequest request = items[itemIndex].request();
+            if (request instanceof IndexRequest) {
+                final IndexRequest indexRequest = (IndexRequest) request;
+                indexRequest.source(new BytesArray(BytesReference.toBytes(indexRequest.source())), indexRequest.getContentType());
+            }
+        }
+        releasePages();
+    }
+
+    @Override
+    public Task createTask(long id, String type, String action, TaskId parentTaskId) {
+        return new ReplicationTask(id, type, action, getDescription(), parentTaskId) {
+            @Override
+            public void setPhase(String phase) {
+                super.setPhase(phase);
+                if ("finished".equals(phase)) {
+                    // a replication that finished as failed never gets to respond with its primary result
+                    detachPages();
+                }
+            }
+        };
+    }
+
+    /**
+     * When the request was created on, or read by, this node.
+     */
+    long receivedNanos() {
+        return receivedNanos;
+    }
+
     @Override
     public String[] indices() {
         List<String> indices = new ArrayList<>();
@@ -50,6 +247,24 @@ public class AdvanceBulkShardRequest extends ReplicatedWriteRequest<AdvanceBulkS
                 out.writeBoolean(false);
             }
         }
+        durability.writeTo(out);
+        deferredSyncDelay.writeTo(out);
+        out.writeBoolean(coalescedRefresh);
+        out.writeBoolean(tookBreakdown);
+        out.writeBoolean(retryConflictsOnCoordinator);
+        out.writeBoolean(hasDeadline);
+        if (hasDeadline) {
+            out.writeZLong(deadlineNanos - System.nanoTime());
+        }
+        out.writeVInt(bulkTasks.length);
+        for (TaskId bulkTask : bulkTasks) {
+            bulkTask.writeTo(out);
+        }
+        if (bulkTasks.length > 0) {
+            for (int itemBulkTask : itemBulkTasks) {
+                out.writeVInt(itemBulkTask + 1);
+            }
+        }
     }
 
     @Override
@@ -61,6 +276,27 @@ public class AdvanceBulkShardRequest extends ReplicatedWriteRequest<AdvanceBulkS
                 items[i] = AdvanceBulkItemRequest.readBulkItem(in);
             }
         }
+        durability = AdvanceBulkRequest.Durability.readFrom(in);
+        deferredSyncDelay = new TimeValue(in);
+        coalescedRefresh = in.readBoolean();
+        tookBreakdown = in.readBoolean();
+        retryConflictsOnCoordinator = in.readBoolean();
+        receivedNanos = System.nanoTime();
+        hasDeadline = in.readBoolean();
+        if (hasDeadline) {
+            deadlineNanos = receivedNanos + in.readZLong();
+        }
+        final int numBulkTasks = in.readVInt();
+        if (numBulkTasks > 0) {
+            bulkTasks = new TaskId[numBulkTasks];
+            for (int i = 0; i < numBulkTasks; i++) {
+                bulkTasks[i] = TaskId.readFromStream(in);
+            }
+            itemBulkTasks = new int[items.length];
+            for (int i = 0; i < items.length; i++) {
+                itemBulkTasks[i] = in.readVInt() - 1;
+            }
+        }
     }
 
     @Override
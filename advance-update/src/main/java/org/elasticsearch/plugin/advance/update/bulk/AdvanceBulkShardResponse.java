@@ -3,6 +3,7 @@ package org.elasticsearch.plugin.advance.update.bulk;
 import org.elasticsearch.action.DocWriteResponse;
 import org.elasticsearch.action.support.WriteResponse;
 import org.elasticsearch.action.support.replication.ReplicationResponse;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.index.shard.ShardId;
@@ -16,13 +17,20 @@ public class AdvanceBulkShardResponse extends ReplicationResponse implements Wri
 
     private ShardId shardId;
     private AdvanceBulkItemResponse[] responses;
+    @Nullable
+    private AdvanceBulkTookBreakdown.Timings timings;
 
     AdvanceBulkShardResponse() {
     }
 
     AdvanceBulkShardResponse(ShardId shardId, AdvanceBulkItemResponse[] responses) {
+        this(shardId, responses, null);
+    }
+
+    AdvanceBulkShardResponse(ShardId shardId, AdvanceBulkItemResponse[] responses, @Nullable AdvanceBulkTookBreakdown.Timings timings) {
         this.shardId = shardId;
         this.responses = responses;
+        this.timings = timings;
     }
 
     public ShardId getShardId() {
@@ -33,6 +41,14 @@ public class AdvanceBulkShardResponse extends ReplicationResponse implements Wri
         return responses;
     }
 
+    /**
+     * The phases the primary timed, <code>null</code> unless the request asked for them.
+     */
+    @Nullable
+    public AdvanceBulkTookBreakdown.Timings getTimings() {
+        return timings;
+    }
+
     @Override
     public void setForcedRefresh(boolean forcedRefresh) {
         /*
@@ -55,6 +71,7 @@ public class AdvanceBulkShardResponse extends ReplicationResponse implements Wri
         for (int i = 0; i < responses.length; i++) {
             responses[i] = AdvanceBulkItemResponse.readBulkItem(in);
         }
+        timings = in.readOptionalWriteable(AdvanceBulkTookBreakdown.Timings::new);
     }
 
     @Override
@@ -65,5 +82,6 @@ public class AdvanceBulkShardResponse extends ReplicationResponse implements Wri
         for (AdvanceBulkItemResponse response : responses) {
             response.writeTo(out);
         }
+        out.writeOptionalWriteable(timings);
     }
 }
@@ -0,0 +1,203 @@
+package org.elasticsearch.plugin.advance.update.bulk;
+
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+
+import java.io.IOException;
+
+import static org.elasticsearch.common.xcontent.XContentParserUtils.ensureExpectedToken;
+
+/**
+ * Outcome of an advance bulk that was executed with {@link AdvanceBulkRequest.ResponseMode#ERRORS_ONLY} or
+ * {@link AdvanceBulkRequest.ResponseMode#SUMMARY}. Successful items are never materialized as {@link AdvanceBulkItemResponse}s,
+ * they are only remembered as a bit per item slot and counted per {@link DocWriteResponse.Result}.
+ */
+public class AdvanceBulkSummary implements Writeable, ToXContentObject {
+
+    private static final String TOTAL = "total";
+    private static final String SUCCESSFUL = "successful";
+    private static final String FAILED = "failed";
+
+    private static final DocWriteResponse.Result[] RESULTS = DocWriteResponse.Result.values();
+
+    private final int numberOfItems;
+    /** the successful item slots, <code>null</code> when the summary was parsed back from its x-content form */
+    @Nullable
+    private final FixedBitSet successfulSlots;
+    private final long[] resultCounts;
+    private long successful;
+    private long failed;
+
+    public AdvanceBulkSummary(int numberOfItems) {
+        this.numberOfItems = numberOfItems;
+        this.successfulSlots = new FixedBitSet(Math.max(1, numberOfItems));
+        this.resultCounts = new long[RESULTS.length];
+    }
+
+    private AdvanceBulkSummary(int numberOfItems, long[] resultCounts, long successful, long failed) {
+        this.numberOfItems = numberOfItems;
+        this.successfulSlots = null;
+        this.resultCounts = resultCounts;
+        this.successful = successful;
+        this.failed = failed;
+    }
+
+    /**
+     * Read from a stream.
+     */
+    public AdvanceBulkSummary(StreamInput in) throws IOException {
+        numberOfItems = in.readVInt();
+        if (in.readBoolean()) {
+            long[] bits = new long[in.readVInt()];
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = in.readLong();
+            }
+            successfulSlots = new FixedBitSet(bits, Math.max(1, numberOfItems));
+        } else {
+            successfulSlots = null;
+        }
+        resultCounts = new long[RESULTS.length];
+        for (int i = 0; i < resultCounts.length; i++) {
+            resultCounts[i] = in.readVLong();
+        }
+        successful = in.readVLong();
+        failed = in.readVLong();
+    }
+
+    @Override
+    public synchronized void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(numberOfItems);
+        // a summary parsed from x-content has no slots, and stays without them on the other side
+        out.writeBoolean(successfulSlots != null);
+        if (successfulSlots != null) {
+            long[] bits = successfulSlots.getBits();
+            out.writeVInt(bits.length);
+            for (long word : bits) {
+                out.writeLong(word);
+            }
+        }
+        for (long count : resultCounts) {
+            out.writeVLong(count);
+        }
+        out.writeVLong(successful);
+        out.writeVLong(failed);
+    }
+
+    /**
+     * Records a successful item without keeping its response around.
+     */
+    synchronized void onSuccess(AdvanceBulkItemResponse item) {
+        assert item.isFailed() == false : "failed items must be recorded through onFailure";
+        successfulSlots.set(item.getItemId());
+        resultCounts[item.getResponse().getResult().ordinal()]++;
+        successful++;
+    }
+
+    synchronized void onFailure() {
+        failed++;
+    }
+
+    /**
+     * Adds the successful items and counters of a summary that was built for a subset of the items of this summary.
+     * @param other the summary of the subset
+     * @param slots maps the item slots of the subset to the item slots of this summary
+     */
+    synchronized void addAll(AdvanceBulkSummary other, int[] slots) {
+        synchronized (other) {
+            if (other.successfulSlots != null && successfulSlots != null) {
+                for (int i = 0; i < other.numberOfItems; i++) {
+                    if (other.successfulSlots.get(i)) {
+                        successfulSlots.set(slots[i]);
+                    }
+                }
+            }
+            for (int i = 0; i < resultCounts.length; i++) {
+                resultCounts[i] += other.resultCounts[i];
+            }
+            successful += other.successful;
+            failed += other.failed;
+        }
+    }
+
+    /**
+     * The number of items of the bulk request.
+     */
+    public int getNumberOfItems() {
+        return numberOfItems;
+    }
+
+    /**
+     * Whether the item in the given slot of the bulk request was executed successfully. Always <code>false</code> for a summary that
+     * was parsed from a rest response, only the counters are rendered there.
+     */
+    public synchronized boolean isSuccessful(int slot) {
+        return successfulSlots != null && successfulSlots.get(slot);
+    }
+
+    public synchronized long getSuccessful() {
+        return successful;
+    }
+
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    /**
+     * The number of successful items that ended with the given result.
+     */
+    public synchronized long getCount(DocWriteResponse.Result result) {
+        return resultCounts[result.ordinal()];
+    }
+
+    @Override
+    public synchronized XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field(TOTAL, numberOfItems);
+        builder.field(SUCCESSFUL, successful);
+        builder.field(FAILED, failed);
+        for (DocWriteResponse.Result result : RESULTS) {
+            builder.field(result.getLowercase(), resultCounts[result.ordinal()]);
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    public static AdvanceBulkSummary fromXContent(XContentParser parser) throws IOException {
+        ensureExpectedToken(XContentParser.Token.START_OBJECT, parser.currentToken(), parser::getTokenLocation);
+        int total = 0;
+        long successful = 0;
+        long failed = 0;
+        long[] resultCounts = new long[RESULTS.length];
+        String currentFieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token.isValue()) {
+                if (TOTAL.equals(currentFieldName)) {
+                    total = parser.intValue();
+                } else if (SUCCESSFUL.equals(currentFieldName)) {
+                    successful = parser.longValue();
+                } else if (FAILED.equals(currentFieldName)) {
+                    failed = parser.longValue();
+                } else {
+                    for (DocWriteResponse.Result result : RESULTS) {
+                        if (result.getLowercase().equals(currentFieldName)) {
+                            resultCounts[result.ordinal()] = parser.longValue();
+                        }
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new AdvanceBulkSummary(total, resultCounts, successful, failed);
+    }
+}
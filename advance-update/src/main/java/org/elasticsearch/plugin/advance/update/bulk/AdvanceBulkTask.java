@@ -0,0 +1,40 @@
+package org.elasticsearch.plugin.advance.update.bulk;
+
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.tasks.CancellableTask;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.tasks.TaskCancelledException;
+import org.elasticsearch.tasks.TaskId;
+
+/**
+ * The task of an advance bulk. Cancelling it bans its children on all nodes, so the primaries stop executing the items of
+ * its shard bulks that did not run yet and fail them with a {@link org.elasticsearch.tasks.TaskCancelledException}.
+ * <p>
+ * Shard bulks run as replication tasks, which can't be cancelled, so the primary registers one of these for the time it
+ * executes the items, as a child of the bulk, and checks it between items.
+ */
+public class AdvanceBulkTask extends CancellableTask {
+
+    public AdvanceBulkTask(long id, String type, String action, String description, TaskId parentTaskId) {
+        super(id, type, action, description, parentTaskId);
+    }
+
+    @Override
+    public boolean shouldCancelChildrenOnCancellation() {
+        return true;
+    }
+
+    /**
+     * Why the items that did not run yet must not run anymore, <code>null</code> if they can.
+     */
+    static Exception abortReason(Task task, boolean hasDeadline, long deadlineNanos) {
+        if (task instanceof CancellableTask && ((CancellableTask) task).isCancelled()) {
+            return new TaskCancelledException("advance bulk cancelled [" + ((CancellableTask) task).getReasonCancelled() + "]");
+        }
+        if (hasDeadline && System.nanoTime() - deadlineNanos > 0) {
+            return new ElasticsearchStatusException("advance bulk timed out before the item was executed", RestStatus.REQUEST_TIMEOUT);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,270 @@
+package org.elasticsearch.plugin.advance.update.bulk;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.elasticsearch.common.xcontent.XContentParserUtils.ensureExpectedToken;
+import static org.elasticsearch.common.xcontent.XContentParserUtils.throwUnknownField;
+import static org.elasticsearch.common.xcontent.XContentParserUtils.throwUnknownToken;
+
+/**
+ * Where the time of an advance bulk went, in nanoseconds like the breakdown of the profile API. The coordinating node times
+ * the parsing of the body and the routing of the items, the primary of every shard times the phases of its shard bulk, and
+ * the rest of the round trip of the shard bulk is accounted to the replication. The totals add the phases of all shards up,
+ * shards run concurrently so they can exceed the <tt>took</tt> of the bulk.
+ */
+public class AdvanceBulkTookBreakdown implements Writeable, ToXContentObject {
+
+    private static final String SHARDS = "shards";
+    private static final String _INDEX = "_index";
+    private static final String _SHARD = "_shard";
+
+    public enum Phase {
+        /** parsing the body on the node that received the bulk */
+        PARSE,
+        /** resolving the indices and routing of the items and grouping them per shard */
+        ROUTING,
+        /** from the arrival of the shard bulk on the node of the primary to the start of its execution */
+        QUEUE,
+        /** reading the current documents of updates */
+        GET,
+        /** merging the partial documents, or running the scripts, of updates */
+        TRANSLATE,
+        /** writing the documents to Lucene and the translog */
+        INDEX,
+        /** syncing the translog of the primary, which overlaps the wait for a refresh of bulks that wait for one */
+        TRANSLOG_SYNC,
+        /** the rest of the round trip of the shard bulk, mostly writing to the replicas */
+        REPLICATION;
+
+        public String getValue() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        static Phase parse(String value) {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        }
+
+        /** whether the primary of a shard times the phase */
+        boolean isShardPhase() {
+            return this != PARSE && this != ROUTING;
+        }
+    }
+
+    /**
+     * The nanoseconds spent in every phase.
+     */
+    public static final class Timings implements Writeable {
+        private final long[] nanos = new long[Phase.values().length];
+
+        public Timings() {
+        }
+
+        Timings(StreamInput in) throws IOException {
+            for (int i = 0; i < nanos.length; i++) {
+                nanos[i] = in.readVLong();
+            }
+        }
+
+        public synchronized void add(Phase phase, long phaseNanos) {
+            nanos[phase.ordinal()] += phaseNanos;
+        }
+
+        synchronized void addAll(Timings other) {
+            for (int i = 0; i < nanos.length; i++) {
+                nanos[i] += other.get(Phase.values()[i]);
+            }
+        }
+
+        public synchronized long get(Phase phase) {
+            return nanos[phase.ordinal()];
+        }
+
+        /**
+         * The time of all phases the primary of a shard times.
+         */
+        synchronized long shardNanos() {
+            long sum = 0;
+            for (Phase phase : Phase.values()) {
+                if (phase.isShardPhase()) {
+                    sum += nanos[phase.ordinal()];
+                }
+            }
+            return sum;
+        }
+
+        @Override
+        public synchronized void writeTo(StreamOutput out) throws IOException {
+            for (long phaseNanos : nanos) {
+                out.writeVLong(phaseNanos);
+            }
+        }
+
+        synchronized void toXContent(XContentBuilder builder, boolean shardPhasesOnly) throws IOException {
+            for (Phase phase : Phase.values()) {
+                if (shardPhasesOnly == false || phase.isShardPhase()) {
+                    builder.field(phase.getValue(), nanos[phase.ordinal()]);
+                }
+            }
+        }
+    }
+
+    private final Timings total;
+    private final Map<ShardId, Timings> shards = new TreeMap<>();
+
+    public AdvanceBulkTookBreakdown() {
+        this.total = new Timings();
+    }
+
+    AdvanceBulkTookBreakdown(StreamInput in) throws IOException {
+        total = new Timings(in);
+        int size = in.readVInt();
+        for (int i = 0; i < size; i++) {
+            shards.put(ShardId.readShardId(in), new Timings(in));
+        }
+    }
+
+    void onParse(long nanos) {
+        total.add(Phase.PARSE, nanos);
+    }
+
+    void onRouting(long nanos) {
+        total.add(Phase.ROUTING, nanos);
+    }
+
+    /**
+     * Adds the timings the primary reported for a shard bulk, and accounts what remains of its round trip to the replication.
+     */
+    void onShard(ShardId shardId, Timings primaryTimings, long roundTripNanos) {
+        final Timings timings = new Timings();
+        timings.addAll(primaryTimings);
+        timings.add(Phase.REPLICATION, Math.max(0, roundTripNanos - primaryTimings.shardNanos()));
+        synchronized (shards) {
+            Timings shardTimings = shards.get(shardId);
+            if (shardTimings == null) {
+                shards.put(shardId, timings);
+            } else {
+                shardTimings.addAll(timings);
+            }
+        }
+        total.addAll(timings);
+    }
+
+    /**
+     * Adds the breakdown of a part of the bulk, e.g. the part that ran through ingest pipelines on another node.
+     */
+    void addAll(AdvanceBulkTookBreakdown other) {
+        total.addAll(other.total);
+        synchronized (shards) {
+            for (Map.Entry<ShardId, Timings> entry : other.getShards().entrySet()) {
+                shards.computeIfAbsent(entry.getKey(), shardId -> new Timings()).addAll(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * The phases summed up over all shards.
+     */
+    public Timings getTotal() {
+        return total;
+    }
+
+    public Map<ShardId, Timings> getShards() {
+        synchronized (shards) {
+            return Collections.unmodifiableMap(new TreeMap<>(shards));
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        total.writeTo(out);
+        Map<ShardId, Timings> shards = getShards();
+        out.writeVInt(shards.size());
+        for (Map.Entry<ShardId, Timings> entry : shards.entrySet()) {
+            entry.getKey().writeTo(out);
+            entry.getValue().writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
+        builder.startObject();
+        total.toXContent(builder, false);
+        builder.startArray(SHARDS);
+        for (Map.Entry<ShardId, Timings> entry : getShards().entrySet()) {
+            builder.startObject();
+            builder.field(_INDEX, entry.getKey().getIndexName());
+            builder.field(_SHARD, entry.getKey().id());
+            entry.getValue().toXContent(builder, true);
+            builder.endObject();
+        }
+        builder.endArray();
+        return builder.endObject();
+    }
+
+    public static AdvanceBulkTookBreakdown fromXContent(XContentParser parser) throws IOException {
+        ensureExpectedToken(XContentParser.Token.START_OBJECT, parser.currentToken(), parser::getTokenLocation);
+        AdvanceBulkTookBreakdown breakdown = new AdvanceBulkTookBreakdown();
+        XContentParser.Token token;
+        String currentFieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token.isValue()) {
+                breakdown.total.add(parsePhase(currentFieldName, parser), parser.longValue());
+            } else if (token == XContentParser.Token.START_ARRAY && SHARDS.equals(currentFieldName)) {
+                while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                    ensureExpectedToken(XContentParser.Token.START_OBJECT, token, parser::getTokenLocation);
+                    parseShard(parser, breakdown);
+                }
+            } else {
+                throwUnknownToken(token, parser.getTokenLocation());
+            }
+        }
+        return breakdown;
+    }
+
+    private static void parseShard(XContentParser parser, AdvanceBulkTookBreakdown breakdown) throws IOException {
+        String index = null;
+        int shard = -1;
+        Timings timings = new Timings();
+        XContentParser.Token token;
+        String currentFieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (_INDEX.equals(currentFieldName)) {
+                index = parser.text();
+            } else if (_SHARD.equals(currentFieldName)) {
+                shard = parser.intValue();
+            } else if (token.isValue()) {
+                timings.add(parsePhase(currentFieldName, parser), parser.longValue());
+            } else {
+                throwUnknownToken(token, parser.getTokenLocation());
+            }
+        }
+        // the uuid of the index is not rendered
+        breakdown.shards.put(new ShardId(index, "_na_", shard), timings);
+    }
+
+    private static Phase parsePhase(String fieldName, XContentParser parser) {
+        try {
+            return Phase.parse(fieldName);
+        } catch (IllegalArgumentException e) {
+            throwUnknownField(fieldName, parser.getTokenLocation());
+            throw new AssertionError("unreachable");
+        }
+    }
+}
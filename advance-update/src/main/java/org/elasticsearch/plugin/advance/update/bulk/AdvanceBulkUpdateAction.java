@@ -6,13 +6,21 @@ import org.elasticsearch.action.support.ActiveShardCount;
 import org.elasticsearch.client.Requests;
 import org.elasticsearch.client.node.NodeClient;
 import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.logging.DeprecationLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.plugin.advance.update.AdvanceBulkUpdate;
 import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
 import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestResponse;
+import org.elasticsearch.rest.action.RestResponseListener;
 import org.elasticsearch.rest.action.RestStatusToXContentListener;
 import org.elasticsearch.rest.action.document.RestBulkAction;
 import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
@@ -63,14 +71,59 @@ public class AdvanceBulkUpdateAction extends BaseRestHandler {
         }
         bulkRequest.timeout(request.paramAsTime("timeout", AdvanceBulkShardRequest.DEFAULT_TIMEOUT));
         bulkRequest.setRefreshPolicy(request.param("refresh"));
-        bulkRequest.add(request.requiredContent(), defaultIndex, defaultType, defaultRouting, defaultFields,
-            defaultFetchSourceContext, defaultPipeline, null, allowExplicitIndex, request.getXContentType());
+        bulkRequest.responseMode(AdvanceBulkRequest.ResponseMode.parse(request.param("response")));
+        bulkRequest.durability(request.param("durability"));
+        bulkRequest.routingVersion(request.paramAsLong("routing_version", AdvanceBulkRequest.NOT_PRE_ROUTED));
+        bulkRequest.tookBreakdown(request.paramAsBoolean("took_breakdown", false));
+        // not [format], which is the response format the channel reads
+        final String bodyFormat = request.param("body_format", "ndjson");
+        if ("ndjson".equals(bodyFormat) == false && "columnar".equals(bodyFormat) == false) {
+            throw new IllegalArgumentException("unknown body_format [" + bodyFormat + "], expected [ndjson] or [columnar]");
+        }
+        final BytesReference content = request.requiredContent();
+        final XContentType xContentType = request.getXContentType();
+
+        // parsing a large body is moved off the network thread onto the plugin's coordinating pool
+        return channel -> client.threadPool().executor(AdvanceBulkUpdate.COORDINATING_THREAD_POOL_NAME).execute(new AbstractRunnable() {
+            @Override
+            protected void doRun() throws Exception {
+                final long parseStartNanos = System.nanoTime();
+                if ("columnar".equals(bodyFormat)) {
+                    bulkRequest.addColumnar(content, defaultIndex, defaultType, defaultRouting, defaultFields,
+                        defaultFetchSourceContext, defaultPipeline, null, allowExplicitIndex, xContentType);
+                } else {
+                    bulkRequest.add(content, defaultIndex, defaultType, defaultRouting, defaultFields,
+                        defaultFetchSourceContext, defaultPipeline, null, allowExplicitIndex, xContentType);
+                }
+                bulkRequest.parseNanos(System.nanoTime() - parseStartNanos);
+                final ActionListener listener;
+                if (bulkRequest.responseMode() == AdvanceBulkRequest.ResponseMode.COMPACT) {
+                    listener = new RestResponseListener<AdvanceBulkResponse>(channel) {
+                        @Override
+                        public RestResponse buildResponse(AdvanceBulkResponse response) throws Exception {
+                            // the compact layout follows the content type of the body, SMILE and CBOR loaders get a binary response
+                            XContentBuilder builder = channel.newBuilder(xContentType, true);
+                            response.toXContent(builder, channel.request());
+                            return new BytesRestResponse(response.status(), builder);
+                        }
+                    };
+                } else {
+                    listener = new RestStatusToXContentListener<>(channel);
+                }
+                Action instance = AdvanceBulkAction.INSTANCE;
+                client.execute(instance, bulkRequest, listener);
+            }
 
-        return channel -> {
-            final ActionListener listener = new RestStatusToXContentListener<>(channel);
-            Action instance = AdvanceBulkAction.INSTANCE;
-            client.execute(instance, bulkRequest, listener);
-        };
+            @Override
+            public void onFailure(Exception e) {
+                try {
+                    channel.sendResponse(new BytesRestResponse(channel, e));
+                } catch (Exception inner) {
+                    inner.addSuppressed(e);
+                    logger.error("failed to send failure response", inner);
+                }
+            }
+        });
     }
 
     @Override
@@ -0,0 +1,400 @@
+package org.elasticsearch.plugin.advance.update.bulk;
+
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.plugin.advance.update.action.UpdateRequest;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parses the columnar body of an advance bulk, for batches of documents that share the same fields. A header line declares
+ * the action, index and type of a batch with the metadata columns and the typed field paths of its rows, every following
+ * line is one row, an array of values in the order of the columns:
+ * <pre>
+ * { "columns": { "action": "update", "_index": "test", "_type": "doc", "metadata": ["_id"],
+ *                "fields": { "user.name": "string", "counter": "long" } } }
+ * ["1", "kimchy", 3]
+ * ["2", "bob", 4]
+ * </pre>
+ * The values of a row are read by their declared type and written straight into the source of its request, without
+ * parsing a metadata object per line nor building a map per document. A <code>null</code> value leaves its field out. A
+ * new header line starts a new batch.
+ */
+final class AdvanceColumnarBulkParser {
+
+    enum ColumnType {
+        STRING, LONG, DOUBLE, BOOLEAN;
+
+        static ColumnType fromString(String type) {
+            try {
+                return valueOf(type.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("unknown column type [" + type + "], expected one of [string, long, double, boolean]");
+            }
+        }
+    }
+
+    private AdvanceColumnarBulkParser() {
+    }
+
+    static void parse(AdvanceBulkRequest bulkRequest, BytesReference data, @Nullable String defaultIndex, @Nullable String defaultType,
+                      @Nullable String defaultRouting, @Nullable String[] defaultFields,
+                      @Nullable FetchSourceContext defaultFetchSourceContext, @Nullable String defaultPipeline,
+                      @Nullable Object payload, boolean allowExplicitIndex, XContentType xContentType) throws IOException {
+        final XContent xContent = xContentType.xContent();
+        final byte marker = xContent.streamSeparator();
+        final int length = data.length();
+        Header header = null;
+        Object[] values = null;
+        int line = 0;
+        int from = 0;
+        while (from < length) {
+            int nextMarker = findNextMarker(marker, from, data, length);
+            if (nextMarker == -1) {
+                // the last row may miss its separator
+                nextMarker = length;
+            }
+            line++;
+            // EMPTY is safe here because we never call namedObject
+            try (XContentParser parser = xContent.createParser(NamedXContentRegistry.EMPTY, data.slice(from, nextMarker - from))) {
+                from = nextMarker + 1;
+                final XContentParser.Token token = parser.nextToken();
+                if (token == null) {
+                    continue;
+                }
+                if (token == XContentParser.Token.START_OBJECT) {
+                    header = parseHeader(parser, line, defaultIndex, defaultType, defaultPipeline, allowExplicitIndex);
+                    values = new Object[header.width];
+                } else if (token == XContentParser.Token.START_ARRAY) {
+                    if (header == null) {
+                        throw new IllegalArgumentException("Malformed row line [" + line + "], rows must follow a columnar header");
+                    }
+                    readRow(parser, header, values, line);
+                    addRow(bulkRequest, header, values, defaultRouting, defaultFields, defaultFetchSourceContext, payload, xContentType);
+                } else {
+                    throw new IllegalArgumentException("Malformed columnar line [" + line + "], expected " + XContentParser.Token.START_OBJECT
+                        + " or " + XContentParser.Token.START_ARRAY + " but found [" + token + "]");
+                }
+            }
+        }
+    }
+
+    private static Header parseHeader(XContentParser parser, int line, @Nullable String defaultIndex, @Nullable String defaultType,
+                                      @Nullable String defaultPipeline, boolean allowExplicitIndex) throws IOException {
+        XContentParser.Token token = parser.nextToken();
+        if (token != XContentParser.Token.FIELD_NAME || "columns".equals(parser.currentName()) == false) {
+            throw new IllegalArgumentException("Malformed columnar header line [" + line + "], expected a [columns] object");
+        }
+        token = parser.nextToken();
+        if (token != XContentParser.Token.START_OBJECT) {
+            throw new IllegalArgumentException("Malformed columnar header line [" + line + "], expected " + XContentParser.Token.START_OBJECT
+                + " but found [" + token + "]");
+        }
+        final Header header = new Header(defaultIndex, defaultType, defaultPipeline);
+        String[] metadata = Strings.EMPTY_ARRAY;
+        final Map<String, ColumnType> fields = new LinkedHashMap<>();
+        String currentFieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token.isValue()) {
+                if ("action".equals(currentFieldName)) {
+                    header.action = parser.text();
+                } else if ("_index".equals(currentFieldName)) {
+                    if (!allowExplicitIndex) {
+                        throw new IllegalArgumentException("explicit index in bulk is not allowed");
+                    }
+                    header.index = parser.text();
+                } else if ("_type".equals(currentFieldName)) {
+                    header.type = parser.text();
+                } else if ("_version_type".equals(currentFieldName) || "version_type".equals(currentFieldName)) {
+                    header.versionType = VersionType.fromString(parser.text());
+                } else if ("_retry_on_conflict".equals(currentFieldName) || "retry_on_conflict".equals(currentFieldName)) {
+                    header.retryOnConflict = parser.intValue();
+                } else if ("doc_as_upsert".equals(currentFieldName)) {
+                    header.docAsUpsert = parser.booleanValue();
+                } else if ("pipeline".equals(currentFieldName)) {
+                    header.pipeline = parser.text();
+                } else {
+                    throw new IllegalArgumentException("Columnar header line [" + line + "] contains an unknown parameter [" + currentFieldName + "]");
+                }
+            } else if (token == XContentParser.Token.START_ARRAY && "metadata".equals(currentFieldName)) {
+                metadata = parser.list().stream().map(Object::toString).toArray(String[]::new);
+            } else if (token == XContentParser.Token.START_OBJECT && "fields".equals(currentFieldName)) {
+                String path = null;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                    if (token == XContentParser.Token.FIELD_NAME) {
+                        path = parser.currentName();
+                    } else if (token == XContentParser.Token.VALUE_STRING) {
+                        fields.put(path, ColumnType.fromString(parser.text()));
+                    } else {
+                        throw new IllegalArgumentException("Malformed columnar header line [" + line + "], expected the type of field ["
+                            + path + "] but found [" + token + "]");
+                    }
+                }
+            } else {
+                throw new IllegalArgumentException("Malformed columnar header line [" + line + "], unexpected [" + token
+                    + "] for field [" + currentFieldName + "]");
+            }
+        }
+        if ("update".equals(header.action) == false && "index".equals(header.action) == false
+            && "create".equals(header.action) == false) {
+            throw new IllegalArgumentException("Columnar header line [" + line + "] has action [" + header.action
+                + "], expected one of [update, index, create]");
+        }
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("Columnar header line [" + line + "] declares no fields");
+        }
+        header.columns(metadata, fields, line);
+        return header;
+    }
+
+    private static void readRow(XContentParser parser, Header header, Object[] values, int line) throws IOException {
+        for (int column = 0; column < header.width; column++) {
+            final XContentParser.Token token = parser.nextToken();
+            if (token == XContentParser.Token.END_ARRAY) {
+                throw new IllegalArgumentException("Malformed row line [" + line + "], expected [" + header.width + "] values but found ["
+                    + column + "]");
+            }
+            values[column] = token == XContentParser.Token.VALUE_NULL ? null : header.read(parser, token, column, line);
+        }
+        if (parser.nextToken() != XContentParser.Token.END_ARRAY) {
+            throw new IllegalArgumentException("Malformed row line [" + line + "], expected [" + header.width + "] values but found more");
+        }
+    }
+
+    private static void addRow(AdvanceBulkRequest bulkRequest, Header header, Object[] values, @Nullable String defaultRouting,
+                               @Nullable String[] defaultFields, @Nullable FetchSourceContext defaultFetchSourceContext,
+                               @Nullable Object payload, XContentType xContentType) throws IOException {
+        final String id = (String) header.metadata(values, header.idColumn);
+        final String routing = header.routingColumn >= 0 ? (String) values[header.routingColumn] : defaultRouting;
+        final String parent = (String) header.metadata(values, header.parentColumn);
+        final Long versionValue = (Long) header.metadata(values, header.versionColumn);
+        final long version = versionValue == null ? Versions.MATCH_ANY : versionValue;
+
+        final XContentBuilder source = XContentBuilder.builder(xContentType.xContent());
+        source.startObject();
+        writeFields(source, header.root, values);
+        source.endObject();
+
+        if ("update".equals(header.action)) {
+            final UpdateRequest updateRequest = new UpdateRequest(header.index, header.type, id).routing(routing).parent(parent)
+                .retryOnConflict(header.retryOnConflict).version(version).versionType(header.versionType)
+                .doc(source).docAsUpsert(header.docAsUpsert);
+            updateRequest.doc().version(version).versionType(header.versionType);
+            if (defaultFetchSourceContext != null) {
+                updateRequest.fetchSource(defaultFetchSourceContext);
+            }
+            if (defaultFields != null) {
+                updateRequest.fields(defaultFields);
+            }
+            bulkRequest.internalAdd(updateRequest, payload);
+        } else {
+            bulkRequest.internalAdd(new IndexRequest(header.index, header.type, id).routing(routing).parent(parent).version(version)
+                .versionType(header.versionType).create("create".equals(header.action)).setPipeline(header.pipeline)
+                .source(source), payload);
+        }
+    }
+
+    private static void writeFields(XContentBuilder builder, Node node, Object[] values) throws IOException {
+        for (Node child : node.children.values()) {
+            if (child.column >= 0) {
+                if (values[child.column] != null) {
+                    builder.field(child.name, values[child.column]);
+                }
+            } else if (hasValue(child, values)) {
+                builder.startObject(child.name);
+                writeFields(builder, child, values);
+                builder.endObject();
+            }
+        }
+    }
+
+    private static boolean hasValue(Node node, Object[] values) {
+        if (node.column >= 0) {
+            return values[node.column] != null;
+        }
+        for (Node child : node.children.values()) {
+            if (hasValue(child, values)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int findNextMarker(byte marker, int from, BytesReference data, int length) {
+        for (int i = from; i < length; i++) {
+            if (data.get(i) == marker) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * An object of the source, or a field when it has a column.
+     */
+    private static final class Node {
+        final String name;
+        final int column;
+        final Map<String, Node> children = new LinkedHashMap<>();
+
+        Node(String name, int column) {
+            this.name = name;
+            this.column = column;
+        }
+    }
+
+    private static final class Header {
+        String action;
+        String index;
+        String type;
+        String pipeline;
+        VersionType versionType = VersionType.INTERNAL;
+        int retryOnConflict = 0;
+        boolean docAsUpsert = false;
+
+        int idColumn = -1;
+        int routingColumn = -1;
+        int parentColumn = -1;
+        int versionColumn = -1;
+        int metadataWidth;
+        ColumnType[] fieldTypes;
+        int width;
+        final Node root = new Node(null, -1);
+
+        Header(@Nullable String index, @Nullable String type, @Nullable String pipeline) {
+            this.index = index;
+            this.type = type;
+            this.pipeline = pipeline;
+        }
+
+        void columns(String[] metadata, Map<String, ColumnType> fields, int line) {
+            for (int column = 0; column < metadata.length; column++) {
+                final int previous;
+                switch (metadata[column]) {
+                    case "_id":
+                        previous = idColumn;
+                        idColumn = column;
+                        break;
+                    case "_routing":
+                        previous = routingColumn;
+                        routingColumn = column;
+                        break;
+                    case "_parent":
+                        previous = parentColumn;
+                        parentColumn = column;
+                        break;
+                    case "_version":
+                        previous = versionColumn;
+                        versionColumn = column;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Columnar header line [" + line + "] contains an unknown metadata column ["
+                            + metadata[column] + "], expected one of [_id, _routing, _parent, _version]");
+                }
+                if (previous >= 0) {
+                    throw new IllegalArgumentException("Columnar header line [" + line + "] declares the metadata column ["
+                        + metadata[column] + "] twice");
+                }
+            }
+            metadataWidth = metadata.length;
+            fieldTypes = new ColumnType[fields.size()];
+            int column = metadataWidth;
+            for (Map.Entry<String, ColumnType> field : fields.entrySet()) {
+                addField(field.getKey(), column, line);
+                fieldTypes[column - metadataWidth] = field.getValue();
+                column++;
+            }
+            width = column;
+        }
+
+        private void addField(String path, int column, int line) {
+            final String[] names = path.split("\\.", -1);
+            Node node = root;
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].isEmpty()) {
+                    throw new IllegalArgumentException("Columnar header line [" + line + "] declares the invalid field path [" + path + "]");
+                }
+                final boolean leaf = i == names.length - 1;
+                Node child = node.children.get(names[i]);
+                if (child == null) {
+                    child = new Node(names[i], leaf ? column : -1);
+                    node.children.put(names[i], child);
+                } else if (leaf || child.column >= 0) {
+                    throw new IllegalArgumentException("Columnar header line [" + line + "] declares the field [" + path
+                        + "] that conflicts with another field");
+                }
+                node = child;
+            }
+        }
+
+        @Nullable
+        Object metadata(Object[] values, int column) {
+            return column >= 0 ? values[column] : null;
+        }
+
+        Object read(XContentParser parser, XContentParser.Token token, int column, int line) throws IOException {
+            if (column < metadataWidth) {
+                if (column == versionColumn) {
+                    if (token != XContentParser.Token.VALUE_NUMBER) {
+                        throw mismatch("_version", "long", token, line);
+                    }
+                    return parser.longValue();
+                }
+                if (token.isValue() == false) {
+                    throw mismatch("metadata", "string", token, line);
+                }
+                return parser.text();
+            }
+            final ColumnType type = fieldTypes[column - metadataWidth];
+            switch (type) {
+                case STRING:
+                    if (token != XContentParser.Token.VALUE_STRING) {
+                        throw mismatch(column, type, token, line);
+                    }
+                    return parser.text();
+                case LONG:
+                    if (token != XContentParser.Token.VALUE_NUMBER || (parser.numberType() != XContentParser.NumberType.INT
+                        && parser.numberType() != XContentParser.NumberType.LONG)) {
+                        throw mismatch(column, type, token, line);
+                    }
+                    return parser.longValue();
+                case DOUBLE:
+                    if (token != XContentParser.Token.VALUE_NUMBER) {
+                        throw mismatch(column, type, token, line);
+                    }
+                    return parser.doubleValue();
+                case BOOLEAN:
+                    if (token != XContentParser.Token.VALUE_BOOLEAN) {
+                        throw mismatch(column, type, token, line);
+                    }
+                    return parser.booleanValue();
+                default:
+                    throw new AssertionError("unknown column type [" + type + "]");
+            }
+        }
+
+        private IllegalArgumentException mismatch(int column, ColumnType type, XContentParser.Token token, int line) {
+            return mismatch("column [" + column + "]", type.name().toLowerCase(Locale.ROOT), token, line);
+        }
+
+        private static IllegalArgumentException mismatch(String column, String type, XContentParser.Token token, int line) {
+            return new IllegalArgumentException("Malformed row line [" + line + "], expected a " + type + " value for " + column
+                + " but found [" + token + "]");
+        }
+    }
+}
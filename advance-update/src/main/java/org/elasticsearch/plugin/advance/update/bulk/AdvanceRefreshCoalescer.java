@@ -0,0 +1,93 @@
+package org.elasticsearch.plugin.advance.update.bulk;
+
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.util.Supplier;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lets the shard bulks that ask for {@link RefreshPolicy#IMMEDIATE} share refreshes. Instead of refreshing the shard once per
+ * request, such a request is turned into a {@link RefreshPolicy#WAIT_UNTIL} request and a single refresh of the shard is
+ * scheduled for all requests that arrive within the configured window. The requests return once that refresh made their
+ * writes visible, together with the <tt>wait_for</tt> requests that wait on the same shard.
+ * <p>
+ * Coalescing is opt-in: when it is disabled <tt>refresh=true</tt> refreshes the shard on every request.
+ */
+@Singleton
+public class AdvanceRefreshCoalescer extends AbstractComponent {
+
+    public static final Setting<Boolean> ENABLED_SETTING =
+        Setting.boolSetting("advance_bulk.refresh.coalesce.enabled", false, Property.NodeScope);
+
+    /**
+     * How long a shard waits for more <tt>refresh=true</tt> writes before it refreshes.
+     */
+    public static final Setting<TimeValue> WINDOW_SETTING =
+        Setting.timeSetting("advance_bulk.refresh.coalesce.window", TimeValue.timeValueMillis(50), TimeValue.timeValueMillis(1),
+            Property.NodeScope);
+
+    private final ThreadPool threadPool;
+    private final boolean enabled;
+    private final TimeValue window;
+
+    private final Set<ShardId> scheduledRefreshes = ConcurrentHashMap.newKeySet();
+
+    @Inject
+    public AdvanceRefreshCoalescer(Settings settings, ThreadPool threadPool) {
+        super(settings);
+        this.threadPool = threadPool;
+        this.enabled = ENABLED_SETTING.get(settings);
+        this.window = WINDOW_SETTING.get(settings);
+    }
+
+    public static List<Setting<?>> getSettings() {
+        return Arrays.asList(ENABLED_SETTING, WINDOW_SETTING);
+    }
+
+    /**
+     * Whether requests with the given refresh policy should leave their refresh to this coalescer.
+     */
+    public boolean coalesces(RefreshPolicy refreshPolicy) {
+        return enabled && refreshPolicy == RefreshPolicy.IMMEDIATE;
+    }
+
+    /**
+     * Makes sure the shard refreshes within the window. Does nothing when a refresh is already scheduled, the writes that
+     * asked for it will be picked up by that refresh.
+     */
+    public void scheduleRefresh(IndexShard shard) {
+        final ShardId shardId = shard.shardId();
+        if (scheduledRefreshes.add(shardId) == false) {
+            return;
+        }
+        threadPool.schedule(window, ThreadPool.Names.REFRESH, new AbstractRunnable() {
+            @Override
+            protected void doRun() throws Exception {
+                // writes that arrive while the shard refreshes need a refresh of their own
+                scheduledRefreshes.remove(shardId);
+                shard.refresh("advance_bulk_coalesced_refresh");
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                scheduledRefreshes.remove(shardId);
+                logger.debug((Supplier<?>) () -> new ParameterizedMessage("{} failed to execute coalesced refresh", shardId), e);
+            }
+        });
+    }
+}
@@ -0,0 +1,288 @@
+package org.elasticsearch.plugin.advance.update.bulk;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.support.ActiveShardCount;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.action.support.replication.ReplicatedWriteRequest;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.tasks.TaskId;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Groups small shard level advance bulks that target the same shard into a single {@link AdvanceBulkShardRequest}, so that
+ * callers sending one document at a time share a shard operation, a translog sync and a replication round trip. Requests are
+ * collected for at most the configured window, or until a batch holds the configured number of items, and the per item
+ * responses are handed back to the callers they came from.
+ * <p>
+ * Coalescing is opt-in: when it is disabled every request goes straight to {@link TransportShardAdvanceBulkAction}.
+ */
+@Singleton
+public class AdvanceShardBulkCoalescer extends AbstractComponent {
+
+    public static final Setting<Boolean> ENABLED_SETTING =
+        Setting.boolSetting("advance_bulk.coalesce.enabled", false, Property.NodeScope);
+
+    /**
+     * How long a batch waits for more requests before it is sent.
+     */
+    public static final Setting<TimeValue> WINDOW_SETTING =
+        Setting.timeSetting("advance_bulk.coalesce.window", TimeValue.timeValueMillis(2), TimeValue.timeValueMillis(1),
+            Property.NodeScope);
+
+    /**
+     * The number of items a batch is sent at right away; requests with at least that many items are never coalesced.
+     */
+    public static final Setting<Integer> MAX_ITEMS_SETTING =
+        Setting.intSetting("advance_bulk.coalesce.max_items", 128, 1, Property.NodeScope);
+
+    private final ThreadPool threadPool;
+    private final TransportShardAdvanceBulkAction shardBulkAction;
+    private final boolean enabled;
+    private final TimeValue window;
+    private final int maxItems;
+
+    private final Map<BatchKey, Batch> batches = new HashMap<>();
+
+    @Inject
+    public AdvanceShardBulkCoalescer(Settings settings, ThreadPool threadPool, TransportShardAdvanceBulkAction shardBulkAction) {
+        super(settings);
+        this.threadPool = threadPool;
+        this.shardBulkAction = shardBulkAction;
+        this.enabled = ENABLED_SETTING.get(settings);
+        this.window = WINDOW_SETTING.get(settings);
+        this.maxItems = MAX_ITEMS_SETTING.get(settings);
+    }
+
+    public static List<Setting<?>> getSettings() {
+        return Arrays.asList(ENABLED_SETTING, WINDOW_SETTING, MAX_ITEMS_SETTING);
+    }
+
+    /**
+     * Executes the shard bulk, possibly together with other requests for the same shard.
+     */
+    public void execute(AdvanceBulkShardRequest request, ActionListener<AdvanceBulkShardResponse> listener) {
+        if (enabled == false || request.items().length >= maxItems) {
+            shardBulkAction.execute(request, listener);
+            return;
+        }
+        final BatchKey key = new BatchKey(request);
+        final Batch batchToSend;
+        synchronized (batches) {
+            Batch batch = batches.get(key);
+            if (batch == null) {
+                batch = new Batch(key);
+                batches.put(key, batch);
+                final Batch scheduled = batch;
+                threadPool.schedule(window, ThreadPool.Names.GENERIC, () -> flush(scheduled));
+            }
+            batch.add(request, listener);
+            if (batch.items.size() >= maxItems) {
+                batches.remove(key);
+                batch.sent = true;
+                batchToSend = batch;
+            } else {
+                batchToSend = null;
+            }
+        }
+        if (batchToSend != null) {
+            batchToSend.send();
+        }
+    }
+
+    /**
+     * Executes a single write that was already translated for a known shard, e.g. the index or delete an advance update resolved
+     * to. It is replicated like any other shard bulk, but skips the index resolution and the bulk routing of the index and delete
+     * actions. A failure of the item is reported as a failure of the listener, and cancelling <code>task</code> stops the item
+     * if it did not run yet.
+     */
+    public <Request extends ReplicatedWriteRequest<Request> & DocWriteRequest> void executeSingleItem(ShardId shardId, Request itemRequest,
+                                                                                                      TaskId task,
+                                                                                                      ActionListener<DocWriteResponse> listener) {
+        AdvanceBulkItemRequest[] items = new AdvanceBulkItemRequest[]{new AdvanceBulkItemRequest(0, itemRequest)};
+        AdvanceBulkShardRequest shardRequest = new AdvanceBulkShardRequest(shardId, itemRequest.getRefreshPolicy(), items);
+        shardRequest.bulkTask(task);
+        shardRequest.waitForActiveShards(itemRequest.waitForActiveShards());
+        shardRequest.timeout(itemRequest.timeout());
+        execute(shardRequest, ActionListener.wrap(shardResponse -> {
+            AdvanceBulkItemResponse itemResponse = shardResponse.getResponses()[0];
+            if (itemResponse.isFailed()) {
+                listener.onFailure(itemResponse.getFailure().getCause());
+            } else {
+                DocWriteResponse response = itemResponse.getResponse();
+                response.setShardInfo(shardResponse.getShardInfo());
+                listener.onResponse(response);
+            }
+        }, listener::onFailure));
+    }
+
+    private void flush(Batch batch) {
+        synchronized (batches) {
+            if (batch.sent) {
+                return;
+            }
+            batches.remove(batch.key);
+            batch.sent = true;
+        }
+        batch.send();
+    }
+
+    /**
+     * Requests can only share a shard request when they agree on everything the shard request carries besides the items.
+     */
+    private static final class BatchKey {
+        private final ShardId shardId;
+        private final RefreshPolicy refreshPolicy;
+        private final ActiveShardCount waitForActiveShards;
+        private final TimeValue timeout;
+        private final AdvanceBulkRequest.Durability durability;
+        private final TimeValue deferredSyncDelay;
+        private final boolean retryConflictsOnCoordinator;
+
+        BatchKey(AdvanceBulkShardRequest request) {
+            this.shardId = request.shardId();
+            this.refreshPolicy = request.getRefreshPolicy();
+            this.waitForActiveShards = request.waitForActiveShards();
+            this.timeout = request.timeout();
+            this.durability = request.durability();
+            this.deferredSyncDelay = request.deferredSyncDelay();
+            this.retryConflictsOnCoordinator = request.retryConflictsOnCoordinator();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            BatchKey that = (BatchKey) o;
+            return shardId.equals(that.shardId) && refreshPolicy == that.refreshPolicy
+                && Objects.equals(waitForActiveShards, that.waitForActiveShards) && Objects.equals(timeout, that.timeout)
+                && durability == that.durability && Objects.equals(deferredSyncDelay, that.deferredSyncDelay)
+                && retryConflictsOnCoordinator == that.retryConflictsOnCoordinator;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(shardId, refreshPolicy, waitForActiveShards, timeout, durability, deferredSyncDelay,
+                retryConflictsOnCoordinator);
+        }
+    }
+
+    /**
+     * Keeps the task of every item, so that cancelling one of the merged bulks stops its own items only.
+     */
+    private static void mergeBulkTasks(AdvanceBulkShardRequest merged, List<AdvanceBulkShardRequest> requests) {
+        final Map<TaskId, Integer> taskIndices = new LinkedHashMap<>();
+        final int[] itemTasks = new int[merged.items().length];
+        int item = 0;
+        for (AdvanceBulkShardRequest request : requests) {
+            final TaskId[] requestTasks = request.bulkTasks();
+            for (int i = 0; i < request.items().length; i++) {
+                final int requestTask = request.itemBulkTask(i);
+                itemTasks[item++] = requestTask < 0 ? -1
+                    : taskIndices.computeIfAbsent(requestTasks[requestTask], t -> taskIndices.size());
+            }
+        }
+        merged.bulkTasks(taskIndices.keySet().toArray(new TaskId[taskIndices.size()]), itemTasks);
+    }
+
+    private final class Batch {
+        private final BatchKey key;
+        /** the items of all requests, renumbered by their position in the batch */
+        private final List<AdvanceBulkItemRequest> items = new ArrayList<>();
+        private final List<AdvanceBulkShardRequest> requests = new ArrayList<>();
+        private final List<ActionListener<AdvanceBulkShardResponse>> listeners = new ArrayList<>();
+        /** guarded by the batches map */
+        private boolean sent;
+
+        Batch(BatchKey key) {
+            this.key = key;
+        }
+
+        void add(AdvanceBulkShardRequest request, ActionListener<AdvanceBulkShardResponse> listener) {
+            for (AdvanceBulkItemRequest item : request.items()) {
+                items.add(new AdvanceBulkItemRequest(items.size(), item.request()));
+            }
+            requests.add(request);
+            listeners.add(listener);
+        }
+
+        void send() {
+            if (requests.size() == 1) {
+                shardBulkAction.execute(requests.get(0), listeners.get(0));
+                return;
+            }
+            AdvanceBulkShardRequest shardRequest = new AdvanceBulkShardRequest(key.shardId, key.refreshPolicy,
+                items.toArray(new AdvanceBulkItemRequest[items.size()]));
+            shardRequest.waitForActiveShards(key.waitForActiveShards);
+            shardRequest.timeout(key.timeout);
+            shardRequest.durability(key.durability, key.deferredSyncDelay);
+            shardRequest.retryConflictsOnCoordinator(key.retryConflictsOnCoordinator);
+            shardRequest.tookBreakdown(requests.stream().anyMatch(AdvanceBulkShardRequest::tookBreakdown));
+            mergeBulkTasks(shardRequest, requests);
+            // the merged bulk runs as long as one of its callers waits
+            if (requests.stream().allMatch(AdvanceBulkShardRequest::hasDeadline)) {
+                shardRequest.deadline(requests.stream().mapToLong(AdvanceBulkShardRequest::deadlineNanos)
+                    .reduce((a, b) -> a - b > 0 ? a : b).getAsLong());
+            }
+            shardBulkAction.execute(shardRequest, new ActionListener<AdvanceBulkShardResponse>() {
+                @Override
+                public void onResponse(AdvanceBulkShardResponse response) {
+                    AdvanceBulkItemResponse[] byItemId = new AdvanceBulkItemResponse[items.size()];
+                    for (AdvanceBulkItemResponse itemResponse : response.getResponses()) {
+                        byItemId[itemResponse.getItemId()] = itemResponse;
+                    }
+                    int offset = 0;
+                    for (int i = 0; i < requests.size(); i++) {
+                        AdvanceBulkItemRequest[] requestItems = requests.get(i).items();
+                        AdvanceBulkItemResponse[] itemResponses = new AdvanceBulkItemResponse[requestItems.length];
+                        for (int j = 0; j < requestItems.length; j++) {
+                            itemResponses[j] = byItemId[offset + j].withItemId(requestItems[j].id());
+                        }
+                        offset += requestItems.length;
+                        // the callers shared the shard bulk, so each of them spent its whole time
+                        AdvanceBulkShardResponse callerResponse = new AdvanceBulkShardResponse(key.shardId, itemResponses,
+                            response.getTimings());
+                        callerResponse.setShardInfo(response.getShardInfo());
+                        notifyListener(listeners.get(i), callerResponse);
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    for (ActionListener<AdvanceBulkShardResponse> listener : listeners) {
+                        try {
+                            listener.onFailure(e);
+                        } catch (Exception inner) {
+                            inner.addSuppressed(e);
+                            logger.warn("failed to notify a coalesced shard bulk listener of a failure", inner);
+                        }
+                    }
+                }
+            });
+        }
+
+        private void notifyListener(ActionListener<AdvanceBulkShardResponse> listener, AdvanceBulkShardResponse response) {
+            try {
+                listener.onResponse(response);
+            } catch (Exception e) {
+                logger.warn("failed to notify a coalesced shard bulk listener", e);
+            }
+        }
+    }
+}
@@ -4,9 +4,11 @@ import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.apache.logging.log4j.util.Supplier;
 import org.apache.lucene.util.SparseFixedBitSet;
 import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.ElasticsearchStatusException;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.ResourceAlreadyExistsException;
 import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRunnable;
 import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.RoutingMissingException;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
@@ -25,8 +27,16 @@ import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.AbstractRunnable;
@@ -34,19 +44,28 @@ import org.elasticsearch.common.util.concurrent.AtomicArray;
 import org.elasticsearch.common.util.concurrent.ThreadContext;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.IndexNotFoundException;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.indices.IndexClosedException;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
 import org.elasticsearch.ingest.IngestService;
 import org.elasticsearch.node.NodeClosedException;
+import org.elasticsearch.plugin.advance.update.AdvanceBulkUpdate;
+import org.elasticsearch.plugin.advance.update.action.ConflictBackoffPolicy;
 import org.elasticsearch.plugin.advance.update.action.TransportUpdateAction;
 import org.elasticsearch.plugin.advance.update.action.UpdateRequest;
+import org.elasticsearch.plugin.advance.update.stats.AdvanceUpdateStats;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.tasks.Task;
+import org.elasticsearch.tasks.TaskId;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportService;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.LongSupplier;
 import java.util.stream.Collectors;
 
@@ -55,43 +74,73 @@ import static java.util.Collections.emptyMap;
 
 public class AdvanceTransportBulkAction extends HandledTransportAction<AdvanceBulkRequest, AdvanceBulkResponse> {
 
+    /**
+     * The maximum number of chunks of a single bulk that run through their ingest pipelines in parallel.
+     */
+    public static final Setting<Integer> INGEST_CONCURRENCY_SETTING =
+        Setting.intSetting("advance_bulk.ingest.concurrency", 4, 1, Property.NodeScope);
+
+    /**
+     * The minimum number of items in a chunk, smaller bulks are preprocessed by fewer threads.
+     */
+    public static final Setting<Integer> INGEST_MIN_CHUNK_SIZE_SETTING =
+        Setting.intSetting("advance_bulk.ingest.min_chunk_size", 128, 1, Property.NodeScope);
+
+    /**
+     * The metadata of a stale routing failure that carries the version of the cluster state of the node that rejected the bulk.
+     */
+    public static final String STALE_ROUTING_METADATA = "es.advance_bulk.cluster_state_version";
+
     private final AutoCreateIndex autoCreateIndex;
     private final boolean allowIdGeneration;
     private final ClusterService clusterService;
     private final IngestService ingestService;
-    private final TransportShardAdvanceBulkAction shardBulkAction;
+    private final AdvanceShardBulkCoalescer shardBulkCoalescer;
     private final TransportCreateIndexAction createIndexAction;
+    private final CircuitBreakerService circuitBreakerService;
+    private final ConflictBackoffPolicy backoffPolicy;
+    private final AdvanceUpdateStats stats;
     private final LongSupplier relativeTimeProvider;
     private final IngestActionForwarder ingestForwarder;
+    private final int ingestConcurrency;
+    private final int ingestMinChunkSize;
 
     @Inject
     public AdvanceTransportBulkAction(Settings settings, ThreadPool threadPool, TransportService transportService,
                                       ClusterService clusterService, IngestService ingestService,
-                                      TransportShardAdvanceBulkAction shardBulkAction, TransportCreateIndexAction createIndexAction,
+                                      AdvanceShardBulkCoalescer shardBulkCoalescer, TransportCreateIndexAction createIndexAction,
                                       ActionFilters actionFilters, IndexNameExpressionResolver indexNameExpressionResolver,
-                                      AutoCreateIndex autoCreateIndex) {
+                                      AutoCreateIndex autoCreateIndex, CircuitBreakerService circuitBreakerService,
+                                      ConflictBackoffPolicy backoffPolicy, AdvanceUpdateStats stats) {
         this(settings, threadPool, transportService, clusterService, ingestService,
-                shardBulkAction, createIndexAction,
+                shardBulkCoalescer, createIndexAction,
                 actionFilters, indexNameExpressionResolver,
-                autoCreateIndex,
+                autoCreateIndex, circuitBreakerService, backoffPolicy, stats,
                 System::nanoTime);
     }
 
     public AdvanceTransportBulkAction(Settings settings, ThreadPool threadPool, TransportService transportService,
                                       ClusterService clusterService, IngestService ingestService,
-                                      TransportShardAdvanceBulkAction shardBulkAction, TransportCreateIndexAction createIndexAction,
+                                      AdvanceShardBulkCoalescer shardBulkCoalescer, TransportCreateIndexAction createIndexAction,
                                       ActionFilters actionFilters, IndexNameExpressionResolver indexNameExpressionResolver,
-                                      AutoCreateIndex autoCreateIndex, LongSupplier relativeTimeProvider) {
+                                      AutoCreateIndex autoCreateIndex, CircuitBreakerService circuitBreakerService,
+                                      ConflictBackoffPolicy backoffPolicy, AdvanceUpdateStats stats,
+                                      LongSupplier relativeTimeProvider) {
         super(settings, AdvanceBulkAction.NAME, threadPool, transportService, actionFilters, indexNameExpressionResolver, AdvanceBulkRequest::new);
         Objects.requireNonNull(relativeTimeProvider);
         this.clusterService = clusterService;
         this.ingestService = ingestService;
-        this.shardBulkAction = shardBulkAction;
+        this.shardBulkCoalescer = shardBulkCoalescer;
         this.createIndexAction = createIndexAction;
         this.autoCreateIndex = autoCreateIndex;
+        this.circuitBreakerService = circuitBreakerService;
+        this.backoffPolicy = backoffPolicy;
+        this.stats = stats;
         this.allowIdGeneration = this.settings.getAsBoolean("action.bulk.action.allow_id_generation", true);
         this.relativeTimeProvider = relativeTimeProvider;
         this.ingestForwarder = new IngestActionForwarder(transportService);
+        this.ingestConcurrency = INGEST_CONCURRENCY_SETTING.get(settings);
+        this.ingestMinChunkSize = INGEST_MIN_CHUNK_SIZE_SETTING.get(settings);
         clusterService.addStateApplier(this.ingestForwarder);
     }
 
@@ -101,12 +150,75 @@ public class AdvanceTransportBulkAction extends HandledTransportAction<AdvanceBu
     }
 
     @Override
-    protected void doExecute(Task task, AdvanceBulkRequest bulkRequest, ActionListener<AdvanceBulkResponse> listener) {
+    protected void doExecute(Task task, AdvanceBulkRequest bulkRequest, ActionListener<AdvanceBulkResponse> originalListener) {
+        // the http or transport layer charged the bytes of the body to the in flight requests breaker already; the items
+        // parsed from it stay on the heap until the last shard bulk answers, they are charged to the request breaker for
+        // that long so a burst of large advance bulks is rejected instead of filling the heap
+        final CircuitBreaker breaker = circuitBreakerService.getBreaker(CircuitBreaker.REQUEST);
+        final long bytes = bulkRequest.estimatedSizeInBytes();
+        try {
+            breaker.addEstimateBytesAndMaybeBreak(bytes, "<advance_bulk_request>");
+        } catch (CircuitBreakingException e) {
+            originalListener.onFailure(e);
+            return;
+        }
+        final ActionListener<AdvanceBulkResponse> listener = releasing(originalListener, breaker, bytes);
+        // resolving, auto creating and grouping the items is done on the plugin's own coordinating pool so a large
+        // advance bulk never competes with the transport threads or with the core bulk pools
+        final ActionRunnable<AdvanceBulkResponse> execution = new ActionRunnable<AdvanceBulkResponse>(listener) {
+            @Override
+            protected void doRun() throws Exception {
+                innerExecute(task, bulkRequest, listener);
+            }
+        };
+        if (isCoordinatingThread()) {
+            // the rest handler parsed the body on that pool already, queueing the bulk there a second time only adds latency
+            execution.run();
+        } else {
+            threadPool.executor(AdvanceBulkUpdate.COORDINATING_THREAD_POOL_NAME).execute(execution);
+        }
+    }
+
+    /**
+     * Returns whether the current thread belongs to the coordinating pool, whose threads carry the name of the pool.
+     */
+    private static boolean isCoordinatingThread() {
+        return Thread.currentThread().getName().contains("[" + AdvanceBulkUpdate.COORDINATING_THREAD_POOL_NAME + "]");
+    }
+
+    /**
+     * Releases the bytes of a request from the breaker once, when the request completes.
+     */
+    private static ActionListener<AdvanceBulkResponse> releasing(ActionListener<AdvanceBulkResponse> listener,
+                                                                 CircuitBreaker breaker, long bytes) {
+        final AtomicBoolean released = new AtomicBoolean();
+        return new ActionListener<AdvanceBulkResponse>() {
+            @Override
+            public void onResponse(AdvanceBulkResponse response) {
+                release();
+                listener.onResponse(response);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                release();
+                listener.onFailure(e);
+            }
+
+            private void release() {
+                if (released.compareAndSet(false, true)) {
+                    breaker.addWithoutBreaking(-bytes);
+                }
+            }
+        };
+    }
+
+    private void innerExecute(Task task, AdvanceBulkRequest bulkRequest, ActionListener<AdvanceBulkResponse> listener) {
         if (bulkRequest.hasIndexRequestsWithPipelines()) {
             if (clusterService.localNode().isIngestNode()) {
                 processBulkIndexIngestRequest(task, bulkRequest, listener);
             } else {
-                ingestForwarder.forwardIngestRequest(AdvanceBulkAction.INSTANCE, bulkRequest, listener);
+                forwardIngestRequest(task, bulkRequest, listener);
             }
             return;
         }
@@ -114,7 +226,10 @@ public class AdvanceTransportBulkAction extends HandledTransportAction<AdvanceBu
         final long startTime = relativeTime();
         final AtomicArray<AdvanceBulkItemResponse> responses = new AtomicArray<>(bulkRequest.requests.size());
 
-        if (needToCheck()) {
+        if (bulkRequest.isPreRouted()) {
+            // the client routed the items with the indices of its routing table, so there is nothing to auto create
+            executeBulk(task, bulkRequest, startTime, listener, responses, emptyMap());
+        } else if (needToCheck()) {
             // Attempt to create all the indices that we're going to need during the bulk before we start.
             // Step 1: collect all the indices in the request
             final Set<String> indices = bulkRequest.requests.stream()
@@ -222,6 +337,11 @@ public class AdvanceTransportBulkAction extends HandledTransportAction<AdvanceBu
         private final long startTimeNanos;
         private final ClusterStateObserver observer;
         private final Map<String, IndexNotFoundException> indicesThatCannotBeCreated;
+        private final AdvanceBulkSummary summary;
+        private final AdvanceBulkTookBreakdown tookBreakdown;
+        private final long deadlineNanos;
+        /** per item, the number of times it was sent again after a version conflict */
+        private final int[] conflictRetries;
 
         BulkOperation(Task task, AdvanceBulkRequest bulkRequest, ActionListener<AdvanceBulkResponse> listener, AtomicArray<AdvanceBulkItemResponse> responses,
                 long startTimeNanos, Map<String, IndexNotFoundException> indicesThatCannotBeCreated) {
@@ -232,6 +352,16 @@ public class AdvanceTransportBulkAction extends HandledTransportAction<AdvanceBu
             this.startTimeNanos = startTimeNanos;
             this.indicesThatCannotBeCreated = indicesThatCannotBeCreated;
             this.observer = new ClusterStateObserver(clusterService, bulkRequest.timeout(), logger, threadPool.getThreadContext());
+            // nobody waits for the items after the timeout of the bulk, so the primaries don't execute them past it
+            this.deadlineNanos = System.nanoTime() + bulkRequest.timeout().nanos();
+            this.conflictRetries = new int[bulkRequest.requests.size()];
+            this.summary = bulkRequest.responseMode().isSummarized() ? new AdvanceBulkSummary(bulkRequest.requests.size()) : null;
+            if (bulkRequest.tookBreakdown()) {
+                this.tookBreakdown = new AdvanceBulkTookBreakdown();
+                tookBreakdown.onParse(bulkRequest.parseNanos());
+            } else {
+                this.tookBreakdown = null;
+            }
         }
 
         @Override
@@ -241,10 +371,25 @@ public class AdvanceTransportBulkAction extends HandledTransportAction<AdvanceBu
 
         @Override
         protected void doRun() throws Exception {
+            final long routingStartNanos = System.nanoTime();
+            final Exception abortReason = AdvanceBulkTask.abortReason(task, false, deadlineNanos);
+            if (abortReason != null) {
+                onFailure(abortReason);
+                return;
+            }
             final ClusterState clusterState = observer.setAndGetObservedState();
             if (handleBlockExceptions(clusterState)) {
                 return;
             }
+            final ShardId[] preRoutedShards;
+            if (bulkRequest.isPreRouted()) {
+                preRoutedShards = routePreRouted(clusterState);
+                if (preRoutedShards == null) {
+                    return;
+                }
+            } else {
+                preRoutedShards = null;
+            }
             final ConcreteIndices concreteIndices = new ConcreteIndices(clusterState, indexNameExpressionResolver);
             MetaData metaData = clusterState.metaData();
             for (int i = 0; i < bulkRequest.requests.size(); i++) {
@@ -298,63 +443,223 @@ public class AdvanceTransportBulkAction extends HandledTransportAction<AdvanceBu
                 if (request == null) {
                     continue;
                  }
-                String concreteIndex = concreteIndices.getConcreteIndex(request.index()).getName();
-                ShardId shardId = clusterService.operationRouting().indexShards(clusterState, concreteIndex, request.id(), request.routing()).shardId();
+                final ShardId shardId;
+                if (preRoutedShards != null && preRoutedShards[i] != null) {
+                    shardId = preRoutedShards[i];
+                } else {
+                    String concreteIndex = concreteIndices.getConcreteIndex(request.index()).getName();
+                    shardId = clusterService.operationRouting().indexShards(clusterState, concreteIndex, request.id(), request.routing()).shardId();
+                }
                 List<AdvanceBulkItemRequest> shardRequests = requestsByShard.computeIfAbsent(shardId, shard -> new ArrayList<>());
                 shardRequests.add(new AdvanceBulkItemRequest(i, request));
              }
+            if (tookBreakdown != null) {
+                tookBreakdown.onRouting(System.nanoTime() - routingStartNanos);
+            }
 
             if (requestsByShard.isEmpty()) {
-                listener.onResponse(new AdvanceBulkResponse(responses.toArray(new AdvanceBulkItemResponse[responses.length()]), buildTookInMillis(startTimeNanos)));
+                listener.onResponse(buildResponse());
                 return;
             }
 
             final AtomicInteger counter = new AtomicInteger(requestsByShard.size());
-            String nodeId = clusterService.localNode().getId();
             for (Map.Entry<ShardId, List<AdvanceBulkItemRequest>> entry : requestsByShard.entrySet()) {
-                final ShardId shardId = entry.getKey();
-                final List<AdvanceBulkItemRequest> requests = entry.getValue();
-                AdvanceBulkShardRequest bulkShardRequest = new AdvanceBulkShardRequest(shardId, bulkRequest.getRefreshPolicy(),
-                        requests.toArray(new AdvanceBulkItemRequest[requests.size()]));
-                bulkShardRequest.waitForActiveShards(bulkRequest.waitForActiveShards());
-                bulkShardRequest.timeout(bulkRequest.timeout());
-                if (task != null) {
-                    bulkShardRequest.setParentTask(nodeId, task.getId());
+                executeShardBulk(entry.getKey(), entry.getValue(), concreteIndices, counter);
+            }
+        }
+
+        /**
+         * Routes the items of a pre-routed bulk, before any of them is processed, and rejects the bulk unless this node holds
+         * the primaries of all of them. The items name the concrete indices of the client's routing table and have ids, so
+         * their shards follow from the cluster state without resolving index expressions. A node that is behind the cluster
+         * state the client routed with waits for it first.
+         *
+         * @return the shard of every item, <code>null</code> for the items of missing or closed indices, which fail like in
+         *         any other bulk; <code>null</code> when the bulk was rejected or waits for a newer cluster state
+         */
+        @Nullable
+        private ShardId[] routePreRouted(ClusterState clusterState) {
+            if (clusterState.version() < bulkRequest.routingVersion()) {
+                retry(new ElasticsearchStatusException("the bulk was routed with cluster state version [{}] but node [{}] is "
+                    + "at version [{}]", RestStatus.SERVICE_UNAVAILABLE, bulkRequest.routingVersion(),
+                    clusterState.nodes().getLocalNodeId(), clusterState.version()));
+                return null;
+            }
+            final MetaData metaData = clusterState.metaData();
+            final ShardId[] shards = new ShardId[bulkRequest.requests.size()];
+            final Set<ShardId> checked = new HashSet<>();
+            for (int i = 0; i < bulkRequest.requests.size(); i++) {
+                final DocWriteRequest request = bulkRequest.requests.get(i);
+                final IndexMetaData indexMetaData = request == null ? null : metaData.index(request.index());
+                if (indexMetaData == null || indexMetaData.getState() == IndexMetaData.State.CLOSE) {
+                    continue;
                 }
-                shardBulkAction.execute(bulkShardRequest, new ActionListener<AdvanceBulkShardResponse>() {
-                    @Override
-                    public void onResponse(AdvanceBulkShardResponse bulkShardResponse) {
-                        for (AdvanceBulkItemResponse bulkItemResponse : bulkShardResponse.getResponses()) {
-                            // we may have no response if item failed
-                            if (bulkItemResponse.getResponse() != null) {
-                                bulkItemResponse.getResponse().setShardInfo(bulkShardResponse.getShardInfo());
+                // the same routing the items are processed with below, an index has no alias routing
+                final String routing = metaData.resolveIndexRouting(request.parent(), request.routing(), request.index());
+                final ShardId shardId = clusterService.operationRouting()
+                    .indexShards(clusterState, request.index(), request.id(), routing).shardId();
+                if (checked.add(shardId) && isPrimaryOnLocalNode(clusterState, shardId) == false) {
+                    listener.onFailure(staleRouting(bulkRequest, clusterState, shardId));
+                    return null;
+                }
+                shards[i] = shardId;
+            }
+            return shards;
+        }
+
+        /**
+         * Sends the items of a shard to its primary. The primary doesn't retry the updates that run into a version conflict,
+         * they are sent again after the backoff of the {@link ConflictBackoffPolicy} instead, so the write threads of the
+         * primary never wait for it. The shard counts as done once none of its items is left to retry.
+         */
+        private void executeShardBulk(ShardId shardId, List<AdvanceBulkItemRequest> requests, ConcreteIndices concreteIndices,
+                                      AtomicInteger counter) {
+            AdvanceBulkShardRequest bulkShardRequest = new AdvanceBulkShardRequest(shardId, bulkRequest.getRefreshPolicy(),
+                    requests.toArray(new AdvanceBulkItemRequest[requests.size()]));
+            bulkShardRequest.waitForActiveShards(bulkRequest.waitForActiveShards());
+            bulkShardRequest.timeout(bulkRequest.timeout());
+            bulkShardRequest.durability(bulkRequest.durability(), bulkRequest.deferredSyncDelay());
+            bulkShardRequest.tookBreakdown(tookBreakdown != null);
+            bulkShardRequest.deadline(deadlineNanos);
+            bulkShardRequest.retryConflictsOnCoordinator(true);
+            if (task != null) {
+                String nodeId = clusterService.localNode().getId();
+                bulkShardRequest.setParentTask(nodeId, task.getId());
+                bulkShardRequest.bulkTask(new TaskId(nodeId, task.getId()));
+            }
+            final long shardStartNanos = System.nanoTime();
+            final ActionListener<AdvanceBulkShardResponse> shardListener = new ActionListener<AdvanceBulkShardResponse>() {
+                @Override
+                public void onResponse(AdvanceBulkShardResponse bulkShardResponse) {
+                    if (tookBreakdown != null && bulkShardResponse.getTimings() != null) {
+                        tookBreakdown.onShard(shardId, bulkShardResponse.getTimings(), System.nanoTime() - shardStartNanos);
+                    }
+                    List<AdvanceBulkItemRequest> conflicts = null;
+                    for (AdvanceBulkItemResponse bulkItemResponse : bulkShardResponse.getResponses()) {
+                        if (bulkItemResponse.isFailed() && retryOnConflict(bulkItemResponse)) {
+                            if (conflicts == null) {
+                                conflicts = new ArrayList<>();
                             }
-                            responses.set(bulkItemResponse.getItemId(), bulkItemResponse);
+                            final int itemId = bulkItemResponse.getItemId();
+                            conflicts.add(new AdvanceBulkItemRequest(itemId, bulkRequest.requests.get(itemId)));
+                            continue;
                         }
-                        if (counter.decrementAndGet() == 0) {
-                            finishHim();
+                        if (summary != null && bulkItemResponse.isFailed() == false) {
+                            // successful items are only counted, they are never materialized in the response
+                            summary.onSuccess(bulkItemResponse);
+                            continue;
                         }
+                        // we may have no response if item failed
+                        if (bulkItemResponse.getResponse() != null) {
+                            bulkItemResponse.getResponse().setShardInfo(bulkShardResponse.getShardInfo());
+                        }
+                        responses.set(bulkItemResponse.getItemId(), bulkItemResponse);
+                    }
+                    if (conflicts != null) {
+                        retryConflicts(shardId, conflicts, concreteIndices, counter);
+                    } else if (counter.decrementAndGet() == 0) {
+                        finishHim();
                     }
+                }
 
-                    @Override
-                    public void onFailure(Exception e) {
-                        // create failures for all relevant requests
-                        for (AdvanceBulkItemRequest request : requests) {
-                            final String indexName = concreteIndices.getConcreteIndex(request.index()).getName();
-                            DocWriteRequest docWriteRequest = request.request();
-                            responses.set(request.id(), new AdvanceBulkItemResponse(request.id(), docWriteRequest.opType(),
-                                    new AdvanceBulkItemResponse.Failure(indexName, docWriteRequest.type(), docWriteRequest.id(), e)));
-                        }
-                        if (counter.decrementAndGet() == 0) {
-                            finishHim();
-                        }
+                @Override
+                public void onFailure(Exception e) {
+                    failShardBulk(requests, concreteIndices, e);
+                    if (counter.decrementAndGet() == 0) {
+                        finishHim();
                     }
+                }
+            };
+            final Exception shardAbortReason = AdvanceBulkTask.abortReason(task, true, deadlineNanos);
+            if (shardAbortReason != null) {
+                shardListener.onFailure(shardAbortReason);
+            } else {
+                shardBulkCoalescer.execute(bulkShardRequest, shardListener);
+            }
+        }
 
-                    private void finishHim() {
-                        listener.onResponse(new AdvanceBulkResponse(responses.toArray(new AdvanceBulkItemResponse[responses.length()]), buildTookInMillis(startTimeNanos)));
+        /**
+         * Returns whether a failed item is an update that ran into a version conflict and has retries left.
+         */
+        private boolean retryOnConflict(AdvanceBulkItemResponse itemResponse) {
+            if (ExceptionsHelper.unwrapCause(itemResponse.getFailure().getCause()) instanceof VersionConflictEngineException == false) {
+                return false;
+            }
+            final DocWriteRequest request = bulkRequest.requests.get(itemResponse.getItemId());
+            return request instanceof UpdateRequest
+                && backoffPolicy.onConflict(conflictRetries[itemResponse.getItemId()], ((UpdateRequest) request).retryOnConflict());
+        }
+
+        /**
+         * Sends the conflicting updates of a shard again once the backoff of the most retried one of them passed. Each attempt
+         * reads the document again, so it sees the version that won.
+         */
+        private void retryConflicts(ShardId shardId, List<AdvanceBulkItemRequest> conflicts, ConcreteIndices concreteIndices,
+                                    AtomicInteger counter) {
+            int retryCount = 0;
+            for (AdvanceBulkItemRequest conflict : conflicts) {
+                retryCount = Math.max(retryCount, conflictRetries[conflict.id()]++);
+                stats.onConflictRetry();
+            }
+            final TimeValue delay = backoffPolicy.nextDelay(retryCount);
+            logger.trace("retrying [{}] items of {} in [{}] after a version conflict", conflicts.size(), shardId, delay);
+            threadPool.schedule(delay, AdvanceBulkUpdate.COORDINATING_THREAD_POOL_NAME, new AbstractRunnable() {
+                @Override
+                protected void doRun() {
+                    executeShardBulk(shardId, conflicts, concreteIndices, counter);
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    failShardBulk(conflicts, concreteIndices, e);
+                    if (counter.decrementAndGet() == 0) {
+                        finishHim();
                     }
-                });
+                }
+            });
+        }
+
+        /**
+         * Creates failures for all the items of a shard bulk that failed as a whole.
+         */
+        private void failShardBulk(List<AdvanceBulkItemRequest> requests, ConcreteIndices concreteIndices, Exception e) {
+            for (AdvanceBulkItemRequest request : requests) {
+                final String indexName = concreteIndices.getConcreteIndex(request.index()).getName();
+                DocWriteRequest docWriteRequest = request.request();
+                responses.set(request.id(), new AdvanceBulkItemResponse(request.id(), docWriteRequest.opType(),
+                        new AdvanceBulkItemResponse.Failure(indexName, docWriteRequest.type(), docWriteRequest.id(), e)));
+            }
+        }
+
+        private void finishHim() {
+            listener.onResponse(buildResponse());
+        }
+
+        private AdvanceBulkResponse buildResponse() {
+            final AdvanceBulkResponse response = buildItemsResponse();
+            response.setTookBreakdown(tookBreakdown);
+            return response;
+        }
+
+        private AdvanceBulkResponse buildItemsResponse() {
+            if (summary == null) {
+                return new AdvanceBulkResponse(responses.toArray(new AdvanceBulkItemResponse[responses.length()]),
+                    buildTookInMillis(startTimeNanos));
             }
+            // only failures made it into the responses array
+            List<AdvanceBulkItemResponse> failures = new ArrayList<>();
+            for (int i = 0; i < responses.length(); i++) {
+                AdvanceBulkItemResponse response = responses.get(i);
+                if (response != null) {
+                    summary.onFailure();
+                    failures.add(response);
+                }
+            }
+            if (bulkRequest.responseMode() == AdvanceBulkRequest.ResponseMode.SUMMARY) {
+                failures.clear();
+            }
+            return new AdvanceBulkResponse(failures.toArray(new AdvanceBulkItemResponse[failures.size()]),
+                buildTookInMillis(startTimeNanos), AdvanceBulkResponse.NO_INGEST_TOOK, summary);
         }
 
         private boolean handleBlockExceptions(ClusterState state) {
@@ -467,40 +772,124 @@ public class AdvanceTransportBulkAction extends HandledTransportAction<AdvanceBu
         return relativeTimeProvider.getAsLong();
     }
 
+    /**
+     * Forwards the items with a pipeline to an ingest node and executes the others locally, so that plain items are not shipped
+     * to the ingest node and back. The two responses are merged into the slot order of the original request.
+     */
+    private void forwardIngestRequest(Task task, AdvanceBulkRequest bulkRequest, ActionListener<AdvanceBulkResponse> listener) {
+        final List<DocWriteRequest> requests = bulkRequest.requests();
+        final AdvanceBulkRequest ingestRequest = copyWithoutItems(bulkRequest);
+        final AdvanceBulkRequest localRequest = copyWithoutItems(bulkRequest);
+        final int[] ingestSlots = new int[requests.size()]; // oversize, but that's ok
+        final int[] localSlots = new int[requests.size()];
+        for (int i = 0; i < requests.size(); i++) {
+            DocWriteRequest request = requests.get(i);
+            if (request instanceof IndexRequest && Strings.hasText(((IndexRequest) request).getPipeline())) {
+                ingestSlots[ingestRequest.requests().size()] = i;
+                ingestRequest.add(request);
+            } else {
+                localSlots[localRequest.requests().size()] = i;
+                localRequest.add(request);
+            }
+        }
+        if (localRequest.requests().isEmpty()) {
+            ingestForwarder.forwardIngestRequest(AdvanceBulkAction.INSTANCE, bulkRequest, listener);
+            return;
+        }
+        final SplitBulkResponseListener splitListener = new SplitBulkResponseListener(bulkRequest, listener);
+        // register both parts before either can complete
+        final ActionListener<AdvanceBulkResponse> ingestListener = splitListener.newPartListener(ingestSlots);
+        final ActionListener<AdvanceBulkResponse> localListener = splitListener.newPartListener(localSlots);
+        ingestForwarder.forwardIngestRequest(AdvanceBulkAction.INSTANCE, ingestRequest, ingestListener);
+        innerExecute(task, localRequest, localListener);
+    }
+
+    /**
+     * Whether the primary of the shard is started on this node, which is what a pre-routed bulk expects for all its items.
+     */
+    static boolean isPrimaryOnLocalNode(ClusterState clusterState, ShardId shardId) {
+        final ShardRouting primary = clusterState.routingTable().shardRoutingTable(shardId).primaryShard();
+        return primary.started() && clusterState.nodes().getLocalNodeId().equals(primary.currentNodeId());
+    }
+
+    /**
+     * The failure of a pre-routed bulk that reached a node that does not hold the primaries of all its items any more. Nothing
+     * of the bulk was executed, the client refreshes its routing with <tt>_advance/_routing</tt> and sends the items again.
+     */
+    static ElasticsearchStatusException staleRouting(AdvanceBulkRequest bulkRequest, ClusterState clusterState, ShardId shardId) {
+        ElasticsearchStatusException e = new ElasticsearchStatusException(
+            "stale routing: the bulk was routed with cluster state version [{}] but the primary of {} is not on node [{}] "
+                + "in cluster state version [{}]", RestStatus.CONFLICT, bulkRequest.routingVersion(), shardId,
+            clusterState.nodes().getLocalNodeId(), clusterState.version());
+        e.addMetadata(STALE_ROUTING_METADATA, Long.toString(clusterState.version()));
+        return e;
+    }
+
+    /**
+     * Creates an empty bulk request with the same request level options as the given one.
+     */
+    static AdvanceBulkRequest copyWithoutItems(AdvanceBulkRequest bulkRequest) {
+        AdvanceBulkRequest copy = new AdvanceBulkRequest();
+        copy.setRefreshPolicy(bulkRequest.getRefreshPolicy());
+        copy.waitForActiveShards(bulkRequest.waitForActiveShards());
+        copy.timeout(bulkRequest.timeout());
+        copy.responseMode(bulkRequest.responseMode());
+        copy.durability(bulkRequest.durability(), bulkRequest.deferredSyncDelay());
+        copy.routingVersion(bulkRequest.routingVersion());
+        copy.tookBreakdown(bulkRequest.tookBreakdown());
+        copy.parseNanos(bulkRequest.parseNanos());
+        return copy;
+    }
+
     void processBulkIndexIngestRequest(Task task, AdvanceBulkRequest original, ActionListener<AdvanceBulkResponse> listener) {
         long ingestStartTimeInNanos = System.nanoTime();
         BulkRequestModifier bulkRequestModifier = new BulkRequestModifier(original);
-        ingestService.getPipelineExecutionService().executeBulkRequest(() -> bulkRequestModifier, (indexRequest, exception) -> {
-            logger.debug((Supplier<?>) () -> new ParameterizedMessage("failed to execute pipeline [{}] for document [{}/{}/{}]",
-                indexRequest.getPipeline(), indexRequest.index(), indexRequest.type(), indexRequest.id()), exception);
-            bulkRequestModifier.markCurrentItemAsFailed(exception);
-        }, (exception) -> {
-            if (exception != null) {
-                logger.error("failed to execute pipeline for a bulk request", exception);
-                listener.onFailure(exception);
-            } else {
-                long ingestTookInMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ingestStartTimeInNanos);
-                AdvanceBulkRequest bulkRequest = bulkRequestModifier.getBulkRequest();
-                ActionListener<AdvanceBulkResponse> actionListener = bulkRequestModifier.wrapActionListenerIfNeeded(ingestTookInMillis, listener);
-                if (bulkRequest.requests().isEmpty()) {
-                    // at this stage, the transport bulk action can't deal with a bulk request with no requests,
-                    // so we stop and send an empty response back to the client.
-                    // (this will happen if pre-processing all items in the bulk failed)
-                    actionListener.onResponse(new AdvanceBulkResponse(new AdvanceBulkItemResponse[0], 0));
+        // the pipelines run over disjoint, ordered chunks of the bulk in parallel, each chunk on its own ingest thread
+        List<BulkRequestModifier.Chunk> chunks = bulkRequestModifier.split(ingestConcurrency, ingestMinChunkSize);
+        final AtomicInteger pendingChunks = new AtomicInteger(chunks.size());
+        final AtomicReference<Exception> chunkFailure = new AtomicReference<>();
+        for (BulkRequestModifier.Chunk chunk : chunks) {
+            ingestService.getPipelineExecutionService().executeBulkRequest(() -> chunk, (indexRequest, exception) -> {
+                logger.debug((Supplier<?>) () -> new ParameterizedMessage("failed to execute pipeline [{}] for document [{}/{}/{}]",
+                    indexRequest.getPipeline(), indexRequest.index(), indexRequest.type(), indexRequest.id()), exception);
+                chunk.markCurrentItemAsFailed(exception);
+            }, (exception) -> {
+                if (exception != null) {
+                    logger.error("failed to execute pipeline for a bulk request", exception);
+                    if (chunkFailure.compareAndSet(null, exception) == false) {
+                        chunkFailure.get().addSuppressed(exception);
+                    }
+                }
+                if (pendingChunks.decrementAndGet() != 0) {
+                    return;
+                }
+                if (chunkFailure.get() != null) {
+                    listener.onFailure(chunkFailure.get());
                 } else {
-                    doExecute(task, bulkRequest, actionListener);
+                    long ingestTookInMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ingestStartTimeInNanos);
+                    AdvanceBulkRequest bulkRequest = bulkRequestModifier.getBulkRequest();
+                    ActionListener<AdvanceBulkResponse> actionListener = bulkRequestModifier.wrapActionListenerIfNeeded(ingestTookInMillis, listener);
+                    if (bulkRequest.requests().isEmpty()) {
+                        // at this stage, the transport bulk action can't deal with a bulk request with no requests,
+                        // so we stop and send an empty response back to the client.
+                        // (this will happen if pre-processing all items in the bulk failed)
+                        AdvanceBulkSummary summary = original.responseMode().isSummarized() ? new AdvanceBulkSummary(0) : null;
+                        actionListener.onResponse(new AdvanceBulkResponse(new AdvanceBulkItemResponse[0], 0,
+                            AdvanceBulkResponse.NO_INGEST_TOOK, summary));
+                    } else {
+                        innerExecute(task, bulkRequest, actionListener);
+                    }
                 }
-            }
-        });
+            });
+        }
     }
 
-    static final class BulkRequestModifier implements Iterator<DocWriteRequest> {
+    static final class BulkRequestModifier {
 
         final AdvanceBulkRequest bulkRequest;
         final SparseFixedBitSet failedSlots;
         final List<AdvanceBulkItemResponse> itemResponses;
 
-        int currentSlot = -1;
         int[] originalSlots;
 
         BulkRequestModifier(AdvanceBulkRequest bulkRequest) {
@@ -509,24 +898,27 @@ public class AdvanceTransportBulkAction extends HandledTransportAction<AdvanceBu
             this.itemResponses = new ArrayList<>(bulkRequest.requests().size());
         }
 
-        @Override
-        public DocWriteRequest next() {
-            return bulkRequest.requests().get(++currentSlot);
-        }
-
-        @Override
-        public boolean hasNext() {
-            return (currentSlot + 1) < bulkRequest.requests().size();
+        /**
+         * Splits the items into at most <code>maxChunks</code> consecutive chunks of at least <code>minChunkSize</code> items.
+         */
+        List<Chunk> split(int maxChunks, int minChunkSize) {
+            final int size = bulkRequest.requests().size();
+            final int numberOfChunks = Math.max(1, Math.min(maxChunks, size / Math.max(1, minChunkSize)));
+            final int chunkSize = (size + numberOfChunks - 1) / numberOfChunks;
+            List<Chunk> chunks = new ArrayList<>(numberOfChunks);
+            for (int from = 0; from < size || chunks.isEmpty(); from += chunkSize) {
+                chunks.add(new Chunk(from, Math.min(size, from + chunkSize)));
+            }
+            return chunks;
         }
 
         AdvanceBulkRequest getBulkRequest() {
             if (itemResponses.isEmpty()) {
                 return bulkRequest;
             } else {
-                AdvanceBulkRequest modifiedBulkRequest = new AdvanceBulkRequest();
-                modifiedBulkRequest.setRefreshPolicy(bulkRequest.getRefreshPolicy());
-                modifiedBulkRequest.waitForActiveShards(bulkRequest.waitForActiveShards());
-                modifiedBulkRequest.timeout(bulkRequest.timeout());
+                // chunks report their failures concurrently, restore the slot order the response listener relies on
+                itemResponses.sort(Comparator.comparingInt(AdvanceBulkItemResponse::getItemId));
+                AdvanceBulkRequest modifiedBulkRequest = copyWithoutItems(bulkRequest);
 
                 int slot = 0;
                 List<DocWriteRequest> requests = bulkRequest.requests();
@@ -545,25 +937,143 @@ public class AdvanceTransportBulkAction extends HandledTransportAction<AdvanceBu
         ActionListener<AdvanceBulkResponse> wrapActionListenerIfNeeded(long ingestTookInMillis, ActionListener<AdvanceBulkResponse> actionListener) {
             if (itemResponses.isEmpty()) {
                 return ActionListener.wrap(
-                    response -> actionListener.onResponse(
-                        new AdvanceBulkResponse(response.getItems(), response.getTookInMillis(), ingestTookInMillis)),
+                    response -> {
+                        AdvanceBulkResponse withIngestTook = new AdvanceBulkResponse(response.getItems(), response.getTookInMillis(),
+                            ingestTookInMillis, response.getSummary());
+                        withIngestTook.setTookBreakdown(response.getTookBreakdown());
+                        actionListener.onResponse(withIngestTook);
+                    },
                     actionListener::onFailure);
             } else {
-                return new IngestBulkResponseListener(ingestTookInMillis, originalSlots, itemResponses, actionListener);
+                return new IngestBulkResponseListener(ingestTookInMillis, originalSlots, itemResponses, bulkRequest, actionListener);
             }
         }
 
-        void markCurrentItemAsFailed(Exception e) {
-            IndexRequest indexRequest = (IndexRequest) bulkRequest.requests().get(currentSlot);
+        synchronized void markItemAsFailed(int slot, Exception e) {
+            IndexRequest indexRequest = (IndexRequest) bulkRequest.requests().get(slot);
             // We hit a error during preprocessing a request, so we:
             // 1) Remember the request item slot from the bulk, so that we're done processing all requests we know what failed
             // 2) Add a bulk item failure for this request
             // 3) Continue with the next request in the bulk.
-            failedSlots.set(currentSlot);
+            failedSlots.set(slot);
             AdvanceBulkItemResponse.Failure failure = new AdvanceBulkItemResponse.Failure(indexRequest.index(), indexRequest.type(), indexRequest.id(), e);
-            itemResponses.add(new AdvanceBulkItemResponse(currentSlot, indexRequest.opType(), failure));
+            itemResponses.add(new AdvanceBulkItemResponse(slot, indexRequest.opType(), failure));
+        }
+
+        /**
+         * Iterates over the slots <code>[from, to)</code> of the bulk. The pipeline execution walks a chunk on a single thread and
+         * reports item failures synchronously, so the current slot identifies the failed item.
+         */
+        final class Chunk implements Iterator<DocWriteRequest> {
+            private final int to;
+            private int currentSlot;
+
+            Chunk(int from, int to) {
+                this.currentSlot = from - 1;
+                this.to = to;
+            }
+
+            @Override
+            public DocWriteRequest next() {
+                return bulkRequest.requests().get(++currentSlot);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return (currentSlot + 1) < to;
+            }
+
+            void markCurrentItemAsFailed(Exception e) {
+                markItemAsFailed(currentSlot, e);
+            }
+        }
+    }
+
+    /**
+     * Collects the responses of the parts a bulk request was split into and merges them back into the slot order of the
+     * original request once all parts responded. The first failure of a part fails the whole request.
+     */
+    static final class SplitBulkResponseListener {
+
+        private final AdvanceBulkRequest originalRequest;
+        private final ActionListener<AdvanceBulkResponse> actionListener;
+        private final List<Tuple<int[], AdvanceBulkResponse>> partResponses = new ArrayList<>();
+        private final AtomicInteger pendingParts = new AtomicInteger();
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+        SplitBulkResponseListener(AdvanceBulkRequest originalRequest, ActionListener<AdvanceBulkResponse> actionListener) {
+            this.originalRequest = originalRequest;
+            this.actionListener = actionListener;
         }
 
+        /**
+         * Creates the listener of a part.
+         * @param slots maps the item slots of the part to the item slots of the original request
+         */
+        ActionListener<AdvanceBulkResponse> newPartListener(int[] slots) {
+            pendingParts.incrementAndGet();
+            return new ActionListener<AdvanceBulkResponse>() {
+                @Override
+                public void onResponse(AdvanceBulkResponse response) {
+                    synchronized (partResponses) {
+                        partResponses.add(new Tuple<>(slots, response));
+                    }
+                    onPartDone();
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    if (failure.compareAndSet(null, e) == false) {
+                        failure.get().addSuppressed(e);
+                    }
+                    onPartDone();
+                }
+            };
+        }
+
+        private void onPartDone() {
+            if (pendingParts.decrementAndGet() != 0) {
+                return;
+            }
+            if (failure.get() != null) {
+                actionListener.onFailure(failure.get());
+                return;
+            }
+            final int numberOfItems = originalRequest.requests().size();
+            final boolean summarized = originalRequest.responseMode().isSummarized();
+            final AdvanceBulkSummary summary = summarized ? new AdvanceBulkSummary(numberOfItems) : null;
+            final List<AdvanceBulkItemResponse> items = new ArrayList<>(summarized ? 0 : numberOfItems);
+            long tookInMillis = 0;
+            long ingestTookInMillis = AdvanceBulkResponse.NO_INGEST_TOOK;
+            AdvanceBulkTookBreakdown tookBreakdown = null;
+            for (Tuple<int[], AdvanceBulkResponse> partResponse : partResponses) {
+                final int[] slots = partResponse.v1();
+                final AdvanceBulkResponse response = partResponse.v2();
+                // the parts ran concurrently, so the slowest one is what the client waited for
+                tookInMillis = Math.max(tookInMillis, response.getTookInMillis());
+                ingestTookInMillis = Math.max(ingestTookInMillis, response.getIngestTookInMillis());
+                if (response.getTookBreakdown() != null) {
+                    if (tookBreakdown == null) {
+                        tookBreakdown = new AdvanceBulkTookBreakdown();
+                    }
+                    tookBreakdown.addAll(response.getTookBreakdown());
+                }
+                if (summary != null && response.getSummary() != null) {
+                    summary.addAll(response.getSummary(), slots);
+                }
+                for (AdvanceBulkItemResponse item : response.getItems()) {
+                    items.add(item.withItemId(slots[item.getItemId()]));
+                }
+            }
+            if (originalRequest.responseMode() == AdvanceBulkRequest.ResponseMode.SUMMARY) {
+                items.clear();
+            }
+            items.sort(Comparator.comparingInt(AdvanceBulkItemResponse::getItemId));
+            final AdvanceBulkResponse response = new AdvanceBulkResponse(items.toArray(new AdvanceBulkItemResponse[items.size()]),
+                tookInMillis, ingestTookInMillis, summary);
+            response.setTookBreakdown(tookBreakdown);
+            actionListener.onResponse(response);
+        }
     }
 
     static final class IngestBulkResponseListener implements ActionListener<AdvanceBulkResponse> {
@@ -571,22 +1081,60 @@ public class AdvanceTransportBulkAction extends HandledTransportAction<AdvanceBu
         private final long ingestTookInMillis;
         private final int[] originalSlots;
         private final List<AdvanceBulkItemResponse> itemResponses;
+        private final AdvanceBulkRequest originalRequest;
         private final ActionListener<AdvanceBulkResponse> actionListener;
 
-        IngestBulkResponseListener(long ingestTookInMillis, int[] originalSlots, List<AdvanceBulkItemResponse> itemResponses, ActionListener<AdvanceBulkResponse> actionListener) {
+        IngestBulkResponseListener(long ingestTookInMillis, int[] originalSlots, List<AdvanceBulkItemResponse> itemResponses,
+                                   AdvanceBulkRequest originalRequest, ActionListener<AdvanceBulkResponse> actionListener) {
             this.ingestTookInMillis = ingestTookInMillis;
             this.itemResponses = itemResponses;
+            this.originalRequest = originalRequest;
             this.actionListener = actionListener;
             this.originalSlots = originalSlots;
         }
 
         @Override
         public void onResponse(AdvanceBulkResponse response) {
-            AdvanceBulkItemResponse[] items = response.getItems();
-            for (int i = 0; i < items.length; i++) {
-                itemResponses.add(originalSlots[i], response.getItems()[i]);
+            if (response.getSummary() != null) {
+                onSummaryResponse(response);
+                return;
+            }
+            // the items carry the ids of the modified request, map them back to the slots of the original request
+            List<AdvanceBulkItemResponse> items = new ArrayList<>(itemResponses.size() + response.getItems().length);
+            items.addAll(itemResponses);
+            for (AdvanceBulkItemResponse item : response.getItems()) {
+                items.add(item.withItemId(originalSlots[item.getItemId()]));
+            }
+            items.sort(Comparator.comparingInt(AdvanceBulkItemResponse::getItemId));
+            AdvanceBulkResponse merged = new AdvanceBulkResponse(items.toArray(new AdvanceBulkItemResponse[items.size()]),
+                response.getTookInMillis(), ingestTookInMillis);
+            merged.setTookBreakdown(response.getTookBreakdown());
+            actionListener.onResponse(merged);
+        }
+
+        /**
+         * The modified request only returned its failures, so they and its successful slots are mapped back to the original slots
+         * and merged with the items that failed during preprocessing.
+         */
+        private void onSummaryResponse(AdvanceBulkResponse response) {
+            AdvanceBulkSummary summary = new AdvanceBulkSummary(originalRequest.requests().size());
+            summary.addAll(response.getSummary(), originalSlots);
+            List<AdvanceBulkItemResponse> failures = new ArrayList<>(itemResponses.size() + response.getItems().length);
+            for (AdvanceBulkItemResponse itemResponse : itemResponses) {
+                summary.onFailure();
+                failures.add(itemResponse);
+            }
+            for (AdvanceBulkItemResponse item : response.getItems()) {
+                failures.add(item.withItemId(originalSlots[item.getItemId()]));
+            }
+            if (originalRequest.responseMode() == AdvanceBulkRequest.ResponseMode.SUMMARY) {
+                failures.clear();
             }
-            actionListener.onResponse(new AdvanceBulkResponse(itemResponses.toArray(new AdvanceBulkItemResponse[itemResponses.size()]), response.getTookInMillis(), ingestTookInMillis));
+            failures.sort(Comparator.comparingInt(AdvanceBulkItemResponse::getItemId));
+            AdvanceBulkResponse merged = new AdvanceBulkResponse(failures.toArray(new AdvanceBulkItemResponse[failures.size()]),
+                response.getTookInMillis(), ingestTookInMillis, summary);
+            merged.setTookBreakdown(response.getTookBreakdown());
+            actionListener.onResponse(merged);
         }
 
         @Override
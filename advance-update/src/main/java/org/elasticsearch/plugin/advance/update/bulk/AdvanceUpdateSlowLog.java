@@ -0,0 +1,169 @@
+package org.elasticsearch.plugin.advance.update.bulk;
+
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.plugin.advance.update.bulk.AdvanceBulkTookBreakdown.Phase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs the items of advance bulks whose get, translate and index time on the primary exceeds a threshold, with what makes
+ * an item slow: the size and nesting depth of the document it wrote, whether a script ran and how often it was retried on
+ * version conflicts. The thresholds are dynamic index settings, like the ones of the indexing slow log, and are read once
+ * per shard bulk.
+ */
+public final class AdvanceUpdateSlowLog {
+
+    public static final String INDEX_ADVANCE_UPDATE_SLOWLOG_PREFIX = "index.advance_update.slowlog";
+
+    public static final Setting<TimeValue> THRESHOLD_WARN_SETTING = thresholdSetting("warn");
+    public static final Setting<TimeValue> THRESHOLD_INFO_SETTING = thresholdSetting("info");
+    public static final Setting<TimeValue> THRESHOLD_DEBUG_SETTING = thresholdSetting("debug");
+    public static final Setting<TimeValue> THRESHOLD_TRACE_SETTING = thresholdSetting("trace");
+
+    private static final Logger logger = Loggers.getLogger(INDEX_ADVANCE_UPDATE_SLOWLOG_PREFIX);
+
+    private static Setting<TimeValue> thresholdSetting(String level) {
+        return Setting.timeSetting(INDEX_ADVANCE_UPDATE_SLOWLOG_PREFIX + ".threshold." + level, TimeValue.timeValueNanos(-1),
+            TimeValue.timeValueMillis(-1), Property.Dynamic, Property.IndexScope);
+    }
+
+    public static List<Setting<?>> getSettings() {
+        return Arrays.asList(THRESHOLD_WARN_SETTING, THRESHOLD_INFO_SETTING, THRESHOLD_DEBUG_SETTING, THRESHOLD_TRACE_SETTING);
+    }
+
+    private final ShardId shardId;
+    private final long warnThreshold;
+    private final long infoThreshold;
+    private final long debugThreshold;
+    private final long traceThreshold;
+
+    private AdvanceUpdateSlowLog(ShardId shardId, long warnThreshold, long infoThreshold, long debugThreshold,
+                                 long traceThreshold) {
+        this.shardId = shardId;
+        this.warnThreshold = warnThreshold;
+        this.infoThreshold = infoThreshold;
+        this.debugThreshold = debugThreshold;
+        this.traceThreshold = traceThreshold;
+    }
+
+    /**
+     * The slow log of a shard bulk, <code>null</code> when no threshold is set for the index.
+     */
+    @Nullable
+    static AdvanceUpdateSlowLog of(ShardId shardId, IndexSettings indexSettings) {
+        final long warn = indexSettings.getValue(THRESHOLD_WARN_SETTING).nanos();
+        final long info = indexSettings.getValue(THRESHOLD_INFO_SETTING).nanos();
+        final long debug = indexSettings.getValue(THRESHOLD_DEBUG_SETTING).nanos();
+        final long trace = indexSettings.getValue(THRESHOLD_TRACE_SETTING).nanos();
+        if (warn < 0 && info < 0 && debug < 0 && trace < 0) {
+            return null;
+        }
+        return new AdvanceUpdateSlowLog(shardId, warn, info, debug, trace);
+    }
+
+    /**
+     * Logs the item if it was slow.
+     *
+     * @param request   the item as it was sent
+     * @param written   the request the item wrote, the translated request of an update, <code>null</code> if it wrote nothing
+     * @param timings   the timings of this item alone
+     * @param retries   the retries on version conflicts
+     * @param scriptRan whether a script ran to translate the update
+     */
+    void maybeLog(DocWriteRequest request, @Nullable DocWriteRequest written, AdvanceBulkTookBreakdown.Timings timings,
+                  int retries, boolean scriptRan) {
+        final long tookNanos = timings.get(Phase.GET) + timings.get(Phase.TRANSLATE) + timings.get(Phase.INDEX);
+        if (warnThreshold >= 0 && tookNanos > warnThreshold) {
+            logger.warn("{}", new Message(shardId, request, written, timings, tookNanos, retries, scriptRan));
+        } else if (infoThreshold >= 0 && tookNanos > infoThreshold) {
+            logger.info("{}", new Message(shardId, request, written, timings, tookNanos, retries, scriptRan));
+        } else if (debugThreshold >= 0 && tookNanos > debugThreshold) {
+            logger.debug("{}", new Message(shardId, request, written, timings, tookNanos, retries, scriptRan));
+        } else if (traceThreshold >= 0 && tookNanos > traceThreshold) {
+            logger.trace("{}", new Message(shardId, request, written, timings, tookNanos, retries, scriptRan));
+        }
+    }
+
+    /**
+     * The nesting depth of the objects and arrays of a source, <code>-1</code> if it can't be parsed.
+     */
+    static int depth(IndexRequest request) {
+        try (XContentParser parser = request.getContentType().xContent().createParser(NamedXContentRegistry.EMPTY,
+            request.source())) {
+            int depth = 0;
+            int maxDepth = 0;
+            XContentParser.Token token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == XContentParser.Token.START_OBJECT || token == XContentParser.Token.START_ARRAY) {
+                    maxDepth = Math.max(maxDepth, ++depth);
+                } else if (token == XContentParser.Token.END_OBJECT || token == XContentParser.Token.END_ARRAY) {
+                    depth--;
+                }
+            }
+            return maxDepth;
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    static final class Message {
+        private final ShardId shardId;
+        private final DocWriteRequest request;
+        private final DocWriteRequest written;
+        private final AdvanceBulkTookBreakdown.Timings timings;
+        private final long tookNanos;
+        private final int retries;
+        private final boolean scriptRan;
+
+        Message(ShardId shardId, DocWriteRequest request, @Nullable DocWriteRequest written, AdvanceBulkTookBreakdown.Timings timings,
+                long tookNanos, int retries, boolean scriptRan) {
+            this.shardId = shardId;
+            this.request = request;
+            this.written = written;
+            this.timings = timings;
+            this.tookNanos = tookNanos;
+            this.retries = retries;
+            this.scriptRan = scriptRan;
+        }
+
+        @Override
+        public String toString() {
+            // built when the level is enabled only, the depth parses the whole source
+            final StringBuilder sb = new StringBuilder();
+            sb.append(shardId).append(" ");
+            sb.append("took[").append(TimeValue.timeValueNanos(tookNanos)).append("], ");
+            sb.append("took_millis[").append(TimeUnit.NANOSECONDS.toMillis(tookNanos)).append("], ");
+            sb.append("get[").append(TimeValue.timeValueNanos(timings.get(Phase.GET))).append("], ");
+            sb.append("translate[").append(TimeValue.timeValueNanos(timings.get(Phase.TRANSLATE))).append("], ");
+            sb.append("index[").append(TimeValue.timeValueNanos(timings.get(Phase.INDEX))).append("], ");
+            sb.append("op[").append(request.opType().getLowercase()).append("], ");
+            sb.append("type[").append(request.type()).append("], ");
+            sb.append("id[").append(request.id()).append("], ");
+            sb.append("routing[").append(request.routing()).append("], ");
+            if (written instanceof IndexRequest) {
+                final IndexRequest indexRequest = (IndexRequest) written;
+                sb.append("source_size[").append(indexRequest.source().length()).append("], ");
+                sb.append("depth[").append(depth(indexRequest)).append("], ");
+            } else {
+                sb.append("source_size[0], depth[0], ");
+            }
+            sb.append("script[").append(scriptRan).append("], ");
+            sb.append("retries[").append(retries).append("]");
+            return sb.toString();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.elasticsearch.plugin.advance.update.bulk;
 import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.apache.logging.log4j.util.Supplier;
 import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.DocWriteResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
@@ -11,6 +12,7 @@ import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.support.ActionFilters;
 import org.elasticsearch.action.support.TransportActions;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
 import org.elasticsearch.action.support.replication.ReplicationOperation;
 import org.elasticsearch.action.support.replication.ReplicationResponse.ShardInfo;
 import org.elasticsearch.action.support.replication.TransportWriteAction;
@@ -21,15 +23,18 @@ import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.get.GetResult;
 import org.elasticsearch.index.mapper.MapperParsingException;
 import org.elasticsearch.index.mapper.Mapping;
 import org.elasticsearch.index.mapper.SourceToParse;
@@ -37,10 +42,19 @@ import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.plugin.advance.update.AdvanceBulkUpdate;
+import org.elasticsearch.plugin.advance.update.action.ConflictBackoffPolicy;
 import org.elasticsearch.plugin.advance.update.action.UpdateHelper;
 import org.elasticsearch.plugin.advance.update.action.UpdateRequest;
+import org.elasticsearch.plugin.advance.update.bulk.AdvanceBulkTookBreakdown.Phase;
+import org.elasticsearch.plugin.advance.update.stats.AdvanceUpdateStats;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.tasks.TaskCancelledException;
+import org.elasticsearch.tasks.TaskId;
 import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportRequest;
 import org.elasticsearch.transport.TransportRequestOptions;
+import org.elasticsearch.transport.TransportResponse;
 import org.elasticsearch.transport.TransportService;
 
 import java.io.IOException;
@@ -52,19 +66,28 @@ public class TransportShardAdvanceBulkAction extends TransportWriteAction<Advanc
     public static final String ACTION_NAME = AdvanceBulkAction.NAME + "[s]";
 
     private final UpdateHelper updateHelper;
+    private final ConflictBackoffPolicy backoffPolicy;
+    private final AdvanceRefreshCoalescer refreshCoalescer;
     private final boolean allowIdGeneration;
     private final MappingUpdatedAction mappingUpdatedAction;
+    private final AdvanceUpdateStats stats;
 
     @Inject
     public TransportShardAdvanceBulkAction(Settings settings, TransportService transportService, ClusterService clusterService,
                                            IndicesService indicesService, ThreadPool threadPool, ShardStateAction shardStateAction,
-                                           MappingUpdatedAction mappingUpdatedAction, UpdateHelper updateHelper, ActionFilters actionFilters,
+                                           MappingUpdatedAction mappingUpdatedAction, UpdateHelper updateHelper, ConflictBackoffPolicy backoffPolicy,
+                                           AdvanceRefreshCoalescer refreshCoalescer, AdvanceUpdateStats stats,
+                                           ActionFilters actionFilters,
                                            IndexNameExpressionResolver indexNameExpressionResolver) {
         super(settings, ACTION_NAME, transportService, clusterService, indicesService, threadPool, shardStateAction, actionFilters,
-                indexNameExpressionResolver, AdvanceBulkShardRequest::new, AdvanceBulkShardRequest::new, ThreadPool.Names.BULK);
+                indexNameExpressionResolver, AdvanceBulkShardRequest::new, AdvanceBulkShardRequest::new,
+                AdvanceBulkUpdate.WRITE_THREAD_POOL_NAME);
         this.updateHelper = updateHelper;
+        this.backoffPolicy = backoffPolicy;
+        this.refreshCoalescer = refreshCoalescer;
         this.allowIdGeneration = settings.getAsBoolean("action.allow_id_generation", true);
         this.mappingUpdatedAction = mappingUpdatedAction;
+        this.stats = stats;
     }
 
     @Override
@@ -85,33 +108,178 @@ public class TransportShardAdvanceBulkAction extends TransportWriteAction<Advanc
     @Override
     public WritePrimaryResult<AdvanceBulkShardRequest, AdvanceBulkShardResponse> shardOperationOnPrimary(
         AdvanceBulkShardRequest request, IndexShard primary) throws Exception {
-        final IndexMetaData metaData = primary.indexSettings().getIndexMetaData();
+        final long startNanos = System.nanoTime();
+        final AdvanceBulkTookBreakdown.Timings timings = request.tookBreakdown() ? new AdvanceBulkTookBreakdown.Timings() : null;
+        if (timings != null) {
+            timings.add(Phase.QUEUE, startNanos - request.receivedNanos());
+        }
+        final AdvanceUpdateSlowLog slowLog = AdvanceUpdateSlowLog.of(request.shardId(), primary.indexSettings());
+        // the items aren't charged to a breaker here: the transport layer charged a shard bulk sent by another node to the
+        // in flight requests breaker, and the coordinating bulk charged one it created on this node
+        try {
+            return executeOnPrimary(request, primary, startNanos, timings, slowLog);
+        } catch (Exception e) {
+            // no result will respond and release the pages, and the request may be retried with the items it was rewritten with
+            request.detachPages();
+            throw e;
+        }
+    }
 
+    private WritePrimaryResult<AdvanceBulkShardRequest, AdvanceBulkShardResponse> executeOnPrimary(
+        AdvanceBulkShardRequest request, IndexShard primary, long startNanos, @Nullable AdvanceBulkTookBreakdown.Timings timings,
+        @Nullable AdvanceUpdateSlowLog slowLog) throws Exception {
+        final IndexMetaData metaData = primary.indexSettings().getIndexMetaData();
         long[] preVersions = new long[request.items().length];
         VersionType[] preVersionTypes = new VersionType[request.items().length];
         Translog.Location location = null;
-        for (int requestIndex = 0; requestIndex < request.items().length; requestIndex++) {
-            location = executeBulkItemRequest(metaData, primary, request, preVersions, preVersionTypes, location, requestIndex);
+        final TaskId[] bulkTasks = request.bulkTasks();
+        final AdvanceBulkTask[] itemsTasks = new AdvanceBulkTask[bulkTasks.length];
+        final Exception[] cancelledBeforeStart = new Exception[bulkTasks.length];
+        try {
+            for (int i = 0; i < bulkTasks.length; i++) {
+                try {
+                    itemsTasks[i] = registerItemsTask(bulkTasks[i]);
+                } catch (IllegalStateException e) {
+                    // the bulk was cancelled before the shard bulk reached this node
+                    cancelledBeforeStart[i] = new TaskCancelledException(e.getMessage());
+                }
+            }
+            for (int requestIndex = 0; requestIndex < request.items().length; requestIndex++) {
+                final int bulkTask = request.itemBulkTask(requestIndex);
+                final Exception abortReason = bulkTask >= 0 && cancelledBeforeStart[bulkTask] != null ? cancelledBeforeStart[bulkTask]
+                    : AdvanceBulkTask.abortReason(bulkTask >= 0 ? itemsTasks[bulkTask] : null, request.hasDeadline(),
+                        request.deadlineNanos());
+                if (abortReason != null) {
+                    abortItem(request, preVersions, preVersionTypes, requestIndex, abortReason);
+                    continue;
+                }
+                location = executeBulkItemRequest(metaData, primary, request, preVersions, preVersionTypes, location, requestIndex,
+                    timings, slowLog);
+            }
+        } finally {
+            for (AdvanceBulkTask itemsTask : itemsTasks) {
+                if (itemsTask != null) {
+                    taskManager.unregister(itemsTask);
+                }
+            }
         }
+        stats.onShardBulk(System.nanoTime() - startNanos);
 
         AdvanceBulkItemResponse[] responses = new AdvanceBulkItemResponse[request.items().length];
         AdvanceBulkItemRequest[] items = request.items();
         for (int i = 0; i < items.length; i++) {
             responses[i] = items[i].getPrimaryResponse();
         }
-        AdvanceBulkShardResponse response = new AdvanceBulkShardResponse(request.shardId(), responses);
-        return new WritePrimaryResult<>(request, response, location, null, primary, logger);
+        AdvanceBulkShardResponse response = new AdvanceBulkShardResponse(request.shardId(), responses, timings);
+        // a request that is retried on a relocated primary was already rewritten and still needs its refresh
+        if (location != null && (request.coalescedRefresh() || refreshCoalescer.coalesces(request.getRefreshPolicy()))) {
+            // wait for a refresh shared with the other requests of the window instead of refreshing for this request alone;
+            // the replicas see the rewritten policy and the flag, and schedule their own shared refresh
+            request.setRefreshPolicy(RefreshPolicy.WAIT_UNTIL);
+            request.coalescedRefresh(true);
+            refreshCoalescer.scheduleRefresh(primary);
+        }
+        final Translog.Location syncLocation = locationToSyncOnResponse(request, primary, location);
+        // the write result only waits for the refresh of a location it also syncs, so a coalesced refresh the durability
+        // of the bulk doesn't sync for is waited for before responding
+        final Translog.Location refreshLocation = request.coalescedRefresh() && syncLocation == null ? location : null;
+        // the write result starts syncing when it is created, and calls back once the sync is done
+        final long syncStartNanos = System.nanoTime();
+        return new WritePrimaryResult<AdvanceBulkShardRequest, AdvanceBulkShardResponse>(request, response, syncLocation, null,
+            primary, logger) {
+            @Override
+            public synchronized void respond(ActionListener<AdvanceBulkShardResponse> listener) {
+                // all replicas answered, nothing reads the sources of the translated items anymore
+                request.releasePages();
+                if (refreshLocation == null) {
+                    super.respond(listener);
+                    return;
+                }
+                primary.addRefreshListener(refreshLocation, forcedRefresh -> {
+                    response.setForcedRefresh(forcedRefresh);
+                    super.respond(listener);
+                });
+            }
+
+            @Override
+            public synchronized void onSuccess(boolean forcedRefresh) {
+                onSynced();
+                super.onSuccess(forcedRefresh);
+            }
+
+            @Override
+            public synchronized void onFailure(Exception ex) {
+                onSynced();
+                super.onFailure(ex);
+            }
+
+            private void onSynced() {
+                // the response is only sent after this callback, so the phase still makes it into its timings
+                if (timings != null && syncLocation != null) {
+                    timings.add(Phase.TRANSLOG_SYNC, System.nanoTime() - syncStartNanos);
+                }
+            }
+        };
+    }
+
+    /**
+     * Registers the execution of the items of a bulk as a cancellable child of the bulk task, as the replication task of
+     * the shard bulk can't be cancelled. A merged shard bulk registers one for each of the bulks it was merged from.
+     *
+     * @throws IllegalStateException if the bulk was cancelled already
+     */
+    private AdvanceBulkTask registerItemsTask(TaskId bulkTask) {
+        return (AdvanceBulkTask) taskManager.register("transport", ACTION_NAME + "[items]", new ItemsRequest(bulkTask));
+    }
+
+    /**
+     * Fails an item the primary won't execute because the bulk was cancelled or timed out. The replicas skip it like any
+     * other failed item.
+     */
+    private static void abortItem(AdvanceBulkShardRequest request, long[] preVersions, VersionType[] preVersionTypes,
+                                  int requestIndex, Exception abortReason) {
+        final AdvanceBulkItemRequest item = request.items()[requestIndex];
+        final DocWriteRequest docWriteRequest = item.request();
+        preVersions[requestIndex] = docWriteRequest.version();
+        preVersionTypes[requestIndex] = docWriteRequest.versionType();
+        // an item executed before the primary relocated keeps its response and is still replicated
+        if (item.getPrimaryResponse() == null) {
+            item.setPrimaryResponse(new AdvanceBulkItemResponse(item.id(), docWriteRequest.opType(),
+                new AdvanceBulkItemResponse.Failure(request.index(), docWriteRequest.type(), docWriteRequest.id(), abortReason)));
+        }
+    }
+
+    /**
+     * Stands for the items of a shard bulk in the task manager.
+     */
+    private static final class ItemsRequest extends TransportRequest {
+
+        ItemsRequest(TaskId parentTaskId) {
+            setParentTask(parentTaskId);
+        }
+
+        @Override
+        public Task createTask(long id, String type, String action, TaskId parentTaskId) {
+            return new AdvanceBulkTask(id, type, action, "shard bulk items", parentTaskId);
+        }
     }
 
     /** Executes bulk item requests and handles request execution exceptions */
     private Translog.Location executeBulkItemRequest(IndexMetaData metaData, IndexShard primary,
                                                      AdvanceBulkShardRequest request,
                                                      long[] preVersions, VersionType[] preVersionTypes,
-                                                     Translog.Location location, int requestIndex) throws Exception {
+                                                     Translog.Location location, int requestIndex,
+                                                     @Nullable AdvanceBulkTookBreakdown.Timings timings,
+                                                     @Nullable AdvanceUpdateSlowLog slowLog) throws Exception {
         final DocWriteRequest itemRequest = request.items()[requestIndex].request();
+        // the slow log needs the phases of every item on its own
+        final AdvanceBulkTookBreakdown.Timings itemTimings = slowLog == null ? timings : new AdvanceBulkTookBreakdown.Timings();
+        int retries = 0;
+        boolean scriptRan = false;
         preVersions[requestIndex] = itemRequest.version();
         preVersionTypes[requestIndex] = itemRequest.versionType();
         DocWriteRequest.OpType opType = itemRequest.opType();
+        stats.onItem(opType, AdvanceUpdateStats.sourceBytes(itemRequest));
         try {
             // execute item request
             final Engine.Result operationResult;
@@ -121,7 +289,9 @@ public class TransportShardAdvanceBulkAction extends TransportWriteAction<Advanc
                 case CREATE:
                 case INDEX:
                     final IndexRequest indexRequest = (IndexRequest) itemRequest;
+                    final long indexStartNanos = System.nanoTime();
                     Engine.IndexResult indexResult = executeIndexRequestOnPrimary(indexRequest, primary, mappingUpdatedAction);
+                    onPhase(itemTimings, Phase.INDEX, indexStartNanos);
                     if (indexResult.hasFailure()) {
                         response = null;
                     } else {
@@ -138,14 +308,18 @@ public class TransportShardAdvanceBulkAction extends TransportWriteAction<Advanc
                     break;
                 case UPDATE:
                     UpdateResultHolder updateResultHolder = executeUpdateRequest(((UpdateRequest) itemRequest),
-                            primary, metaData, request, requestIndex);
+                            primary, metaData, request, requestIndex, itemTimings);
                     operationResult = updateResultHolder.operationResult;
+                    retries = updateResultHolder.retries;
+                    scriptRan = updateResultHolder.scriptRan;
                     response = updateResultHolder.response;
                     replicaRequest = updateResultHolder.replicaRequest;
                     break;
                 case DELETE:
                     final DeleteRequest deleteRequest = (DeleteRequest) itemRequest;
+                    final long deleteStartNanos = System.nanoTime();
                     Engine.DeleteResult deleteResult = executeDeleteRequestOnPrimary(deleteRequest, primary, mappingUpdatedAction);
+                    onPhase(itemTimings, Phase.INDEX, deleteStartNanos);
                     if (deleteResult.hasFailure()) {
                         response = null;
                     } else {
@@ -169,8 +343,11 @@ public class TransportShardAdvanceBulkAction extends TransportWriteAction<Advanc
                         : "only noop update can have null operation";
                 replicaRequest.setPrimaryResponse(new AdvanceBulkItemResponse(replicaRequest.id(), opType, response));
                 assert replicaRequest.isIgnoreOnReplica();
+                stats.onResult(response.getResult(), 0);
             } else if (operationResult.hasFailure() == false) {
                 location = locationToSync(location, operationResult.getTranslogLocation());
+                // the replica request is the translated write of an update, so this is what was written
+                stats.onResult(response.getResult(), AdvanceUpdateStats.sourceBytes(replicaRequest.request()));
                 AdvanceBulkItemResponse primaryResponse = new AdvanceBulkItemResponse(replicaRequest.id(), opType, response);
                 replicaRequest.setPrimaryResponse(primaryResponse);
                 // set an empty ShardInfo to indicate no shards participated in the request execution
@@ -198,6 +375,13 @@ public class TransportShardAdvanceBulkAction extends TransportWriteAction<Advanc
             }
             assert replicaRequest.getPrimaryResponse() != null;
             assert preVersionTypes[requestIndex] != null;
+            if (slowLog != null) {
+                if (timings != null) {
+                    timings.addAll(itemTimings);
+                }
+                final boolean wrote = operationResult != null && operationResult.hasFailure() == false;
+                slowLog.maybeLog(itemRequest, wrote ? replicaRequest.request() : null, itemTimings, retries, scriptRan);
+            }
         } catch (Exception e) {
             // rethrow the failure if we are going to retry on primary and let parent failure to handle it
             if (retryPrimaryException(e)) {
@@ -213,6 +397,15 @@ public class TransportShardAdvanceBulkAction extends TransportWriteAction<Advanc
         return location;
     }
 
+    /**
+     * Adds the time since <code>startNanos</code> to the phase, when the request is timed.
+     */
+    private static void onPhase(@Nullable AdvanceBulkTookBreakdown.Timings timings, Phase phase, long startNanos) {
+        if (timings != null) {
+            timings.add(phase, System.nanoTime() - startNanos);
+        }
+    }
+
     private static boolean isConflictException(final Exception e) {
         return ExceptionsHelper.unwrapCause(e) instanceof VersionConflictEngineException;
     }
@@ -221,12 +414,16 @@ public class TransportShardAdvanceBulkAction extends TransportWriteAction<Advanc
         final AdvanceBulkItemRequest replicaRequest;
         final Engine.Result operationResult;
         final DocWriteResponse response;
+        final int retries;
+        final boolean scriptRan;
 
         private UpdateResultHolder(AdvanceBulkItemRequest replicaRequest, Engine.Result operationResult,
-                                   DocWriteResponse response) {
+                                   DocWriteResponse response, int retries, boolean scriptRan) {
             this.replicaRequest = replicaRequest;
             this.operationResult = operationResult;
             this.response = response;
+            this.retries = retries;
+            this.scriptRan = scriptRan;
         }
     }
 
@@ -239,16 +436,28 @@ public class TransportShardAdvanceBulkAction extends TransportWriteAction<Advanc
      * */
     private UpdateResultHolder executeUpdateRequest(UpdateRequest updateRequest, IndexShard primary,
                                                     IndexMetaData metaData, AdvanceBulkShardRequest request,
-                                                    int requestIndex) throws Exception {
+                                                    int requestIndex, @Nullable AdvanceBulkTookBreakdown.Timings timings)
+        throws Exception {
         Engine.Result updateOperationResult = null;
         UpdateResponse updateResponse = null;
         AdvanceBulkItemRequest replicaRequest = request.items()[requestIndex];
-        int maxAttempts = updateRequest.retryOnConflict();
-        for (int attemptCount = 0; attemptCount <= maxAttempts; attemptCount++) {
+        // a sender that retries conflicts itself backs off before it does, see AdvanceTransportBulkAction
+        int maxAttempts = request.retryConflictsOnCoordinator() ? 0 : updateRequest.retryOnConflict();
+        int attemptCount;
+        boolean scriptRan = false;
+        for (attemptCount = 0; attemptCount <= maxAttempts; attemptCount++) {
             final UpdateHelper.Result translate;
             // translate update request
             try {
-                translate = updateHelper.prepare(updateRequest, primary, threadPool::absoluteTimeInMillis);
+                final long getStartNanos = System.nanoTime();
+                final GetResult getResult = updateHelper.get(updateRequest, primary);
+                onPhase(timings, Phase.GET, getStartNanos);
+                scriptRan |= updateRequest.script() != null && (getResult.isExists() || updateRequest.scriptedUpsert());
+                final long translateStartNanos = System.nanoTime();
+                translate = updateHelper.prepare(primary.shardId(), updateRequest, getResult, threadPool::absoluteTimeInMillis);
+                // the replicas are sent the translated request, its source can't be recycled before the write is done
+                request.releaseAfterWrite(requestIndex, translate);
+                onPhase(timings, Phase.TRANSLATE, translateStartNanos);
             } catch (Exception failure) {
                 // we may fail translating a update to index or delete operation
                 // we use index result to communicate failure while translating update request
@@ -262,7 +471,9 @@ public class TransportShardAdvanceBulkAction extends TransportWriteAction<Advanc
                     IndexRequest indexRequest = translate.action();
                     MappingMetaData mappingMd = metaData.mappingOrDefault(indexRequest.type());
                     indexRequest.process(mappingMd, allowIdGeneration, request.index());
+                    final long indexStartNanos = System.nanoTime();
                     updateOperationResult = executeIndexRequestOnPrimary(indexRequest, primary, mappingUpdatedAction);
+                    onPhase(timings, Phase.INDEX, indexStartNanos);
                     if (updateOperationResult.hasFailure() == false) {
                         // update the version on request so it will happen on the replicas
                         final long version = updateOperationResult.getVersion();
@@ -273,7 +484,9 @@ public class TransportShardAdvanceBulkAction extends TransportWriteAction<Advanc
                     break;
                 case DELETED:
                     DeleteRequest deleteRequest = translate.action();
+                    final long deleteStartNanos = System.nanoTime();
                     updateOperationResult = executeDeleteRequestOnPrimary(deleteRequest, primary, mappingUpdatedAction);
+                    onPhase(timings, Phase.INDEX, deleteStartNanos);
                     if (updateOperationResult.hasFailure() == false) {
                         // update the request with the version so it will go to the replicas
                         deleteRequest.versionType(deleteRequest.versionType().versionTypeForReplicationAndRecovery());
@@ -335,9 +548,14 @@ public class TransportShardAdvanceBulkAction extends TransportWriteAction<Advanc
             } else if (updateOperationResult.getFailure() instanceof VersionConflictEngineException == false) {
                 // not a version conflict exception
                 break; // out of retry loop
+            } else if (backoffPolicy.onConflict(attemptCount, maxAttempts)) {
+                // retried right away for senders that don't back off themselves: the item runs on a write thread holding the
+                // operation permit of the primary, so waiting here would stall the other shard bulks of the node
+                stats.onConflictRetry();
             }
         }
-        return new UpdateResultHolder(replicaRequest, updateOperationResult, updateResponse);
+        return new UpdateResultHolder(replicaRequest, updateOperationResult, updateResponse, Math.min(attemptCount, maxAttempts),
+            scriptRan);
     }
 
     @Override
@@ -385,7 +603,55 @@ public class TransportShardAdvanceBulkAction extends TransportWriteAction<Advanc
                 }
             }
         }
-        return new WriteReplicaResult<>(request, location, null, replica, logger);
+        if (location != null && request.coalescedRefresh()) {
+            refreshCoalescer.scheduleRefresh(replica);
+        }
+        final Translog.Location syncLocation = locationToSyncOnResponse(request, replica, location);
+        final Translog.Location refreshLocation = request.coalescedRefresh() && syncLocation == null ? location : null;
+        return new WriteReplicaResult<AdvanceBulkShardRequest>(request, syncLocation, null, replica, logger) {
+            @Override
+            public synchronized void respond(ActionListener<TransportResponse.Empty> listener) {
+                if (refreshLocation == null) {
+                    super.respond(listener);
+                    return;
+                }
+                replica.addRefreshListener(refreshLocation, forcedRefresh -> super.respond(listener));
+            }
+        };
+    }
+
+    /**
+     * The translog location the write result syncs before the request returns, <code>null</code> when the durability of the
+     * request skips the sync. A request that waits for a refresh keeps its location, the refresh listener needs it, unless
+     * the refresh was only coalesced from <code>refresh=true</code>: that one is waited for separately, and the durability
+     * of the request still decides whether to sync.
+     */
+    private Translog.Location locationToSyncOnResponse(AdvanceBulkShardRequest request, IndexShard shard, Translog.Location location) {
+        if (location == null || request.durability() == AdvanceBulkRequest.Durability.REQUEST
+                || (request.getRefreshPolicy() == RefreshPolicy.WAIT_UNTIL && request.coalescedRefresh() == false)
+                || shard.getTranslogDurability() == Translog.Durability.ASYNC) {
+            // indices with an async durability never sync on the request, so there is nothing to skip
+            return location;
+        }
+        if (request.durability() == AdvanceBulkRequest.Durability.DEFERRED) {
+            threadPool.schedule(request.deferredSyncDelay(), ThreadPool.Names.GENERIC, new AbstractRunnable() {
+                @Override
+                protected void doRun() throws Exception {
+                    shard.sync(location, e -> {
+                        if (e != null) {
+                            onFailure(e);
+                        }
+                    });
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    logger.debug((Supplier<?>) () -> new ParameterizedMessage("{} failed to execute deferred translog sync",
+                            shard.shardId()), e);
+                }
+            });
+        }
+        return null;
     }
 
     private Translog.Location locationToSync(Translog.Location current, Translog.Location next) {
@@ -0,0 +1,25 @@
+package org.elasticsearch.plugin.advance.update.byquery;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+public class AdvanceDropFieldsAction
+    extends Action<AdvanceDropFieldsRequest, AdvanceUpdateByQueryResponse, AdvanceDropFieldsRequestBuilder> {
+
+    public static final AdvanceDropFieldsAction INSTANCE = new AdvanceDropFieldsAction();
+    public static final String NAME = "indices:data/write/advance_drop_fields";
+
+    private AdvanceDropFieldsAction() {
+        super(NAME);
+    }
+
+    @Override
+    public AdvanceUpdateByQueryResponse newResponse() {
+        return new AdvanceUpdateByQueryResponse();
+    }
+
+    @Override
+    public AdvanceDropFieldsRequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new AdvanceDropFieldsRequestBuilder(client, this);
+    }
+}
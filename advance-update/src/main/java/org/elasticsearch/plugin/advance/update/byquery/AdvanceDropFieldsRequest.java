@@ -0,0 +1,221 @@
+package org.elasticsearch.plugin.advance.update.byquery;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.IndicesRequest;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.plugin.advance.update.bulk.AdvanceBulkShardRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import static org.elasticsearch.action.ValidateActions.addValidationError;
+
+/**
+ * Removes fields from the <tt>_source</tt> of every document of the given indices. Each primary shard is read sequentially in
+ * doc id order on the node holding it, the fields are filtered out of the stored source while it is copied, and only the
+ * documents that contained one of the fields are indexed again.
+ */
+public class AdvanceDropFieldsRequest extends ActionRequest implements IndicesRequest.Replaceable {
+
+    private String[] indices = Strings.EMPTY_ARRAY;
+    private String[] types = Strings.EMPTY_ARRAY;
+    private IndicesOptions indicesOptions = IndicesOptions.strictExpandOpen();
+    private String[] fields = Strings.EMPTY_ARRAY;
+    private float requestsPerSecond = Float.POSITIVE_INFINITY;
+    private int batchSize = AdvanceUpdateByQueryRequest.DEFAULT_BATCH_SIZE;
+    private boolean refresh = false;
+    private TimeValue timeout = AdvanceBulkShardRequest.DEFAULT_TIMEOUT;
+
+    public AdvanceDropFieldsRequest() {
+    }
+
+    public AdvanceDropFieldsRequest(String... indices) {
+        this.indices = indices;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = null;
+        if (fields.length == 0) {
+            validationException = addValidationError("fields are missing", validationException);
+        }
+        for (String field : fields) {
+            if (Strings.hasText(field) == false) {
+                validationException = addValidationError("fields must not be empty", validationException);
+            } else if (field.startsWith("_")) {
+                validationException = addValidationError("can't drop metadata field [" + field + "]", validationException);
+            }
+        }
+        if (batchSize < 1) {
+            validationException = addValidationError("batch_size must be at least 1, got [" + batchSize + "]", validationException);
+        }
+        if (requestsPerSecond <= 0 || Float.isNaN(requestsPerSecond)) {
+            validationException = addValidationError("requests_per_second must be greater than 0, got [" + requestsPerSecond + "]",
+                validationException);
+        }
+        return validationException;
+    }
+
+    @Override
+    public String[] indices() {
+        return indices;
+    }
+
+    @Override
+    public AdvanceDropFieldsRequest indices(String... indices) {
+        this.indices = Objects.requireNonNull(indices, "indices must not be null");
+        return this;
+    }
+
+    @Override
+    public IndicesOptions indicesOptions() {
+        return indicesOptions;
+    }
+
+    public AdvanceDropFieldsRequest indicesOptions(IndicesOptions indicesOptions) {
+        this.indicesOptions = Objects.requireNonNull(indicesOptions, "indicesOptions must not be null");
+        return this;
+    }
+
+    public String[] types() {
+        return types;
+    }
+
+    /**
+     * Limits the removal to documents of the given types, all types by default.
+     */
+    public AdvanceDropFieldsRequest types(String... types) {
+        this.types = Objects.requireNonNull(types, "types must not be null");
+        return this;
+    }
+
+    public String[] fields() {
+        return fields;
+    }
+
+    /**
+     * The paths of the fields to remove, e.g. <tt>b</tt> or <tt>a.b</tt>. Paths may contain <tt>*</tt> wildcards, as in
+     * <tt>filter_path</tt>.
+     */
+    public AdvanceDropFieldsRequest fields(String... fields) {
+        this.fields = Objects.requireNonNull(fields, "fields must not be null");
+        return this;
+    }
+
+    public float requestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    /**
+     * The number of documents the whole request rewrites per second, spread evenly over all shards. Unlimited by default.
+     */
+    public AdvanceDropFieldsRequest requestsPerSecond(float requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+        return this;
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * The number of rewritten documents a shard sends per shard bulk. Defaults to <tt>500</tt>.
+     */
+    public AdvanceDropFieldsRequest batchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public boolean refresh() {
+        return refresh;
+    }
+
+    /**
+     * Whether the rewritten shards are refreshed once the removal is done.
+     */
+    public AdvanceDropFieldsRequest refresh(boolean refresh) {
+        this.refresh = refresh;
+        return this;
+    }
+
+    public TimeValue timeout() {
+        return timeout;
+    }
+
+    /**
+     * The timeout of each shard bulk. Defaults to <tt>1m</tt>.
+     */
+    public AdvanceDropFieldsRequest timeout(TimeValue timeout) {
+        this.timeout = Objects.requireNonNull(timeout, "timeout must not be null");
+        return this;
+    }
+
+    /**
+     * Parses the <tt>fields</tt> of the request body.
+     */
+    public AdvanceDropFieldsRequest fromXContent(XContentParser parser) throws IOException {
+        XContentParser.Token token = parser.nextToken();
+        if (token == null) {
+            return this;
+        }
+        String currentFieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if ("fields".equals(currentFieldName)) {
+                if (token == XContentParser.Token.START_ARRAY) {
+                    List<String> paths = new ArrayList<>();
+                    while (parser.nextToken() != XContentParser.Token.END_ARRAY) {
+                        paths.add(parser.text());
+                    }
+                    fields(paths.toArray(new String[paths.size()]));
+                } else {
+                    fields(parser.text());
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown field [" + currentFieldName + "] in advance drop fields");
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        indices = in.readStringArray();
+        types = in.readStringArray();
+        indicesOptions = IndicesOptions.readIndicesOptions(in);
+        fields = in.readStringArray();
+        requestsPerSecond = in.readFloat();
+        batchSize = in.readVInt();
+        refresh = in.readBoolean();
+        timeout = new TimeValue(in);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeStringArray(indices);
+        out.writeStringArray(types);
+        indicesOptions.writeIndicesOptions(out);
+        out.writeStringArray(fields);
+        out.writeFloat(requestsPerSecond);
+        out.writeVInt(batchSize);
+        out.writeBoolean(refresh);
+        timeout.writeTo(out);
+    }
+
+    @Override
+    public String toString() {
+        return "advance drop fields [" + Arrays.toString(indices) + "]" + Arrays.toString(types) + " " + Arrays.toString(fields);
+    }
+}
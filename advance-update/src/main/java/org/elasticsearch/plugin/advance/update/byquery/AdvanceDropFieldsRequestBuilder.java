@@ -0,0 +1,42 @@
+package org.elasticsearch.plugin.advance.update.byquery;
+
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.client.ElasticsearchClient;
+
+public class AdvanceDropFieldsRequestBuilder
+    extends ActionRequestBuilder<AdvanceDropFieldsRequest, AdvanceUpdateByQueryResponse, AdvanceDropFieldsRequestBuilder> {
+
+    public AdvanceDropFieldsRequestBuilder(ElasticsearchClient client, AdvanceDropFieldsAction action) {
+        super(client, action, new AdvanceDropFieldsRequest());
+    }
+
+    public AdvanceDropFieldsRequestBuilder setIndices(String... indices) {
+        request.indices(indices);
+        return this;
+    }
+
+    public AdvanceDropFieldsRequestBuilder setTypes(String... types) {
+        request.types(types);
+        return this;
+    }
+
+    public AdvanceDropFieldsRequestBuilder setFields(String... fields) {
+        request.fields(fields);
+        return this;
+    }
+
+    public AdvanceDropFieldsRequestBuilder setRequestsPerSecond(float requestsPerSecond) {
+        request.requestsPerSecond(requestsPerSecond);
+        return this;
+    }
+
+    public AdvanceDropFieldsRequestBuilder setBatchSize(int batchSize) {
+        request.batchSize(batchSize);
+        return this;
+    }
+
+    public AdvanceDropFieldsRequestBuilder setRefresh(boolean refresh) {
+        request.refresh(refresh);
+        return this;
+    }
+}
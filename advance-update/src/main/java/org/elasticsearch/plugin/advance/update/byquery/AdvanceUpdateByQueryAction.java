@@ -0,0 +1,25 @@
+package org.elasticsearch.plugin.advance.update.byquery;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+public class AdvanceUpdateByQueryAction
+    extends Action<AdvanceUpdateByQueryRequest, AdvanceUpdateByQueryResponse, AdvanceUpdateByQueryRequestBuilder> {
+
+    public static final AdvanceUpdateByQueryAction INSTANCE = new AdvanceUpdateByQueryAction();
+    public static final String NAME = "indices:data/write/advance_update_by_query";
+
+    private AdvanceUpdateByQueryAction() {
+        super(NAME);
+    }
+
+    @Override
+    public AdvanceUpdateByQueryResponse newResponse() {
+        return new AdvanceUpdateByQueryResponse();
+    }
+
+    @Override
+    public AdvanceUpdateByQueryRequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new AdvanceUpdateByQueryRequestBuilder(client, this);
+    }
+}
@@ -0,0 +1,326 @@
+package org.elasticsearch.plugin.advance.update.byquery;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.IndicesRequest;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.plugin.advance.update.bulk.AdvanceBulkShardRequest;
+import org.elasticsearch.script.Script;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+import static org.elasticsearch.action.ValidateActions.addValidationError;
+
+/**
+ * Applies the same advance update, a partial <tt>doc</tt> or a <tt>script</tt>, to every document matching a query. The
+ * documents are looked up on the node of each primary and updated there, without shipping them to the client and back.
+ */
+public class AdvanceUpdateByQueryRequest extends ActionRequest implements IndicesRequest.Replaceable {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private String[] indices = Strings.EMPTY_ARRAY;
+    private String[] types = Strings.EMPTY_ARRAY;
+    private IndicesOptions indicesOptions = IndicesOptions.strictExpandOpen();
+    private QueryBuilder query = QueryBuilders.matchAllQuery();
+    @Nullable
+    private BytesReference doc;
+    @Nullable
+    private XContentType docContentType;
+    @Nullable
+    private Script script;
+    private boolean detectNoop = true;
+    private int retryOnConflict = 3;
+    private int slices = 1;
+    private float requestsPerSecond = Float.POSITIVE_INFINITY;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private boolean refresh = false;
+    private TimeValue timeout = AdvanceBulkShardRequest.DEFAULT_TIMEOUT;
+
+    public AdvanceUpdateByQueryRequest() {
+    }
+
+    public AdvanceUpdateByQueryRequest(String... indices) {
+        this.indices = indices;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = null;
+        if (doc == null && script == null) {
+            validationException = addValidationError("doc or script is missing", validationException);
+        }
+        if (doc != null && script != null) {
+            validationException = addValidationError("can't provide both script and doc", validationException);
+        }
+        if (slices < 1) {
+            validationException = addValidationError("slices must be at least 1, got [" + slices + "]", validationException);
+        }
+        if (batchSize < 1) {
+            validationException = addValidationError("batch_size must be at least 1, got [" + batchSize + "]", validationException);
+        }
+        if (requestsPerSecond <= 0 || Float.isNaN(requestsPerSecond)) {
+            validationException = addValidationError("requests_per_second must be greater than 0, got [" + requestsPerSecond + "]",
+                validationException);
+        }
+        if (retryOnConflict < 0) {
+            validationException = addValidationError("retry_on_conflict must not be negative", validationException);
+        }
+        return validationException;
+    }
+
+    @Override
+    public String[] indices() {
+        return indices;
+    }
+
+    @Override
+    public AdvanceUpdateByQueryRequest indices(String... indices) {
+        this.indices = Objects.requireNonNull(indices, "indices must not be null");
+        return this;
+    }
+
+    @Override
+    public IndicesOptions indicesOptions() {
+        return indicesOptions;
+    }
+
+    public AdvanceUpdateByQueryRequest indicesOptions(IndicesOptions indicesOptions) {
+        this.indicesOptions = Objects.requireNonNull(indicesOptions, "indicesOptions must not be null");
+        return this;
+    }
+
+    public String[] types() {
+        return types;
+    }
+
+    /**
+     * Limits the update to documents of the given types, all types by default.
+     */
+    public AdvanceUpdateByQueryRequest types(String... types) {
+        this.types = Objects.requireNonNull(types, "types must not be null");
+        return this;
+    }
+
+    public QueryBuilder query() {
+        return query;
+    }
+
+    /**
+     * The query selecting the documents to update, all documents by default.
+     */
+    public AdvanceUpdateByQueryRequest query(QueryBuilder query) {
+        this.query = Objects.requireNonNull(query, "query must not be null");
+        return this;
+    }
+
+    @Nullable
+    public BytesReference doc() {
+        return doc;
+    }
+
+    @Nullable
+    public XContentType docContentType() {
+        return docContentType;
+    }
+
+    /**
+     * The partial document every matching document is updated with, with the same semantics as the <tt>doc</tt> of an
+     * advance update.
+     */
+    public AdvanceUpdateByQueryRequest doc(BytesReference doc, XContentType xContentType) {
+        this.doc = doc;
+        this.docContentType = xContentType;
+        return this;
+    }
+
+    @Nullable
+    public Script script() {
+        return script;
+    }
+
+    /**
+     * The script every matching document is updated with.
+     */
+    public AdvanceUpdateByQueryRequest script(Script script) {
+        this.script = script;
+        return this;
+    }
+
+    public boolean detectNoop() {
+        return detectNoop;
+    }
+
+    public AdvanceUpdateByQueryRequest detectNoop(boolean detectNoop) {
+        this.detectNoop = detectNoop;
+        return this;
+    }
+
+    public int retryOnConflict() {
+        return retryOnConflict;
+    }
+
+    /**
+     * How many times a document is updated again when it changed between its lookup and its write. Defaults to <tt>3</tt>.
+     */
+    public AdvanceUpdateByQueryRequest retryOnConflict(int retryOnConflict) {
+        this.retryOnConflict = retryOnConflict;
+        return this;
+    }
+
+    public int slices() {
+        return slices;
+    }
+
+    /**
+     * The number of slices each shard is split into. The slices of a shard are updated in parallel. Defaults to <tt>1</tt>.
+     */
+    public AdvanceUpdateByQueryRequest slices(int slices) {
+        this.slices = slices;
+        return this;
+    }
+
+    public float requestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    /**
+     * The number of documents the whole request updates per second, spread evenly over the slices of all shards. Unlimited
+     * by default.
+     */
+    public AdvanceUpdateByQueryRequest requestsPerSecond(float requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+        return this;
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * The number of documents a slice updates per shard bulk. Defaults to <tt>500</tt>.
+     */
+    public AdvanceUpdateByQueryRequest batchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public boolean refresh() {
+        return refresh;
+    }
+
+    /**
+     * Whether the updated shards are refreshed once the update is done.
+     */
+    public AdvanceUpdateByQueryRequest refresh(boolean refresh) {
+        this.refresh = refresh;
+        return this;
+    }
+
+    public TimeValue timeout() {
+        return timeout;
+    }
+
+    /**
+     * The timeout of each shard bulk. Defaults to <tt>1m</tt>.
+     */
+    public AdvanceUpdateByQueryRequest timeout(TimeValue timeout) {
+        this.timeout = Objects.requireNonNull(timeout, "timeout must not be null");
+        return this;
+    }
+
+    /**
+     * Parses the <tt>query</tt> and the <tt>doc</tt> or <tt>script</tt> of the request body.
+     */
+    public AdvanceUpdateByQueryRequest fromXContent(XContentParser parser) throws IOException {
+        XContentParser.Token token = parser.nextToken();
+        if (token == null) {
+            return this;
+        }
+        String currentFieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if ("query".equals(currentFieldName)) {
+                query = new QueryParseContext(parser).parseInnerQueryBuilder()
+                    .orElse(QueryBuilders.matchAllQuery());
+            } else if ("doc".equals(currentFieldName)) {
+                XContentBuilder docBuilder = XContentFactory.contentBuilder(parser.contentType());
+                docBuilder.copyCurrentStructure(parser);
+                doc(docBuilder.bytes(), docBuilder.contentType());
+            } else if ("script".equals(currentFieldName)) {
+                script = Script.parse(parser);
+            } else if ("detect_noop".equals(currentFieldName)) {
+                detectNoop(parser.booleanValue());
+            } else {
+                throw new IllegalArgumentException("Unknown field [" + currentFieldName + "] in advance update by query");
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        indices = in.readStringArray();
+        types = in.readStringArray();
+        indicesOptions = IndicesOptions.readIndicesOptions(in);
+        query = in.readNamedWriteable(QueryBuilder.class);
+        if (in.readBoolean()) {
+            doc = in.readBytesReference();
+            docContentType = XContentType.readFrom(in);
+        }
+        script = in.readOptionalWriteable(Script::new);
+        detectNoop = in.readBoolean();
+        retryOnConflict = in.readVInt();
+        slices = in.readVInt();
+        requestsPerSecond = in.readFloat();
+        batchSize = in.readVInt();
+        refresh = in.readBoolean();
+        timeout = new TimeValue(in);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeStringArray(indices);
+        out.writeStringArray(types);
+        indicesOptions.writeIndicesOptions(out);
+        out.writeNamedWriteable(query);
+        if (doc != null) {
+            out.writeBoolean(true);
+            out.writeBytesReference(doc);
+            docContentType.writeTo(out);
+        } else {
+            out.writeBoolean(false);
+        }
+        out.writeOptionalWriteable(script);
+        out.writeBoolean(detectNoop);
+        out.writeVInt(retryOnConflict);
+        out.writeVInt(slices);
+        out.writeFloat(requestsPerSecond);
+        out.writeVInt(batchSize);
+        out.writeBoolean(refresh);
+        timeout.writeTo(out);
+    }
+
+    @Override
+    public String toString() {
+        return "advance update by query [" + Arrays.toString(indices) + "]" + Arrays.toString(types) + " " + query;
+    }
+}
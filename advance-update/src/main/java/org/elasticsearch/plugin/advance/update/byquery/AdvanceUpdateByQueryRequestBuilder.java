@@ -0,0 +1,60 @@
+package org.elasticsearch.plugin.advance.update.byquery;
+
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.script.Script;
+
+public class AdvanceUpdateByQueryRequestBuilder
+    extends ActionRequestBuilder<AdvanceUpdateByQueryRequest, AdvanceUpdateByQueryResponse, AdvanceUpdateByQueryRequestBuilder> {
+
+    public AdvanceUpdateByQueryRequestBuilder(ElasticsearchClient client, AdvanceUpdateByQueryAction action) {
+        super(client, action, new AdvanceUpdateByQueryRequest());
+    }
+
+    public AdvanceUpdateByQueryRequestBuilder setIndices(String... indices) {
+        request.indices(indices);
+        return this;
+    }
+
+    public AdvanceUpdateByQueryRequestBuilder setTypes(String... types) {
+        request.types(types);
+        return this;
+    }
+
+    public AdvanceUpdateByQueryRequestBuilder setQuery(QueryBuilder query) {
+        request.query(query);
+        return this;
+    }
+
+    public AdvanceUpdateByQueryRequestBuilder setDoc(XContentBuilder doc) {
+        request.doc(doc.bytes(), doc.contentType());
+        return this;
+    }
+
+    public AdvanceUpdateByQueryRequestBuilder setScript(Script script) {
+        request.script(script);
+        return this;
+    }
+
+    public AdvanceUpdateByQueryRequestBuilder setSlices(int slices) {
+        request.slices(slices);
+        return this;
+    }
+
+    public AdvanceUpdateByQueryRequestBuilder setRequestsPerSecond(float requestsPerSecond) {
+        request.requestsPerSecond(requestsPerSecond);
+        return this;
+    }
+
+    public AdvanceUpdateByQueryRequestBuilder setBatchSize(int batchSize) {
+        request.batchSize(batchSize);
+        return this;
+    }
+
+    public AdvanceUpdateByQueryRequestBuilder setRefresh(boolean refresh) {
+        request.refresh(refresh);
+        return this;
+    }
+}
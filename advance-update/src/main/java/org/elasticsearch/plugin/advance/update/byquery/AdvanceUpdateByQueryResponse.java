@@ -0,0 +1,209 @@
+package org.elasticsearch.plugin.advance.update.byquery;
+
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.support.DefaultShardOperationFailedException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.plugin.advance.update.bulk.AdvanceBulkItemResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The outcome of an advance update by query or an advance drop fields. The node of every primary reports one of these for
+ * its shard, and the coordinating node adds them up.
+ */
+public class AdvanceUpdateByQueryResponse extends ActionResponse implements ToXContentObject {
+
+    private long tookInMillis;
+    private long total;
+    private long updated;
+    private long deleted;
+    private long noops;
+    private long batches;
+    private long throttledMillis;
+    private final List<AdvanceBulkItemResponse.Failure> failures = new ArrayList<>();
+    private final List<DefaultShardOperationFailedException> shardFailures = new ArrayList<>();
+
+    public AdvanceUpdateByQueryResponse() {
+    }
+
+    /**
+     * Counts the outcome of the items of a shard bulk.
+     */
+    synchronized void onBulkItems(AdvanceBulkItemResponse[] items) {
+        batches++;
+        for (AdvanceBulkItemResponse item : items) {
+            total++;
+            if (item.isFailed()) {
+                failures.add(item.getFailure());
+                continue;
+            }
+            DocWriteResponse.Result result = item.getResponse().getResult();
+            if (result == DocWriteResponse.Result.DELETED) {
+                deleted++;
+            } else if (result == DocWriteResponse.Result.NOOP) {
+                noops++;
+            } else {
+                updated++;
+            }
+        }
+    }
+
+    /**
+     * Records that a batch of documents could not be sent as a whole.
+     */
+    synchronized void onBulkFailure(List<AdvanceBulkItemResponse.Failure> itemFailures) {
+        batches++;
+        total += itemFailures.size();
+        failures.addAll(itemFailures);
+    }
+
+    /**
+     * Counts a document that was processed without being written.
+     */
+    synchronized void onNoop() {
+        total++;
+        noops++;
+    }
+
+    synchronized void onShardFailure(DefaultShardOperationFailedException failure) {
+        shardFailures.add(failure);
+    }
+
+    synchronized void onThrottled(long millis) {
+        throttledMillis += millis;
+    }
+
+    /**
+     * Adds the counters and failures of a shard to the ones of this response.
+     */
+    synchronized void add(AdvanceUpdateByQueryResponse other) {
+        synchronized (other) {
+            total += other.total;
+            updated += other.updated;
+            deleted += other.deleted;
+            noops += other.noops;
+            batches += other.batches;
+            throttledMillis += other.throttledMillis;
+            failures.addAll(other.failures);
+            shardFailures.addAll(other.shardFailures);
+        }
+    }
+
+    void setTookInMillis(long tookInMillis) {
+        this.tookInMillis = tookInMillis;
+    }
+
+    public TimeValue getTook() {
+        return new TimeValue(tookInMillis);
+    }
+
+    /**
+     * The number of documents that matched the query and were processed.
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    public synchronized long getUpdated() {
+        return updated;
+    }
+
+    public synchronized long getDeleted() {
+        return deleted;
+    }
+
+    public synchronized long getNoops() {
+        return noops;
+    }
+
+    /**
+     * The number of shard bulks that were sent.
+     */
+    public synchronized long getBatches() {
+        return batches;
+    }
+
+    /**
+     * The time the slices waited to honor <tt>requests_per_second</tt>, summed over all slices.
+     */
+    public synchronized TimeValue getThrottled() {
+        return new TimeValue(throttledMillis);
+    }
+
+    public synchronized List<AdvanceBulkItemResponse.Failure> getFailures() {
+        return new ArrayList<>(failures);
+    }
+
+    public synchronized List<DefaultShardOperationFailedException> getShardFailures() {
+        return new ArrayList<>(shardFailures);
+    }
+
+    @Override
+    public synchronized void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        tookInMillis = in.readVLong();
+        total = in.readVLong();
+        updated = in.readVLong();
+        deleted = in.readVLong();
+        noops = in.readVLong();
+        batches = in.readVLong();
+        throttledMillis = in.readVLong();
+        failures.addAll(in.readList(AdvanceBulkItemResponse.Failure::new));
+        int size = in.readVInt();
+        for (int i = 0; i < size; i++) {
+            shardFailures.add(DefaultShardOperationFailedException.readShardOperationFailed(in));
+        }
+    }
+
+    @Override
+    public synchronized void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVLong(tookInMillis);
+        out.writeVLong(total);
+        out.writeVLong(updated);
+        out.writeVLong(deleted);
+        out.writeVLong(noops);
+        out.writeVLong(batches);
+        out.writeVLong(throttledMillis);
+        out.writeList(failures);
+        out.writeVInt(shardFailures.size());
+        for (DefaultShardOperationFailedException shardFailure : shardFailures) {
+            shardFailure.writeTo(out);
+        }
+    }
+
+    @Override
+    public synchronized XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field("took", tookInMillis);
+        builder.field("total", total);
+        builder.field("updated", updated);
+        builder.field("deleted", deleted);
+        builder.field("noops", noops);
+        builder.field("batches", batches);
+        builder.field("throttled_millis", throttledMillis);
+        builder.startArray("failures");
+        for (AdvanceBulkItemResponse.Failure failure : failures) {
+            builder.startObject();
+            failure.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endArray();
+        builder.startArray("shard_failures");
+        for (DefaultShardOperationFailedException shardFailure : shardFailures) {
+            builder.startObject();
+            shardFailure.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endArray();
+        builder.endObject();
+        return builder;
+    }
+}
@@ -0,0 +1,188 @@
+package org.elasticsearch.plugin.advance.update.byquery;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.util.Bits;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.fieldvisitor.FieldsVisitor;
+import org.elasticsearch.index.mapper.DocumentMapper;
+import org.elasticsearch.index.mapper.VersionFieldMapper;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.plugin.advance.update.bulk.TransportShardAdvanceBulkAction;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Executes an advance drop fields. The node of every primary walks the segments of a point in time searcher of the shard one
+ * after the other and reads the stored <tt>_source</tt> of the live documents in doc id order, which keeps the reads of the
+ * stored fields sequential. The source is streamed through a filtering generator that leaves out the dropped paths, no script
+ * and no map of the source is involved. Documents that did not contain any of the paths are skipped, the others are indexed
+ * again with the version they were read with, in batches through {@link TransportShardAdvanceBulkAction}. A document that
+ * changed in the meantime is reported as a version conflict instead of being overwritten.
+ */
+public class TransportAdvanceDropFieldsAction extends TransportPrimaryShardsAction<AdvanceDropFieldsRequest> {
+
+    @Inject
+    public TransportAdvanceDropFieldsAction(Settings settings, ThreadPool threadPool, TransportService transportService,
+                                            ClusterService clusterService, IndicesService indicesService,
+                                            TransportShardAdvanceBulkAction shardBulkAction, ActionFilters actionFilters,
+                                            IndexNameExpressionResolver indexNameExpressionResolver) {
+        super(settings, AdvanceDropFieldsAction.NAME, threadPool, transportService, clusterService, indicesService, shardBulkAction,
+            actionFilters, indexNameExpressionResolver, AdvanceDropFieldsRequest::new);
+    }
+
+    @Override
+    protected int workersPerShard(AdvanceDropFieldsRequest request) {
+        // a single reader per shard keeps the reads sequential
+        return 1;
+    }
+
+    @Override
+    protected float requestsPerSecond(AdvanceDropFieldsRequest request) {
+        return request.requestsPerSecond();
+    }
+
+    @Override
+    protected void executeOnShard(ShardRequest<AdvanceDropFieldsRequest> request,
+                                  ActionListener<AdvanceUpdateByQueryResponse> listener) throws IOException {
+        final ShardId shardId = request.shardId();
+        final IndexService indexService = indicesService.indexServiceSafe(shardId.getIndex());
+        final Set<String> types = new HashSet<>(Arrays.asList(request.request().types()));
+        for (DocumentMapper mapper : indexService.mapperService().docMappers(false)) {
+            // the parent of a child document is not part of its source, indexing the source again would lose it
+            if ((types.isEmpty() || types.contains(mapper.type())) && mapper.parentFieldMapper().active()) {
+                throw new IllegalArgumentException("can't drop fields of documents of type [" + mapper.type() + "] that has a parent");
+            }
+        }
+        final IndexShard shard = indexService.getShard(shardId.id());
+        final Engine.Searcher searcher = shard.acquireSearcher("advance_drop_fields");
+        final AdvanceUpdateByQueryResponse response = new AdvanceUpdateByQueryResponse();
+        new SegmentsWorker(request, types, searcher, response, () -> {
+            searcher.close();
+            listener.onResponse(response);
+        }).run();
+    }
+
+    /**
+     * Whether the source contains any of the paths. Only the matching parts of the source are copied, so a source without
+     * the paths yields an empty object.
+     */
+    static boolean containsAny(BytesReference source, XContentType xContentType, Set<String> paths) throws IOException {
+        try (XContentParser parser = xContentType.xContent().createParser(NamedXContentRegistry.EMPTY, source);
+             XContentBuilder builder = new XContentBuilder(JsonXContent.jsonXContent, new BytesStreamOutput(), paths,
+                 Collections.emptySet())) {
+            builder.copyCurrentStructure(parser);
+            return builder.bytes().length() > "{}".length();
+        }
+    }
+
+    /**
+     * Copies the source without the paths, in the content type it was indexed with.
+     */
+    static BytesReference dropPaths(BytesReference source, XContentType xContentType, Set<String> paths) throws IOException {
+        final BytesStreamOutput out = new BytesStreamOutput(source.length());
+        try (XContentParser parser = xContentType.xContent().createParser(NamedXContentRegistry.EMPTY, source);
+             XContentBuilder builder = new XContentBuilder(xContentType.xContent(), out, Collections.emptySet(), paths)) {
+            builder.copyCurrentStructure(parser);
+        }
+        return out.bytes();
+    }
+
+    /**
+     * Reads the live documents of all segments in doc id order and rewrites the ones that contain any of the paths.
+     */
+    private final class SegmentsWorker extends BatchWorker {
+        private final Set<String> types;
+        private final Set<String> paths;
+        private final List<LeafReaderContext> leaves;
+        private int leafOrd = -1;
+        private LeafReader leaf;
+        private Bits liveDocs;
+        private NumericDocValues versions;
+        private int nextDoc;
+
+        SegmentsWorker(ShardRequest<AdvanceDropFieldsRequest> request, Set<String> types, Engine.Searcher searcher,
+                       AdvanceUpdateByQueryResponse response, Runnable onDone) {
+            super(request, request.request().batchSize(), request.request().refresh(), request.request().timeout(), response, onDone);
+            this.types = types;
+            this.paths = new HashSet<>(Arrays.asList(request.request().fields()));
+            this.leaves = searcher.reader().leaves();
+        }
+
+        @Override
+        protected DocWriteRequest nextWrite() throws IOException {
+            while (true) {
+                if (leaf == null || nextDoc >= leaf.maxDoc()) {
+                    if (++leafOrd >= leaves.size()) {
+                        return null;
+                    }
+                    leaf = leaves.get(leafOrd).reader();
+                    liveDocs = leaf.getLiveDocs();
+                    versions = leaf.getNumericDocValues(VersionFieldMapper.NAME);
+                    nextDoc = 0;
+                    continue;
+                }
+                final int doc = nextDoc++;
+                if (liveDocs != null && liveDocs.get(doc) == false) {
+                    continue;
+                }
+                final IndexRequest indexRequest = toIndexRequest(doc);
+                if (indexRequest != null) {
+                    return indexRequest;
+                }
+            }
+        }
+
+        private IndexRequest toIndexRequest(int doc) throws IOException {
+            final FieldsVisitor fields = new FieldsVisitor(true);
+            leaf.document(doc, fields);
+            // nested documents and documents of types without _source have nothing to drop
+            if (fields.uid() == null || fields.source() == null) {
+                return null;
+            }
+            final String type = fields.uid().type();
+            if (types.isEmpty() == false && types.contains(type) == false) {
+                return null;
+            }
+            final BytesReference source = fields.source();
+            final XContentType xContentType = XContentFactory.xContentType(source);
+            if (containsAny(source, xContentType, paths) == false) {
+                response.onNoop();
+                return null;
+            }
+            final IndexRequest indexRequest = new IndexRequest(request.shardId().getIndexName(), type, fields.uid().id());
+            indexRequest.routing(fields.routing());
+            indexRequest.source(dropPaths(source, xContentType, paths), xContentType);
+            indexRequest.version(versions == null ? Versions.MATCH_ANY : versions.get(doc));
+            return indexRequest;
+        }
+    }
+}
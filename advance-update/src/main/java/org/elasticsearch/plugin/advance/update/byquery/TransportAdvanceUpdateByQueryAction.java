@@ -0,0 +1,181 @@
+package org.elasticsearch.plugin.advance.update.byquery;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.search.Queries;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.fieldvisitor.FieldsVisitor;
+import org.elasticsearch.index.mapper.TypeFieldMapper;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.plugin.advance.update.action.UpdateRequest;
+import org.elasticsearch.plugin.advance.update.bulk.TransportShardAdvanceBulkAction;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes an advance update by query. The coordinating node sends one request per primary shard to the node holding the
+ * primary. That node collects the matching documents from a point in time searcher of the shard, splits them into slices by
+ * doc id, and every slice sends its documents in batches of advance updates through {@link TransportShardAdvanceBulkAction}.
+ * The updates are therefore translated and written on the primary and replicated like any other advance bulk, and the
+ * documents never leave the node.
+ */
+public class TransportAdvanceUpdateByQueryAction extends TransportPrimaryShardsAction<AdvanceUpdateByQueryRequest> {
+
+    @Inject
+    public TransportAdvanceUpdateByQueryAction(Settings settings, ThreadPool threadPool, TransportService transportService,
+                                               ClusterService clusterService, IndicesService indicesService,
+                                               TransportShardAdvanceBulkAction shardBulkAction, ActionFilters actionFilters,
+                                               IndexNameExpressionResolver indexNameExpressionResolver) {
+        super(settings, AdvanceUpdateByQueryAction.NAME, threadPool, transportService, clusterService, indicesService, shardBulkAction,
+            actionFilters, indexNameExpressionResolver, AdvanceUpdateByQueryRequest::new);
+    }
+
+    @Override
+    protected int workersPerShard(AdvanceUpdateByQueryRequest request) {
+        return request.slices();
+    }
+
+    @Override
+    protected float requestsPerSecond(AdvanceUpdateByQueryRequest request) {
+        return request.requestsPerSecond();
+    }
+
+    /**
+     * Updates the matching documents of a primary shard on the node holding it.
+     */
+    @Override
+    protected void executeOnShard(ShardRequest<AdvanceUpdateByQueryRequest> request,
+                                  ActionListener<AdvanceUpdateByQueryResponse> listener) throws IOException {
+        final ShardId shardId = request.shardId();
+        final IndexService indexService = indicesService.indexServiceSafe(shardId.getIndex());
+        final IndexShard shard = indexService.getShard(shardId.id());
+        final Engine.Searcher searcher = shard.acquireSearcher("advance_update_by_query");
+        final FixedBitSet matches;
+        try {
+            matches = collectMatches(request.request(), indexService, shardId, searcher);
+        } catch (Exception e) {
+            searcher.close();
+            throw e;
+        }
+        final AdvanceUpdateByQueryResponse response = new AdvanceUpdateByQueryResponse();
+        final int slices = request.request().slices();
+        final int maxDoc = matches.length();
+        final AtomicInteger pendingSlices = new AtomicInteger(slices);
+        final Runnable onSliceDone = () -> {
+            if (pendingSlices.decrementAndGet() == 0) {
+                searcher.close();
+                listener.onResponse(response);
+            }
+        };
+        for (int slice = 0; slice < slices; slice++) {
+            final int from = (int) ((long) maxDoc * slice / slices);
+            final int to = (int) ((long) maxDoc * (slice + 1) / slices);
+            new SliceWorker(request, searcher, matches, from, to, response, onSliceDone).run();
+        }
+    }
+
+    /**
+     * Marks the documents of the shard that match the query, restricted to the requested types and to root documents.
+     */
+    private FixedBitSet collectMatches(AdvanceUpdateByQueryRequest request, IndexService indexService, ShardId shardId,
+                                       Engine.Searcher searcher) throws IOException {
+        QueryShardContext context = indexService.newQueryShardContext(shardId.id(), searcher.reader(), threadPool::absoluteTimeInMillis);
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        query.add(context.toQuery(request.query()).query(), BooleanClause.Occur.MUST);
+        if (request.types().length > 0) {
+            BytesRef[] types = new BytesRef[request.types().length];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = new BytesRef(request.types()[i]);
+            }
+            query.add(new TypeFieldMapper.TypesQuery(types), BooleanClause.Occur.FILTER);
+        }
+        if (indexService.mapperService().hasNested()) {
+            query.add(Queries.newNonNestedFilter(), BooleanClause.Occur.FILTER);
+        }
+        final FixedBitSet matches = new FixedBitSet(Math.max(1, searcher.reader().maxDoc()));
+        searcher.searcher().search(query.build(), new SimpleCollector() {
+            private int docBase;
+
+            @Override
+            protected void doSetNextReader(LeafReaderContext context) throws IOException {
+                docBase = context.docBase;
+            }
+
+            @Override
+            public void collect(int doc) throws IOException {
+                matches.set(docBase + doc);
+            }
+
+            @Override
+            public boolean needsScores() {
+                return false;
+            }
+        });
+        return matches;
+    }
+
+    /**
+     * Updates the matching documents in <code>[from, to)</code>.
+     */
+    private final class SliceWorker extends BatchWorker {
+        private final Engine.Searcher searcher;
+        private final FixedBitSet matches;
+        private final int to;
+        private int nextDoc;
+
+        SliceWorker(ShardRequest<AdvanceUpdateByQueryRequest> request, Engine.Searcher searcher, FixedBitSet matches, int from, int to,
+                    AdvanceUpdateByQueryResponse response, Runnable onDone) {
+            super(request, request.request().batchSize(), request.request().refresh(), request.request().timeout(), response, onDone);
+            this.searcher = searcher;
+            this.matches = matches;
+            this.nextDoc = from;
+            this.to = to;
+        }
+
+        @Override
+        protected DocWriteRequest nextWrite() throws IOException {
+            if (nextDoc >= to) {
+                return null;
+            }
+            final int doc = matches.nextSetBit(nextDoc);
+            if (doc >= to) {
+                nextDoc = to;
+                return null;
+            }
+            nextDoc = doc + 1;
+            final FieldsVisitor fields = new FieldsVisitor(false);
+            searcher.reader().document(doc, fields);
+            final AdvanceUpdateByQueryRequest byQuery = request.request();
+            UpdateRequest updateRequest = new UpdateRequest(request.shardId().getIndexName(), fields.uid().type(), fields.uid().id());
+            updateRequest.routing(fields.routing());
+            updateRequest.retryOnConflict(byQuery.retryOnConflict());
+            updateRequest.detectNoop(byQuery.detectNoop());
+            if (byQuery.script() != null) {
+                updateRequest.script(byQuery.script());
+            } else {
+                // the partial document is immutable, so all updates share its bytes
+                updateRequest.doc(new IndexRequest().source(byQuery.doc(), byQuery.docContentType()));
+            }
+            return updateRequest;
+        }
+    }
+}
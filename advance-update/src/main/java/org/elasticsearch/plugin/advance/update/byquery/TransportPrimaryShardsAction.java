@@ -0,0 +1,338 @@
+package org.elasticsearch.plugin.advance.update.byquery;
+
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.util.Supplier;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionListenerResponseHandler;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.IndicesRequest;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.DefaultShardOperationFailedException;
+import org.elasticsearch.action.support.HandledTransportAction;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.plugin.advance.update.bulk.AdvanceBulkItemRequest;
+import org.elasticsearch.plugin.advance.update.bulk.AdvanceBulkItemResponse;
+import org.elasticsearch.plugin.advance.update.bulk.AdvanceBulkShardRequest;
+import org.elasticsearch.plugin.advance.update.bulk.AdvanceBulkShardResponse;
+import org.elasticsearch.plugin.advance.update.bulk.TransportShardAdvanceBulkAction;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportChannel;
+import org.elasticsearch.transport.TransportRequest;
+import org.elasticsearch.transport.TransportRequestHandler;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base class of the actions that rewrite documents of whole indices on the nodes holding their primaries. The coordinating node
+ * sends one request per primary shard to the node holding the primary, that node reads the documents from a point in time
+ * searcher of the shard and sends the writes in batches through {@link TransportShardAdvanceBulkAction}, and the coordinating
+ * node adds up the responses of all shards.
+ * <p>
+ * The shard walks run on the generic pool, like reindex, and not on the bounded coordinating pool of advance bulks: a walk of
+ * a large shard must neither wait behind nor hold up the parsing and routing of bulks.
+ */
+abstract class TransportPrimaryShardsAction<Request extends ActionRequest & IndicesRequest>
+    extends HandledTransportAction<Request, AdvanceUpdateByQueryResponse> {
+
+    private final String shardActionName;
+    protected final ClusterService clusterService;
+    protected final IndicesService indicesService;
+    protected final TransportShardAdvanceBulkAction shardBulkAction;
+
+    protected TransportPrimaryShardsAction(Settings settings, String actionName, ThreadPool threadPool, TransportService transportService,
+                                           ClusterService clusterService, IndicesService indicesService,
+                                           TransportShardAdvanceBulkAction shardBulkAction, ActionFilters actionFilters,
+                                           IndexNameExpressionResolver indexNameExpressionResolver,
+                                           java.util.function.Supplier<Request> request) {
+        super(settings, actionName, threadPool, transportService, actionFilters, indexNameExpressionResolver, request);
+        this.shardActionName = actionName + "[s]";
+        this.clusterService = clusterService;
+        this.indicesService = indicesService;
+        this.shardBulkAction = shardBulkAction;
+        transportService.registerRequestHandler(shardActionName, () -> new ShardRequest<>(request.get()),
+            ThreadPool.Names.GENERIC, new ShardTransportHandler());
+    }
+
+    /**
+     * The number of workers that rewrite the documents of a shard in parallel.
+     */
+    protected abstract int workersPerShard(Request request);
+
+    /**
+     * The number of documents the whole request writes per second, {@link Float#POSITIVE_INFINITY} for no limit.
+     */
+    protected abstract float requestsPerSecond(Request request);
+
+    /**
+     * Rewrites the documents of a primary shard on the node holding it.
+     */
+    protected abstract void executeOnShard(ShardRequest<Request> request, ActionListener<AdvanceUpdateByQueryResponse> listener)
+        throws IOException;
+
+    @Override
+    protected final void doExecute(Request request, ActionListener<AdvanceUpdateByQueryResponse> listener) {
+        throw new UnsupportedOperationException("task parameter is required for this operation");
+    }
+
+    @Override
+    protected void doExecute(Task task, Request request, ActionListener<AdvanceUpdateByQueryResponse> listener) {
+        final long startTimeInNanos = System.nanoTime();
+        final ClusterState state = clusterService.state();
+        final String[] concreteIndices = indexNameExpressionResolver.concreteIndexNames(state, request);
+        final List<ShardRouting> primaries = new ArrayList<>();
+        for (String index : concreteIndices) {
+            for (IndexShardRoutingTable shardRoutingTable : state.routingTable().index(index)) {
+                primaries.add(shardRoutingTable.primaryShard());
+            }
+        }
+        final AdvanceUpdateByQueryResponse response = new AdvanceUpdateByQueryResponse();
+        if (primaries.isEmpty()) {
+            listener.onResponse(response);
+            return;
+        }
+        // requests_per_second is for the whole request, every worker of every shard gets an even share
+        final float requestsPerSecondPerWorker = requestsPerSecond(request) / (primaries.size() * workersPerShard(request));
+        final AtomicInteger counter = new AtomicInteger(primaries.size());
+        for (ShardRouting primary : primaries) {
+            final ActionListener<AdvanceUpdateByQueryResponse> shardListener = new ActionListener<AdvanceUpdateByQueryResponse>() {
+                @Override
+                public void onResponse(AdvanceUpdateByQueryResponse shardResponse) {
+                    response.add(shardResponse);
+                    onShardDone();
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    response.onShardFailure(new DefaultShardOperationFailedException(primary.getIndexName(), primary.id(), e));
+                    onShardDone();
+                }
+
+                private void onShardDone() {
+                    if (counter.decrementAndGet() == 0) {
+                        response.setTookInMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTimeInNanos));
+                        listener.onResponse(response);
+                    }
+                }
+            };
+            final DiscoveryNode node = primary.active() ? state.nodes().get(primary.currentNodeId()) : null;
+            if (node == null) {
+                shardListener.onFailure(new IllegalStateException("primary shard " + primary.shardId() + " is not active"));
+                continue;
+            }
+            ShardRequest<Request> shardRequest = new ShardRequest<>(primary.shardId(), request, requestsPerSecondPerWorker);
+            shardRequest.setParentTask(clusterService.localNode().getId(), task.getId());
+            transportService.sendRequest(node, shardActionName, shardRequest,
+                new ActionListenerResponseHandler<>(shardListener, AdvanceUpdateByQueryResponse::new));
+        }
+    }
+
+    /**
+     * Sends the writes of a worker one batch at a time. The next batch is only read once the previous one was written, after the
+     * delay <tt>requests_per_second</tt> asks for.
+     */
+    protected abstract class BatchWorker extends AbstractRunnable {
+        protected final ShardRequest<Request> request;
+        protected final AdvanceUpdateByQueryResponse response;
+        private final int batchSize;
+        private final boolean refresh;
+        private final TimeValue timeout;
+        private final Runnable onDone;
+        private boolean started;
+        /** the write that starts the next batch, read ahead to know whether a batch is the last one */
+        private DocWriteRequest pending;
+        private long batchStartTimeInNanos;
+
+        protected BatchWorker(ShardRequest<Request> request, int batchSize, boolean refresh, TimeValue timeout,
+                              AdvanceUpdateByQueryResponse response, Runnable onDone) {
+            this.request = request;
+            this.batchSize = batchSize;
+            this.refresh = refresh;
+            this.timeout = timeout;
+            this.response = response;
+            this.onDone = onDone;
+        }
+
+        /**
+         * Reads the next document of the worker and returns the write for it, <code>null</code> once there is none left.
+         */
+        @Nullable
+        protected abstract DocWriteRequest nextWrite() throws IOException;
+
+        @Override
+        protected void doRun() throws Exception {
+            batchStartTimeInNanos = System.nanoTime();
+            if (started == false) {
+                started = true;
+                pending = nextWrite();
+            }
+            final List<AdvanceBulkItemRequest> items = new ArrayList<>();
+            while (items.size() < batchSize && pending != null) {
+                items.add(new AdvanceBulkItemRequest(items.size(), pending));
+                pending = nextWrite();
+            }
+            if (items.isEmpty()) {
+                onDone.run();
+                return;
+            }
+            final boolean lastBatch = pending == null;
+            final ShardId shardId = request.shardId();
+            // the last batch refreshes the primary and the replicas when the request asked for it
+            final RefreshPolicy refreshPolicy = lastBatch && refresh ? RefreshPolicy.IMMEDIATE : RefreshPolicy.NONE;
+            final AdvanceBulkShardRequest bulkShardRequest = new AdvanceBulkShardRequest(shardId, refreshPolicy,
+                items.toArray(new AdvanceBulkItemRequest[items.size()]));
+            bulkShardRequest.timeout(timeout);
+            bulkShardRequest.setParentTask(request.getParentTask());
+            bulkShardRequest.bulkTask(request.getParentTask());
+            shardBulkAction.execute(bulkShardRequest, new ActionListener<AdvanceBulkShardResponse>() {
+                @Override
+                public void onResponse(AdvanceBulkShardResponse bulkShardResponse) {
+                    response.onBulkItems(bulkShardResponse.getResponses());
+                    scheduleNextBatch(items.size(), lastBatch);
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    List<AdvanceBulkItemResponse.Failure> failures = new ArrayList<>(items.size());
+                    for (AdvanceBulkItemRequest item : items) {
+                        failures.add(new AdvanceBulkItemResponse.Failure(shardId.getIndexName(), item.request().type(),
+                            item.request().id(), e));
+                    }
+                    response.onBulkFailure(failures);
+                    scheduleNextBatch(items.size(), lastBatch);
+                }
+            });
+        }
+
+        private void scheduleNextBatch(int batchSize, boolean lastBatch) {
+            if (lastBatch) {
+                onDone.run();
+                return;
+            }
+            final float requestsPerSecond = request.requestsPerSecondPerWorker();
+            long delayInNanos = 0;
+            if (Float.isInfinite(requestsPerSecond) == false) {
+                long batchTimeInNanos = (long) (TimeUnit.SECONDS.toNanos(1) * (batchSize / requestsPerSecond));
+                delayInNanos = batchStartTimeInNanos + batchTimeInNanos - System.nanoTime();
+            }
+            if (delayInNanos > 0) {
+                response.onThrottled(TimeUnit.NANOSECONDS.toMillis(delayInNanos));
+                threadPool.schedule(TimeValue.timeValueNanos(delayInNanos), ThreadPool.Names.GENERIC, this);
+            } else {
+                threadPool.generic().execute(this);
+            }
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            logger.debug((Supplier<?>) () -> new ParameterizedMessage("{} [{}] worker failed", request.shardId(), actionName), e);
+            response.onShardFailure(new DefaultShardOperationFailedException(request.shardId().getIndexName(), request.shardId().id(), e));
+            onDone.run();
+        }
+
+        @Override
+        public boolean isForceExecution() {
+            // a worker that already holds a searcher must not be dropped by a full queue
+            return true;
+        }
+    }
+
+    private final class ShardTransportHandler implements TransportRequestHandler<ShardRequest<Request>> {
+        @Override
+        public void messageReceived(ShardRequest<Request> request, TransportChannel channel) throws Exception {
+            executeOnShard(request, new ActionListener<AdvanceUpdateByQueryResponse>() {
+                @Override
+                public void onResponse(AdvanceUpdateByQueryResponse response) {
+                    try {
+                        channel.sendResponse(response);
+                    } catch (Exception e) {
+                        onFailure(e);
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    try {
+                        channel.sendResponse(e);
+                    } catch (Exception inner) {
+                        inner.addSuppressed(e);
+                        logger.warn((Supplier<?>) () -> new ParameterizedMessage("failed to send [{}] shard response", actionName),
+                            inner);
+                    }
+                }
+            });
+        }
+    }
+
+    static final class ShardRequest<Request extends ActionRequest> extends TransportRequest {
+        private ShardId shardId;
+        private Request request;
+        private float requestsPerSecondPerWorker;
+
+        /**
+         * Creates a request to read from the wire into the given, empty, request.
+         */
+        ShardRequest(Request request) {
+            this.request = request;
+        }
+
+        ShardRequest(ShardId shardId, Request request, float requestsPerSecondPerWorker) {
+            this.shardId = shardId;
+            this.request = request;
+            this.requestsPerSecondPerWorker = requestsPerSecondPerWorker;
+        }
+
+        ShardId shardId() {
+            return shardId;
+        }
+
+        Request request() {
+            return request;
+        }
+
+        float requestsPerSecondPerWorker() {
+            return requestsPerSecondPerWorker;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            shardId = ShardId.readShardId(in);
+            request.readFrom(in);
+            requestsPerSecondPerWorker = in.readFloat();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            shardId.writeTo(out);
+            request.writeTo(out);
+            out.writeFloat(requestsPerSecondPerWorker);
+        }
+
+        @Override
+        public String getDescription() {
+            return shardId + " " + request;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package org.elasticsearch.plugin.advance.update.jobs;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A mass update that runs on the server and survives node restarts. A job reads its updates either from the documents of
+ * another index that match a query, whose sources are applied as partial documents of advance updates on the destination
+ * index, or from an advance bulk NDJSON file on the node. The job document in {@link AdvanceJobService#JOBS_INDEX} holds the
+ * definition together with a {@link Checkpoint} per source shard, so that the job carries on after its last written batch
+ * instead of starting over.
+ */
+public class AdvanceJob implements ToXContentObject {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    public enum State {
+        RUNNING, COMPLETED, FAILED;
+
+        public String getValue() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        public static State parse(String value) {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final String id;
+    @Nullable
+    private final String sourceIndex;
+    private final String[] sourceTypes;
+    @Nullable
+    private final Map<String, Object> sourceQuery;
+    @Nullable
+    private final String sourceFile;
+    @Nullable
+    private final String destIndex;
+    @Nullable
+    private final String destType;
+    private final boolean docAsUpsert;
+    private final int batchSize;
+
+    private State state = State.RUNNING;
+    @Nullable
+    private String node;
+    @Nullable
+    private String error;
+    private long processed;
+    private long failedItems;
+    private final SortedMap<Integer, Checkpoint> checkpoints = new TreeMap<>();
+
+    private AdvanceJob(String id, @Nullable String sourceIndex, String[] sourceTypes, @Nullable Map<String, Object> sourceQuery,
+                       @Nullable String sourceFile, @Nullable String destIndex, @Nullable String destType, boolean docAsUpsert,
+                       int batchSize) {
+        this.id = id;
+        this.sourceIndex = sourceIndex;
+        this.sourceTypes = sourceTypes;
+        this.sourceQuery = sourceQuery;
+        this.sourceFile = sourceFile;
+        this.destIndex = destIndex;
+        this.destType = destType;
+        this.docAsUpsert = docAsUpsert;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Reads a job from its definition, as sent by the client, or from its job document, which adds the progress.
+     */
+    @SuppressWarnings("unchecked")
+    public static AdvanceJob fromMap(String id, Map<String, Object> map) {
+        Map<String, Object> source = (Map<String, Object>) map.get("source");
+        if (source == null) {
+            throw new IllegalArgumentException("advance job [" + id + "] is missing a [source]");
+        }
+        Map<String, Object> dest = (Map<String, Object>) map.get("dest");
+        if (dest == null) {
+            dest = Collections.emptyMap();
+        }
+        String sourceIndex = (String) source.get("index");
+        String sourceFile = (String) source.get("file");
+        if ((sourceIndex == null) == (sourceFile == null)) {
+            throw new IllegalArgumentException("advance job [" + id + "] needs either a source [index] or a source [file]");
+        }
+        String destIndex = (String) dest.get("index");
+        if (sourceIndex != null && destIndex == null) {
+            throw new IllegalArgumentException("advance job [" + id + "] reading from an index needs a dest [index]");
+        }
+        Object types = source.get("type");
+        String[] sourceTypes;
+        if (types == null) {
+            sourceTypes = Strings.EMPTY_ARRAY;
+        } else if (types instanceof List) {
+            sourceTypes = ((List<String>) types).toArray(new String[0]);
+        } else {
+            sourceTypes = Strings.splitStringByCommaToArray(types.toString());
+        }
+        int batchSize = XContentMapValues.nodeIntegerValue(map.get("batch_size"), DEFAULT_BATCH_SIZE);
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch_size must be at least 1, got [" + batchSize + "]");
+        }
+        AdvanceJob job = new AdvanceJob(id, sourceIndex, sourceTypes, (Map<String, Object>) source.get("query"), sourceFile,
+            destIndex, (String) dest.get("type"), XContentMapValues.nodeBooleanValue(dest.get("doc_as_upsert"), false), batchSize);
+        if (map.containsKey("state")) {
+            job.state = State.parse((String) map.get("state"));
+        }
+        job.node = (String) map.get("node");
+        job.error = (String) map.get("error");
+        job.processed = XContentMapValues.nodeLongValue(map.get("processed"), 0);
+        job.failedItems = XContentMapValues.nodeLongValue(map.get("failed_items"), 0);
+        Map<String, Object> checkpoints = (Map<String, Object>) map.get("checkpoints");
+        if (checkpoints != null) {
+            for (Map.Entry<String, Object> entry : checkpoints.entrySet()) {
+                job.checkpoints.put(Integer.parseInt(entry.getKey()), Checkpoint.fromMap((Map<String, Object>) entry.getValue()));
+            }
+        }
+        return job;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    @Nullable
+    public String sourceIndex() {
+        return sourceIndex;
+    }
+
+    public String[] sourceTypes() {
+        return sourceTypes;
+    }
+
+    /**
+     * The query selecting the source documents, all documents when <code>null</code>.
+     */
+    @Nullable
+    public Map<String, Object> sourceQuery() {
+        return sourceQuery;
+    }
+
+    /**
+     * The NDJSON file, relative to the job files directory of the node.
+     */
+    @Nullable
+    public String sourceFile() {
+        return sourceFile;
+    }
+
+    @Nullable
+    public String destIndex() {
+        return destIndex;
+    }
+
+    @Nullable
+    public String destType() {
+        return destType;
+    }
+
+    public boolean docAsUpsert() {
+        return docAsUpsert;
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    public State state() {
+        return state;
+    }
+
+    /**
+     * The id of the node that runs, or last ran, the job.
+     */
+    @Nullable
+    public String node() {
+        return node;
+    }
+
+    @Nullable
+    public String error() {
+        return error;
+    }
+
+    /**
+     * Marks the job as running on the given node.
+     */
+    void claim(String nodeId) {
+        this.state = State.RUNNING;
+        this.node = nodeId;
+        this.error = null;
+    }
+
+    void complete() {
+        this.state = State.COMPLETED;
+    }
+
+    void fail(Exception e) {
+        this.state = State.FAILED;
+        this.error = e.toString();
+    }
+
+    void onBatch(int items, int failed) {
+        processed += items;
+        failedItems += failed;
+    }
+
+    /**
+     * The checkpoint of a source shard, the file being shard <tt>0</tt>.
+     */
+    Checkpoint checkpoint(int shard) {
+        return checkpoints.computeIfAbsent(shard, s -> new Checkpoint());
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.startObject("source");
+        if (sourceIndex != null) {
+            builder.field("index", sourceIndex);
+            if (sourceTypes.length > 0) {
+                builder.array("type", sourceTypes);
+            }
+            if (sourceQuery != null) {
+                builder.field("query", sourceQuery);
+            }
+        } else {
+            builder.field("file", sourceFile);
+        }
+        builder.endObject();
+        builder.startObject("dest");
+        if (destIndex != null) {
+            builder.field("index", destIndex);
+        }
+        if (destType != null) {
+            builder.field("type", destType);
+        }
+        builder.field("doc_as_upsert", docAsUpsert);
+        builder.endObject();
+        builder.field("batch_size", batchSize);
+        builder.field("state", state.getValue());
+        if (node != null) {
+            builder.field("node", node);
+        }
+        if (error != null) {
+            builder.field("error", error);
+        }
+        builder.field("processed", processed);
+        builder.field("failed_items", failedItems);
+        builder.startObject("checkpoints");
+        for (Map.Entry<Integer, Checkpoint> entry : checkpoints.entrySet()) {
+            builder.field(Integer.toString(entry.getKey()));
+            entry.getValue().toXContent(builder, params);
+        }
+        builder.endObject();
+        builder.endObject();
+        return builder;
+    }
+
+    @Override
+    public String toString() {
+        return Strings.toString(this);
+    }
+
+    /**
+     * How far a source shard got: the sort key of the last source document, or the offset in the file, that was written
+     * with the last batch, and the sequence number of that batch.
+     */
+    static final class Checkpoint implements ToXContentObject {
+        @Nullable
+        private String sortKey;
+        private long offset;
+        private long batch;
+        private boolean done;
+
+        static Checkpoint fromMap(Map<String, Object> map) {
+            Checkpoint checkpoint = new Checkpoint();
+            checkpoint.sortKey = (String) map.get("sort_key");
+            checkpoint.offset = XContentMapValues.nodeLongValue(map.get("offset"), 0);
+            checkpoint.batch = XContentMapValues.nodeLongValue(map.get("batch"), 0);
+            checkpoint.done = XContentMapValues.nodeBooleanValue(map.get("done"), false);
+            return checkpoint;
+        }
+
+        @Nullable
+        String sortKey() {
+            return sortKey;
+        }
+
+        long offset() {
+            return offset;
+        }
+
+        long batch() {
+            return batch;
+        }
+
+        boolean done() {
+            return done;
+        }
+
+        void advance(@Nullable String sortKey, long offset) {
+            this.sortKey = sortKey;
+            this.offset = offset;
+            this.batch++;
+        }
+
+        void markDone() {
+            this.done = true;
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject();
+            if (sortKey != null) {
+                builder.field("sort_key", sortKey);
+            }
+            builder.field("offset", offset);
+            builder.field("batch", batch);
+            builder.field("done", done);
+            return builder.endObject();
+        }
+    }
+}
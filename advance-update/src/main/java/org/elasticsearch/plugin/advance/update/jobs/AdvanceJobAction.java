@@ -0,0 +1,24 @@
+package org.elasticsearch.plugin.advance.update.jobs;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+public class AdvanceJobAction extends Action<AdvanceJobRequest, AdvanceJobResponse, AdvanceJobRequestBuilder> {
+
+    public static final AdvanceJobAction INSTANCE = new AdvanceJobAction();
+    public static final String NAME = "cluster:admin/advance_update/job";
+
+    private AdvanceJobAction() {
+        super(NAME);
+    }
+
+    @Override
+    public AdvanceJobResponse newResponse() {
+        return new AdvanceJobResponse();
+    }
+
+    @Override
+    public AdvanceJobRequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new AdvanceJobRequestBuilder(client, this);
+    }
+}
@@ -0,0 +1,106 @@
+package org.elasticsearch.plugin.advance.update.jobs;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+
+import static org.elasticsearch.action.ValidateActions.addValidationError;
+
+/**
+ * Starts an {@link AdvanceJob} from its definition, or resumes the job with the given id from its checkpoints when there is
+ * no definition.
+ */
+public class AdvanceJobRequest extends ActionRequest {
+
+    private String id;
+    @Nullable
+    private BytesReference definition;
+    @Nullable
+    private XContentType xContentType;
+
+    public AdvanceJobRequest() {
+    }
+
+    public AdvanceJobRequest(String id) {
+        this.id = id;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = null;
+        if (Strings.hasText(id) == false) {
+            validationException = addValidationError("id is missing", validationException);
+        }
+        return validationException;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public AdvanceJobRequest id(String id) {
+        this.id = id;
+        return this;
+    }
+
+    @Nullable
+    public BytesReference definition() {
+        return definition;
+    }
+
+    @Nullable
+    public XContentType xContentType() {
+        return xContentType;
+    }
+
+    /**
+     * The <tt>source</tt>, <tt>dest</tt> and <tt>batch_size</tt> of a new job.
+     */
+    public AdvanceJobRequest definition(BytesReference definition, XContentType xContentType) {
+        this.definition = definition;
+        this.xContentType = xContentType;
+        return this;
+    }
+
+    /**
+     * Whether the request resumes an existing job rather than starting a new one.
+     */
+    public boolean isResume() {
+        return definition == null;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        id = in.readString();
+        if (in.readBoolean()) {
+            definition = in.readBytesReference();
+            xContentType = XContentType.readFrom(in);
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(id);
+        if (definition != null) {
+            out.writeBoolean(true);
+            out.writeBytesReference(definition);
+            xContentType.writeTo(out);
+        } else {
+            out.writeBoolean(false);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "advance job [" + id + "]" + (isResume() ? " resume" : "");
+    }
+}
@@ -0,0 +1,22 @@
+package org.elasticsearch.plugin.advance.update.jobs;
+
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+public class AdvanceJobRequestBuilder extends ActionRequestBuilder<AdvanceJobRequest, AdvanceJobResponse, AdvanceJobRequestBuilder> {
+
+    public AdvanceJobRequestBuilder(ElasticsearchClient client, AdvanceJobAction action) {
+        super(client, action, new AdvanceJobRequest());
+    }
+
+    public AdvanceJobRequestBuilder setId(String id) {
+        request.id(id);
+        return this;
+    }
+
+    public AdvanceJobRequestBuilder setDefinition(XContentBuilder definition) {
+        request.definition(definition.bytes(), definition.contentType());
+        return this;
+    }
+}
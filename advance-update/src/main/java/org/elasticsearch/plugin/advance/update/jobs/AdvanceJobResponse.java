@@ -0,0 +1,58 @@
+package org.elasticsearch.plugin.advance.update.jobs;
+
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+
+/**
+ * Tells which node a started or resumed job runs on. The progress of the job is in its document in
+ * {@link AdvanceJobService#JOBS_INDEX}.
+ */
+public class AdvanceJobResponse extends ActionResponse implements ToXContentObject {
+
+    private String id;
+    private String node;
+
+    AdvanceJobResponse() {
+    }
+
+    public AdvanceJobResponse(String id, String node) {
+        this.id = id;
+        this.node = node;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        id = in.readString();
+        node = in.readString();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(id);
+        out.writeString(node);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field("job", id);
+        builder.field("node", node);
+        builder.field("state", AdvanceJob.State.RUNNING.getValue());
+        return builder.endObject();
+    }
+}
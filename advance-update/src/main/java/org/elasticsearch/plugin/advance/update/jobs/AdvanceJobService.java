@@ -0,0 +1,567 @@
+package org.elasticsearch.plugin.advance.update.jobs;
+
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.util.Supplier;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.ResourceAlreadyExistsException;
+import org.elasticsearch.ResourceNotFoundException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterStateListener;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.routing.IndexRoutingTable;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.gateway.GatewayService;
+import org.elasticsearch.index.IndexNotFoundException;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.mapper.RoutingFieldMapper;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.plugin.advance.update.action.UpdateRequest;
+import org.elasticsearch.plugin.advance.update.bulk.AdvanceBulkAction;
+import org.elasticsearch.plugin.advance.update.bulk.AdvanceBulkItemResponse;
+import org.elasticsearch.plugin.advance.update.bulk.AdvanceBulkRequest;
+import org.elasticsearch.plugin.advance.update.bulk.AdvanceBulkResponse;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs {@link AdvanceJob}s and keeps their documents in {@link #JOBS_INDEX}. A running job sends one advance bulk at a time
+ * and checkpoints the source shard it read the bulk from once the bulk returned, before it reads the next one. Every write of
+ * the job document is conditional on the version this node wrote last, so a job that was taken over by another node stops
+ * at its next checkpoint instead of running twice.
+ * <p>
+ * Jobs are resumed from their checkpoints by the node that ran them once it is back, and by the elected master when that
+ * node left the cluster. Since a batch is checkpointed after it was written, a resumed job may apply its last batch again.
+ */
+@Singleton
+public class AdvanceJobService extends AbstractComponent implements ClusterStateListener {
+
+    public static final String JOBS_INDEX = ".advance-update-jobs";
+    public static final String JOB_TYPE = "job";
+
+    /**
+     * The directory, below the config directory of the node, that the NDJSON files of jobs are read from.
+     */
+    public static final String FILES_DIRECTORY = "advance-update";
+
+    /**
+     * The first delay before a batch that failed with a transient error, e.g. an unavailable shard or a full queue, is read
+     * and sent again from the last checkpoint.
+     */
+    public static final Setting<TimeValue> RETRY_INITIAL_BACKOFF_SETTING =
+        Setting.timeSetting("advance_update.jobs.retry.initial_backoff", TimeValue.timeValueSeconds(1), TimeValue.timeValueMillis(0),
+            Property.NodeScope);
+
+    /**
+     * The number of times in a row a batch is retried before the job is marked as failed.
+     */
+    public static final Setting<Integer> RETRY_MAX_RETRIES_SETTING =
+        Setting.intSetting("advance_update.jobs.retry.max_retries", 10, 0, Property.NodeScope);
+
+    private final Client client;
+    private final ClusterService clusterService;
+    private final ThreadPool threadPool;
+    private final Path filesDirectory;
+    private final BackoffPolicy retryBackoffPolicy;
+
+    private final Map<String, Runner> runners = ConcurrentCollections.newConcurrentMap();
+    private final AtomicBoolean localJobsResumed = new AtomicBoolean();
+
+    @Inject
+    public AdvanceJobService(Settings settings, Client client, ClusterService clusterService, ThreadPool threadPool,
+                             Environment environment) {
+        super(settings);
+        this.client = client;
+        this.clusterService = clusterService;
+        this.threadPool = threadPool;
+        this.filesDirectory = environment.configFile().resolve(FILES_DIRECTORY);
+        this.retryBackoffPolicy = BackoffPolicy.exponentialBackoff(RETRY_INITIAL_BACKOFF_SETTING.get(settings),
+            RETRY_MAX_RETRIES_SETTING.get(settings));
+        clusterService.addListener(this);
+    }
+
+    public static List<Setting<?>> getSettings() {
+        return Arrays.asList(RETRY_INITIAL_BACKOFF_SETTING, RETRY_MAX_RETRIES_SETTING);
+    }
+
+    /**
+     * Stores a new job and starts it on this node.
+     */
+    public void start(AdvanceJob job, ActionListener<AdvanceJob> listener) {
+        try {
+            if (job.sourceFile() != null) {
+                resolveFile(job.sourceFile());
+            }
+        } catch (Exception e) {
+            listener.onFailure(e);
+            return;
+        }
+        job.claim(clusterService.localNode().getId());
+        ensureJobsIndex(ActionListener.wrap(ignored -> {
+            IndexRequest request = jobRequest(job).opType(DocWriteRequest.OpType.CREATE);
+            client.index(request, ActionListener.wrap(response -> {
+                Runner runner = newRunner(job, response.getVersion());
+                listener.onResponse(job);
+                runner.start();
+            }, listener::onFailure));
+        }, listener::onFailure));
+    }
+
+    /**
+     * Takes over a job that is not completed and carries on from its checkpoints on this node.
+     */
+    public void resume(String id, ActionListener<AdvanceJob> listener) {
+        if (runners.containsKey(id)) {
+            listener.onFailure(new IllegalStateException("advance job [" + id + "] is already running on this node"));
+            return;
+        }
+        client.prepareGet(JOBS_INDEX, JOB_TYPE, id).execute(ActionListener.wrap(get -> {
+            if (get.isExists() == false) {
+                throw new ResourceNotFoundException("advance job [{}] not found", id);
+            }
+            AdvanceJob job = AdvanceJob.fromMap(id, get.getSourceAsMap());
+            String localNodeId = clusterService.localNode().getId();
+            if (job.state() == AdvanceJob.State.COMPLETED) {
+                throw new IllegalStateException("advance job [" + id + "] is already completed");
+            }
+            if (job.state() == AdvanceJob.State.RUNNING && localNodeId.equals(job.node()) == false
+                && clusterService.state().nodes().nodeExists(job.node())) {
+                throw new IllegalStateException("advance job [" + id + "] is running on node [" + job.node() + "]");
+            }
+            job.claim(localNodeId);
+            client.index(jobRequest(job).version(get.getVersion()), ActionListener.wrap(response -> {
+                Runner runner = newRunner(job, response.getVersion());
+                listener.onResponse(job);
+                runner.start();
+            }, listener::onFailure));
+        }, listener::onFailure));
+    }
+
+    @Override
+    public void clusterChanged(ClusterChangedEvent event) {
+        if (event.state().blocks().hasGlobalBlock(GatewayService.STATE_NOT_RECOVERED_BLOCK)) {
+            return;
+        }
+        IndexRoutingTable jobsRoutingTable = event.state().routingTable().index(JOBS_INDEX);
+        if (jobsRoutingTable == null || jobsRoutingTable.allPrimaryShardsActive() == false) {
+            return;
+        }
+        // a node picks up its own jobs once after it started, the master the jobs of nodes that left
+        final boolean resumeLocalJobs = localJobsResumed.compareAndSet(false, true);
+        final boolean resumeOrphanedJobs = event.localNodeMaster()
+            && (event.nodesRemoved() || event.previousState().nodes().isLocalNodeElectedMaster() == false);
+        if (resumeLocalJobs == false && resumeOrphanedJobs == false) {
+            return;
+        }
+        final String localNodeId = event.state().nodes().getLocalNodeId();
+        final DiscoveryNodes nodes = event.state().nodes();
+        threadPool.generic().execute(new AbstractRunnable() {
+            @Override
+            protected void doRun() throws Exception {
+                SearchRequestBuilder search = client.prepareSearch(JOBS_INDEX).setTypes(JOB_TYPE)
+                    .setQuery(QueryBuilders.termQuery("state", AdvanceJob.State.RUNNING.getValue()))
+                    .setFetchSource("node", null).setSize(10000);
+                search.execute(ActionListener.wrap(response -> {
+                    for (SearchHit hit : response.getHits().getHits()) {
+                        String nodeId = (String) hit.getSourceAsMap().get("node");
+                        boolean orphaned = nodeId == null || nodes.nodeExists(nodeId) == false;
+                        if ((resumeLocalJobs && localNodeId.equals(nodeId)) || (resumeOrphanedJobs && orphaned)) {
+                            resume(hit.getId(), ActionListener.wrap(
+                                job -> logger.info("resumed advance job [{}] from its checkpoints", job.id()),
+                                e -> logger.warn((Supplier<?>) () -> new ParameterizedMessage("failed to resume advance job [{}]",
+                                    hit.getId()), e)));
+                        }
+                    }
+                }, this::onFailure));
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                logger.warn("failed to look up the advance jobs to resume", e);
+            }
+        });
+    }
+
+    private void ensureJobsIndex(ActionListener<Void> listener) {
+        if (clusterService.state().metaData().hasIndex(JOBS_INDEX)) {
+            listener.onResponse(null);
+            return;
+        }
+        final XContentBuilder mapping;
+        try {
+            mapping = XContentFactory.jsonBuilder().startObject().startObject(JOB_TYPE)
+                .field("dynamic", false)
+                .startObject("properties")
+                .startObject("state").field("type", "keyword").endObject()
+                .startObject("node").field("type", "keyword").endObject()
+                .endObject()
+                .endObject().endObject();
+        } catch (IOException e) {
+            listener.onFailure(e);
+            return;
+        }
+        client.admin().indices().prepareCreate(JOBS_INDEX)
+            .setSettings(Settings.builder().put("index.number_of_shards", 1).put("index.auto_expand_replicas", "0-1"))
+            .addMapping(JOB_TYPE, mapping)
+            .execute(ActionListener.wrap(response -> listener.onResponse(null), e -> {
+                if (ExceptionsHelper.unwrapCause(e) instanceof ResourceAlreadyExistsException) {
+                    listener.onResponse(null);
+                } else {
+                    listener.onFailure(e);
+                }
+            }));
+    }
+
+    private static IndexRequest jobRequest(AdvanceJob job) throws IOException {
+        return new IndexRequest(JOBS_INDEX, JOB_TYPE, job.id())
+            .source(job.toXContent(XContentFactory.jsonBuilder(), XContentBuilder.EMPTY_PARAMS));
+    }
+
+    private Path resolveFile(String file) throws IOException {
+        Path path = filesDirectory.resolve(file).normalize();
+        if (path.startsWith(filesDirectory) == false) {
+            throw new IllegalArgumentException("advance job files must be in [" + filesDirectory + "], got [" + file + "]");
+        }
+        if (Files.isRegularFile(path) == false) {
+            throw new IllegalArgumentException("advance job file [" + path + "] does not exist");
+        }
+        return path;
+    }
+
+    private Runner newRunner(AdvanceJob job, long version) throws IOException {
+        if (job.sourceFile() != null) {
+            return new FileRunner(job, version, resolveFile(job.sourceFile()));
+        }
+        return new IndexRunner(job, version);
+    }
+
+    /**
+     * Sends the batches of a job one after the other and checkpoints each of them.
+     */
+    private abstract class Runner extends AbstractRunnable {
+        protected final AdvanceJob job;
+        private long version;
+        /** the delays left for the batch that failed last, <code>null</code> while batches succeed */
+        private Iterator<TimeValue> retries;
+
+        Runner(AdvanceJob job, long version) {
+            this.job = job;
+            this.version = version;
+        }
+
+        void start() {
+            runners.put(job.id(), this);
+            threadPool.generic().execute(this);
+        }
+
+        /**
+         * Reads and sends the next batch, completes the job when there is none left.
+         */
+        @Override
+        protected abstract void doRun() throws Exception;
+
+        /**
+         * Sends a batch and records the checkpoint the <code>checkpointer</code> sets once it was written.
+         */
+        protected void sendBatch(AdvanceBulkRequest bulkRequest, Runnable checkpointer) {
+            client.execute(AdvanceBulkAction.INSTANCE, bulkRequest, ActionListener.wrap(response -> {
+                final int rejected = countRejections(response);
+                if (rejected > 0) {
+                    // checkpointing would skip the rejected items for good, so the whole batch is sent again instead
+                    onFailure(new ElasticsearchStatusException("[{}] items of the batch were rejected", RestStatus.TOO_MANY_REQUESTS,
+                        rejected));
+                    return;
+                }
+                job.onBatch(response.getItems().length, countFailures(response));
+                checkpointer.run();
+                persistAndContinue();
+            }, this::onFailure));
+        }
+
+        protected void persistAndContinue() {
+            persist(() -> threadPool.generic().execute(this));
+        }
+
+        protected void complete() {
+            job.complete();
+            persist(() -> {
+                runners.remove(job.id());
+                logger.info("advance job [{}] completed", job.id());
+            });
+        }
+
+        private void persist(Runnable next) {
+            final IndexRequest request;
+            try {
+                request = jobRequest(job).version(version);
+            } catch (IOException e) {
+                onFailure(e);
+                return;
+            }
+            client.index(request, ActionListener.wrap(response -> {
+                version = response.getVersion();
+                retries = null;
+                next.run();
+            }, e -> {
+                if (ExceptionsHelper.unwrapCause(e) instanceof VersionConflictEngineException) {
+                    runners.remove(job.id());
+                    logger.info("advance job [{}] was taken over by another node, stopping", job.id());
+                } else {
+                    onFailure(e);
+                }
+            }));
+        }
+
+        /**
+         * Reads and sends the batch again from the last checkpoint after a transient failure, fails the job once the
+         * retries are exhausted or the failure is not going to go away.
+         */
+        @Override
+        public void onFailure(Exception e) {
+            if (isTransient(e)) {
+                if (retries == null) {
+                    retries = retryBackoffPolicy.iterator();
+                }
+                if (retries.hasNext()) {
+                    final TimeValue delay = retries.next();
+                    logger.debug((Supplier<?>) () -> new ParameterizedMessage("advance job [{}] failed, retrying from its checkpoint in [{}]",
+                        job.id(), delay), e);
+                    threadPool.schedule(delay, ThreadPool.Names.GENERIC, this);
+                    return;
+                }
+            }
+            fail(e);
+        }
+
+        private void fail(Exception e) {
+            runners.remove(job.id());
+            logger.warn((Supplier<?>) () -> new ParameterizedMessage("advance job [{}] failed", job.id()), e);
+            job.fail(e);
+            try {
+                client.index(jobRequest(job).version(version), ActionListener.wrap(response -> {},
+                    inner -> logger.warn((Supplier<?>) () -> new ParameterizedMessage("failed to record the failure of advance job [{}]",
+                        job.id()), inner)));
+            } catch (IOException inner) {
+                logger.warn((Supplier<?>) () -> new ParameterizedMessage("failed to record the failure of advance job [{}]",
+                    job.id()), inner);
+            }
+        }
+    }
+
+    /**
+     * Whether a failure may go away by itself: an overloaded or unavailable node or shard, rather than a missing index or
+     * a malformed batch.
+     */
+    private static boolean isTransient(Exception e) {
+        final RestStatus status = ExceptionsHelper.status(ExceptionsHelper.unwrapCause(e));
+        return status == RestStatus.TOO_MANY_REQUESTS || status.getStatus() >= 500;
+    }
+
+    private static int countRejections(AdvanceBulkResponse response) {
+        int rejections = 0;
+        for (AdvanceBulkItemResponse item : response.getItems()) {
+            if (item.isFailed() && item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+                rejections++;
+            }
+        }
+        return rejections;
+    }
+
+    private static int countFailures(AdvanceBulkResponse response) {
+        int failures = 0;
+        for (AdvanceBulkItemResponse item : response.getItems()) {
+            if (item.isFailed()) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Reads the matching documents of the source index shard by shard, ordered by <tt>_uid</tt>, and continues every shard
+     * after the <tt>_uid</tt> of its checkpoint.
+     */
+    private final class IndexRunner extends Runner {
+
+        IndexRunner(AdvanceJob job, long version) {
+            super(job, version);
+        }
+
+        @Override
+        protected void doRun() throws Exception {
+            final IndexMetaData sourceIndex = clusterService.state().metaData().index(job.sourceIndex());
+            if (sourceIndex == null) {
+                throw new IndexNotFoundException(job.sourceIndex());
+            }
+            final int shards = sourceIndex.getNumberOfShards();
+            int shard = 0;
+            while (shard < shards && job.checkpoint(shard).done()) {
+                shard++;
+            }
+            if (shard == shards) {
+                complete();
+                return;
+            }
+            final AdvanceJob.Checkpoint checkpoint = job.checkpoint(shard);
+            SearchRequestBuilder search = client.prepareSearch(job.sourceIndex()).setTypes(job.sourceTypes())
+                .setPreference("_shards:" + shard)
+                .setQuery(sourceQuery())
+                .addSort("_uid", SortOrder.ASC)
+                .setSize(job.batchSize());
+            if (checkpoint.sortKey() != null) {
+                search.searchAfter(new Object[]{checkpoint.sortKey()});
+            }
+            search.execute(ActionListener.wrap(response -> onSourceBatch(checkpoint, response), this::onFailure));
+        }
+
+        private QueryBuilder sourceQuery() throws IOException {
+            if (job.sourceQuery() == null) {
+                return QueryBuilders.matchAllQuery();
+            }
+            XContentBuilder query = XContentFactory.jsonBuilder().map(job.sourceQuery());
+            return QueryBuilders.wrapperQuery(query.bytes());
+        }
+
+        private void onSourceBatch(AdvanceJob.Checkpoint checkpoint, SearchResponse response) {
+            final SearchHit[] hits = response.getHits().getHits();
+            if (hits.length == 0) {
+                checkpoint.markDone();
+                persistAndContinue();
+                return;
+            }
+            final AdvanceBulkRequest bulkRequest = new AdvanceBulkRequest();
+            for (SearchHit hit : hits) {
+                final BytesReference source = hit.getSourceRef();
+                UpdateRequest update = new UpdateRequest(job.destIndex(), job.destType() != null ? job.destType() : hit.getType(),
+                    hit.getId());
+                SearchHitField routing = hit.field(RoutingFieldMapper.NAME);
+                if (routing != null) {
+                    update.routing(routing.getValue());
+                }
+                update.doc(new IndexRequest().source(source, XContentFactory.xContentType(source)));
+                update.docAsUpsert(job.docAsUpsert());
+                bulkRequest.add(update);
+            }
+            final String lastSortKey = hits[hits.length - 1].getSortValues()[0].toString();
+            sendBatch(bulkRequest, () -> checkpoint.advance(lastSortKey, 0));
+        }
+    }
+
+    /**
+     * Reads an advance bulk NDJSON file from the offset of its checkpoint, <tt>batch_size</tt> actions at a time.
+     */
+    private final class FileRunner extends Runner {
+        private final Path path;
+
+        FileRunner(AdvanceJob job, long version, Path path) {
+            super(job, version);
+            this.path = path;
+        }
+
+        @Override
+        protected void doRun() throws Exception {
+            final AdvanceJob.Checkpoint checkpoint = job.checkpoint(0);
+            final BytesStreamOutput batch = new BytesStreamOutput();
+            long offset = checkpoint.offset();
+            try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+                channel.position(offset);
+                InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+                int actions = 0;
+                boolean expectSource = false;
+                BytesStreamOutput line = new BytesStreamOutput();
+                while (actions < job.batchSize() || expectSource) {
+                    line.reset();
+                    int b;
+                    while ((b = in.read()) != -1 && b != '\n') {
+                        line.write(b);
+                    }
+                    if (b == -1 && line.size() == 0) {
+                        break;
+                    }
+                    offset += line.size() + (b == -1 ? 0 : 1);
+                    if (isBlank(line.bytes())) {
+                        continue;
+                    }
+                    line.bytes().writeTo(batch);
+                    batch.write('\n');
+                    if (expectSource) {
+                        expectSource = false;
+                    } else {
+                        actions++;
+                        expectSource = isDelete(line.bytes()) == false;
+                    }
+                }
+            }
+            if (batch.size() == 0) {
+                checkpoint.markDone();
+                complete();
+                return;
+            }
+            final AdvanceBulkRequest bulkRequest = new AdvanceBulkRequest();
+            bulkRequest.add(batch.bytes(), job.destIndex(), job.destType(), XContentType.JSON);
+            final long nextOffset = offset;
+            sendBatch(bulkRequest, () -> checkpoint.advance(null, nextOffset));
+        }
+
+        private boolean isBlank(BytesReference line) {
+            for (int i = 0; i < line.length(); i++) {
+                if (Character.isWhitespace(line.get(i)) == false) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Whether the action line is a delete, the only action without a source line.
+         */
+        private boolean isDelete(BytesReference actionLine) throws IOException {
+            try (XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY, actionLine)) {
+                parser.nextToken();
+                return parser.nextToken() == XContentParser.Token.FIELD_NAME && "delete".equals(parser.currentName());
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.elasticsearch.plugin.advance.update.jobs;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.HandledTransportAction;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+/**
+ * Starts or resumes an {@link AdvanceJob} on the node that received the request.
+ */
+public class TransportAdvanceJobAction extends HandledTransportAction<AdvanceJobRequest, AdvanceJobResponse> {
+
+    private final AdvanceJobService jobService;
+
+    @Inject
+    public TransportAdvanceJobAction(Settings settings, ThreadPool threadPool, TransportService transportService,
+                                     ActionFilters actionFilters, IndexNameExpressionResolver indexNameExpressionResolver,
+                                     AdvanceJobService jobService) {
+        super(settings, AdvanceJobAction.NAME, threadPool, transportService, actionFilters, indexNameExpressionResolver,
+            AdvanceJobRequest::new);
+        this.jobService = jobService;
+    }
+
+    @Override
+    protected void doExecute(AdvanceJobRequest request, ActionListener<AdvanceJobResponse> listener) {
+        ActionListener<AdvanceJob> jobListener = ActionListener.wrap(
+            job -> listener.onResponse(new AdvanceJobResponse(job.id(), job.node())), listener::onFailure);
+        if (request.isResume()) {
+            jobService.resume(request.id(), jobListener);
+            return;
+        }
+        final AdvanceJob job;
+        try {
+            job = AdvanceJob.fromMap(request.id(),
+                XContentHelper.convertToMap(request.definition(), false, request.xContentType()).v2());
+        } catch (Exception e) {
+            listener.onFailure(e);
+            return;
+        }
+        jobService.start(job, jobListener);
+    }
+}
@@ -0,0 +1,47 @@
+package org.elasticsearch.plugin.advance.update.rest;
+
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.plugin.advance.update.byquery.AdvanceDropFieldsAction;
+import org.elasticsearch.plugin.advance.update.byquery.AdvanceDropFieldsRequest;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.RestToXContentListener;
+
+import java.io.IOException;
+
+import static org.elasticsearch.rest.RestRequest.Method.POST;
+
+public class RestAdvanceDropFieldsAction extends BaseRestHandler {
+
+    public RestAdvanceDropFieldsAction(final Settings settings, final RestController controller) {
+        super(settings);
+        controller.registerHandler(POST, "/{index}/_advance/_drop_fields", this);
+        controller.registerHandler(POST, "/{index}/{type}/_advance/_drop_fields", this);
+    }
+
+    @Override
+    public RestChannelConsumer prepareRequest(final RestRequest request, final NodeClient client) throws IOException {
+        AdvanceDropFieldsRequest dropFieldsRequest = new AdvanceDropFieldsRequest(
+            Strings.splitStringByCommaToArray(request.param("index")));
+        dropFieldsRequest.types(Strings.splitStringByCommaToArray(request.param("type")));
+        dropFieldsRequest.indicesOptions(IndicesOptions.fromRequest(request, dropFieldsRequest.indicesOptions()));
+        String fields = request.param("fields");
+        if (fields != null) {
+            dropFieldsRequest.fields(Strings.splitStringByCommaToArray(fields));
+        }
+        dropFieldsRequest.batchSize(request.paramAsInt("batch_size", dropFieldsRequest.batchSize()));
+        dropFieldsRequest.refresh(request.paramAsBoolean("refresh", dropFieldsRequest.refresh()));
+        dropFieldsRequest.timeout(request.paramAsTime("timeout", dropFieldsRequest.timeout()));
+        String requestsPerSecond = request.param("requests_per_second");
+        if (requestsPerSecond != null && "-1".equals(requestsPerSecond) == false) {
+            dropFieldsRequest.requestsPerSecond(Float.parseFloat(requestsPerSecond));
+        }
+        request.applyContentParser(dropFieldsRequest::fromXContent);
+
+        return channel -> client.execute(AdvanceDropFieldsAction.INSTANCE, dropFieldsRequest, new RestToXContentListener<>(channel));
+    }
+}
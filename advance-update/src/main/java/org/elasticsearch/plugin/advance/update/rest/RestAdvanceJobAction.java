@@ -0,0 +1,37 @@
+package org.elasticsearch.plugin.advance.update.rest;
+
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.plugin.advance.update.jobs.AdvanceJobAction;
+import org.elasticsearch.plugin.advance.update.jobs.AdvanceJobRequest;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.RestToXContentListener;
+
+import java.io.IOException;
+
+import static org.elasticsearch.rest.RestRequest.Method.POST;
+import static org.elasticsearch.rest.RestRequest.Method.PUT;
+
+public class RestAdvanceJobAction extends BaseRestHandler {
+
+    public RestAdvanceJobAction(final Settings settings, final RestController controller) {
+        super(settings);
+        controller.registerHandler(PUT, "/_advance/_jobs/{id}", this);
+        controller.registerHandler(POST, "/_advance/_jobs/{id}/_resume", this);
+    }
+
+    @Override
+    public RestChannelConsumer prepareRequest(final RestRequest request, final NodeClient client) throws IOException {
+        AdvanceJobRequest jobRequest = new AdvanceJobRequest(request.param("id"));
+        if (request.method() == PUT) {
+            if (request.hasContent() == false) {
+                throw new IllegalArgumentException("advance job [" + jobRequest.id() + "] needs a body with its definition");
+            }
+            jobRequest.definition(request.content(), request.getXContentType());
+        }
+
+        return channel -> client.execute(AdvanceJobAction.INSTANCE, jobRequest, new RestToXContentListener<>(channel));
+    }
+}
@@ -0,0 +1,33 @@
+package org.elasticsearch.plugin.advance.update.rest;
+
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.plugin.advance.update.routing.AdvanceRoutingAction;
+import org.elasticsearch.plugin.advance.update.routing.AdvanceRoutingRequest;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.RestToXContentListener;
+
+import java.io.IOException;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+
+public class RestAdvanceRoutingAction extends BaseRestHandler {
+
+    public RestAdvanceRoutingAction(final Settings settings, final RestController controller) {
+        super(settings);
+        controller.registerHandler(GET, "/_advance/_routing", this);
+        controller.registerHandler(GET, "/{index}/_advance/_routing", this);
+    }
+
+    @Override
+    public RestChannelConsumer prepareRequest(final RestRequest request, final NodeClient client) throws IOException {
+        AdvanceRoutingRequest routingRequest = new AdvanceRoutingRequest(Strings.splitStringByCommaToArray(request.param("index")));
+        routingRequest.indicesOptions(IndicesOptions.fromRequest(request, routingRequest.indicesOptions()));
+
+        return channel -> client.execute(AdvanceRoutingAction.INSTANCE, routingRequest, new RestToXContentListener<>(channel));
+    }
+}
@@ -0,0 +1,46 @@
+package org.elasticsearch.plugin.advance.update.rest;
+
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.plugin.advance.update.byquery.AdvanceUpdateByQueryAction;
+import org.elasticsearch.plugin.advance.update.byquery.AdvanceUpdateByQueryRequest;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.RestToXContentListener;
+
+import java.io.IOException;
+
+import static org.elasticsearch.rest.RestRequest.Method.POST;
+
+public class RestAdvanceUpdateByQueryAction extends BaseRestHandler {
+
+    public RestAdvanceUpdateByQueryAction(final Settings settings, final RestController controller) {
+        super(settings);
+        controller.registerHandler(POST, "/{index}/_advanceupdate_by_query", this);
+        controller.registerHandler(POST, "/{index}/{type}/_advanceupdate_by_query", this);
+    }
+
+    @Override
+    public RestChannelConsumer prepareRequest(final RestRequest request, final NodeClient client) throws IOException {
+        AdvanceUpdateByQueryRequest updateByQueryRequest = new AdvanceUpdateByQueryRequest(
+            Strings.splitStringByCommaToArray(request.param("index")));
+        updateByQueryRequest.types(Strings.splitStringByCommaToArray(request.param("type")));
+        updateByQueryRequest.indicesOptions(IndicesOptions.fromRequest(request, updateByQueryRequest.indicesOptions()));
+        updateByQueryRequest.slices(request.paramAsInt("slices", updateByQueryRequest.slices()));
+        updateByQueryRequest.batchSize(request.paramAsInt("batch_size", updateByQueryRequest.batchSize()));
+        updateByQueryRequest.retryOnConflict(request.paramAsInt("retry_on_conflict", updateByQueryRequest.retryOnConflict()));
+        updateByQueryRequest.refresh(request.paramAsBoolean("refresh", updateByQueryRequest.refresh()));
+        updateByQueryRequest.timeout(request.paramAsTime("timeout", updateByQueryRequest.timeout()));
+        String requestsPerSecond = request.param("requests_per_second");
+        if (requestsPerSecond != null && "-1".equals(requestsPerSecond) == false) {
+            updateByQueryRequest.requestsPerSecond(Float.parseFloat(requestsPerSecond));
+        }
+        request.applyContentParser(updateByQueryRequest::fromXContent);
+
+        return channel -> client.execute(AdvanceUpdateByQueryAction.INSTANCE, updateByQueryRequest,
+            new RestToXContentListener<>(channel));
+    }
+}
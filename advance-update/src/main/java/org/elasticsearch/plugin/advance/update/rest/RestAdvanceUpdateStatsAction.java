@@ -0,0 +1,36 @@
+package org.elasticsearch.plugin.advance.update.rest;
+
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.plugin.advance.update.stats.AdvanceUpdateStatsAction;
+import org.elasticsearch.plugin.advance.update.stats.AdvanceUpdateStatsRequest;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.RestActions.NodesResponseRestListener;
+
+import java.io.IOException;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+
+/**
+ * Plugins can't add sections to the nodes stats API, so the advance update stats are served next to it, on a path that takes
+ * precedence over its <tt>{metric}</tt> wildcard.
+ */
+public class RestAdvanceUpdateStatsAction extends BaseRestHandler {
+
+    public RestAdvanceUpdateStatsAction(final Settings settings, final RestController controller) {
+        super(settings);
+        controller.registerHandler(GET, "/_nodes/stats/advance_update", this);
+        controller.registerHandler(GET, "/_nodes/{nodeId}/stats/advance_update", this);
+    }
+
+    @Override
+    public RestChannelConsumer prepareRequest(final RestRequest request, final NodeClient client) throws IOException {
+        AdvanceUpdateStatsRequest statsRequest = new AdvanceUpdateStatsRequest(Strings.splitStringByCommaToArray(request.param("nodeId")));
+        statsRequest.timeout(request.param("timeout"));
+
+        return channel -> client.execute(AdvanceUpdateStatsAction.INSTANCE, statsRequest, new NodesResponseRestListener<>(channel));
+    }
+}
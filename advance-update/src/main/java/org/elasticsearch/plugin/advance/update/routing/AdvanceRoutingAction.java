@@ -0,0 +1,24 @@
+package org.elasticsearch.plugin.advance.update.routing;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+public class AdvanceRoutingAction extends Action<AdvanceRoutingRequest, AdvanceRoutingResponse, AdvanceRoutingRequestBuilder> {
+
+    public static final AdvanceRoutingAction INSTANCE = new AdvanceRoutingAction();
+    public static final String NAME = "indices:monitor/advance_update/routing";
+
+    private AdvanceRoutingAction() {
+        super(NAME);
+    }
+
+    @Override
+    public AdvanceRoutingResponse newResponse() {
+        return new AdvanceRoutingResponse();
+    }
+
+    @Override
+    public AdvanceRoutingRequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new AdvanceRoutingRequestBuilder(client, this);
+    }
+}
@@ -0,0 +1,23 @@
+package org.elasticsearch.plugin.advance.update.routing;
+
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.ElasticsearchClient;
+
+public class AdvanceRoutingRequestBuilder
+    extends ActionRequestBuilder<AdvanceRoutingRequest, AdvanceRoutingResponse, AdvanceRoutingRequestBuilder> {
+
+    public AdvanceRoutingRequestBuilder(ElasticsearchClient client, AdvanceRoutingAction action) {
+        super(client, action, new AdvanceRoutingRequest());
+    }
+
+    public AdvanceRoutingRequestBuilder setIndices(String... indices) {
+        request.indices(indices);
+        return this;
+    }
+
+    public AdvanceRoutingRequestBuilder setIndicesOptions(IndicesOptions indicesOptions) {
+        request.indicesOptions(indicesOptions);
+        return this;
+    }
+}
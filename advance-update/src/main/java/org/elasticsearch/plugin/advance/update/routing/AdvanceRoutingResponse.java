@@ -0,0 +1,266 @@
+package org.elasticsearch.plugin.advance.update.routing;
+
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The routing metadata a client needs to compute the shard of a document itself and to find the node holding its primary:
+ * the number of shards and routing shards of every index, its routing partition size, the node of the primary of every shard
+ * and the version of the cluster state all of it was read from.
+ */
+public class AdvanceRoutingResponse extends ActionResponse implements ToXContentObject {
+
+    private long clusterStateVersion;
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+    private final Map<String, IndexRouting> indices = new LinkedHashMap<>();
+
+    AdvanceRoutingResponse() {
+    }
+
+    public AdvanceRoutingResponse(long clusterStateVersion) {
+        this.clusterStateVersion = clusterStateVersion;
+    }
+
+    void addNode(Node node) {
+        nodes.put(node.id(), node);
+    }
+
+    void addIndex(IndexRouting index) {
+        indices.put(index.name(), index);
+    }
+
+    /**
+     * The version of the cluster state the routing was read from, which pre-routed bulks carry as their
+     * <tt>routing_version</tt>.
+     */
+    public long getClusterStateVersion() {
+        return clusterStateVersion;
+    }
+
+    /**
+     * The nodes holding primaries of the indices, by node id.
+     */
+    public Map<String, Node> getNodes() {
+        return Collections.unmodifiableMap(nodes);
+    }
+
+    /**
+     * The routing of the concrete indices, by index name.
+     */
+    public Map<String, IndexRouting> getIndices() {
+        return Collections.unmodifiableMap(indices);
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        clusterStateVersion = in.readVLong();
+        int size = in.readVInt();
+        for (int i = 0; i < size; i++) {
+            addNode(new Node(in));
+        }
+        size = in.readVInt();
+        for (int i = 0; i < size; i++) {
+            addIndex(new IndexRouting(in));
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVLong(clusterStateVersion);
+        out.writeVInt(nodes.size());
+        for (Node node : nodes.values()) {
+            node.writeTo(out);
+        }
+        out.writeVInt(indices.size());
+        for (IndexRouting index : indices.values()) {
+            index.writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field("cluster_state_version", clusterStateVersion);
+        builder.startObject("nodes");
+        for (Node node : nodes.values()) {
+            builder.field(node.id());
+            node.toXContent(builder, params);
+        }
+        builder.endObject();
+        builder.startObject("indices");
+        for (IndexRouting index : indices.values()) {
+            builder.field(index.name());
+            index.toXContent(builder, params);
+        }
+        builder.endObject();
+        return builder.endObject();
+    }
+
+    /**
+     * A node holding primaries, with the addresses a client connects to.
+     */
+    public static final class Node implements Writeable, ToXContentObject {
+        private final String id;
+        private final String name;
+        private final String host;
+        private final String transportAddress;
+
+        public Node(String id, String name, String host, String transportAddress) {
+            this.id = id;
+            this.name = name;
+            this.host = host;
+            this.transportAddress = transportAddress;
+        }
+
+        Node(StreamInput in) throws IOException {
+            this(in.readString(), in.readString(), in.readString(), in.readString());
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        /**
+         * The address of the host of the node, which REST clients combine with their HTTP port.
+         */
+        public String host() {
+            return host;
+        }
+
+        public String transportAddress() {
+            return transportAddress;
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeString(id);
+            out.writeString(name);
+            out.writeString(host);
+            out.writeString(transportAddress);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
+            builder.startObject();
+            builder.field("name", name);
+            builder.field("host", host);
+            builder.field("transport_address", transportAddress);
+            return builder.endObject();
+        }
+    }
+
+    /**
+     * The routing of an index. The shard of a document is
+     * <tt>floorMod(murmur3(routing or id) + partition offset, routing_num_shards) / routing_factor</tt>, the partition offset
+     * being <tt>floorMod(murmur3(id), routing_partition_size)</tt> for partitioned indices with a custom routing and
+     * <tt>0</tt> otherwise.
+     */
+    public static final class IndexRouting implements Writeable, ToXContentObject {
+        private final String name;
+        private final String uuid;
+        private final int numberOfShards;
+        private final int routingNumShards;
+        private final int routingPartitionSize;
+        private final String[] primaries;
+
+        public IndexRouting(String name, String uuid, int numberOfShards, int routingNumShards, int routingPartitionSize,
+                            String[] primaries) {
+            this.name = name;
+            this.uuid = uuid;
+            this.numberOfShards = numberOfShards;
+            this.routingNumShards = routingNumShards;
+            this.routingPartitionSize = routingPartitionSize;
+            this.primaries = primaries;
+        }
+
+        IndexRouting(StreamInput in) throws IOException {
+            name = in.readString();
+            uuid = in.readString();
+            numberOfShards = in.readVInt();
+            routingNumShards = in.readVInt();
+            routingPartitionSize = in.readVInt();
+            primaries = new String[in.readVInt()];
+            for (int i = 0; i < primaries.length; i++) {
+                primaries[i] = in.readOptionalString();
+            }
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public String uuid() {
+            return uuid;
+        }
+
+        public int numberOfShards() {
+            return numberOfShards;
+        }
+
+        public int routingNumShards() {
+            return routingNumShards;
+        }
+
+        public int routingFactor() {
+            return routingNumShards / numberOfShards;
+        }
+
+        public int routingPartitionSize() {
+            return routingPartitionSize;
+        }
+
+        /**
+         * The id of the node holding the started primary of the shard, <code>null</code> while there is none.
+         */
+        @Nullable
+        public String primary(int shard) {
+            return primaries[shard];
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeString(name);
+            out.writeString(uuid);
+            out.writeVInt(numberOfShards);
+            out.writeVInt(routingNumShards);
+            out.writeVInt(routingPartitionSize);
+            out.writeVInt(primaries.length);
+            for (String primary : primaries) {
+                out.writeOptionalString(primary);
+            }
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
+            builder.startObject();
+            builder.field("uuid", uuid);
+            builder.field("number_of_shards", numberOfShards);
+            builder.field("routing_num_shards", routingNumShards);
+            builder.field("routing_factor", routingFactor());
+            builder.field("routing_partition_size", routingPartitionSize);
+            builder.startArray("primaries");
+            for (String primary : primaries) {
+                builder.value(primary);
+            }
+            builder.endArray();
+            return builder.endObject();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.elasticsearch.plugin.advance.update.routing;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.cluster.routing.Murmur3HashFunction;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.UUIDs;
+import org.elasticsearch.plugin.advance.update.bulk.AdvanceBulkRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Client side routing of advance bulks. Built from an {@link AdvanceRoutingResponse}, it computes the shard of every item the
+ * same way the cluster does and splits a bulk into one pre-routed bulk per node holding the primaries of its items, so that
+ * each one is executed where it lands instead of being forwarded by a coordinating node.
+ * <p>
+ * A pre-routed bulk that reaches a node which lost one of the primaries in the meantime is rejected as a whole with
+ * <tt>409 CONFLICT</tt> before any item is executed. The client then fetches a new table and sends the items again.
+ */
+public class AdvanceRoutingTable {
+
+    private final AdvanceRoutingResponse routing;
+
+    public AdvanceRoutingTable(AdvanceRoutingResponse routing) {
+        this.routing = routing;
+    }
+
+    public long clusterStateVersion() {
+        return routing.getClusterStateVersion();
+    }
+
+    /**
+     * The shard of a document of the index, or <tt>-1</tt> when the index is not part of the table, e.g. an alias or an index
+     * that does not exist yet.
+     */
+    public int shardId(String index, String id, @Nullable String routingValue) {
+        final AdvanceRoutingResponse.IndexRouting indexRouting = routing.getIndices().get(index);
+        if (indexRouting == null) {
+            return -1;
+        }
+        final int partitionOffset;
+        if (indexRouting.routingPartitionSize() != 1) {
+            partitionOffset = Math.floorMod(Murmur3HashFunction.hash(id), indexRouting.routingPartitionSize());
+        } else {
+            partitionOffset = 0;
+        }
+        final int hash = Murmur3HashFunction.hash(routingValue == null ? id : routingValue) + partitionOffset;
+        return Math.floorMod(hash, indexRouting.routingNumShards()) / indexRouting.routingFactor();
+    }
+
+    /**
+     * The id of the node holding the primary of the document the request writes, <code>null</code> when the table can't
+     * tell.
+     */
+    @Nullable
+    public String primaryNode(DocWriteRequest request) {
+        if (request.id() == null) {
+            return null;
+        }
+        final int shard = shardId(request.index(), request.id(), request.routing());
+        return shard < 0 ? null : routing.getIndices().get(request.index()).primary(shard);
+    }
+
+    /**
+     * Splits the bulk by the nodes holding the primaries of its items. Index requests without an id get one first, as the
+     * shard depends on it. Every bulk but the one of the items the table can't route is pre-routed with the cluster state
+     * version of the table; those remaining items go to any node as a regular bulk.
+     */
+    public List<NodeBulk> split(AdvanceBulkRequest bulkRequest) {
+        final List<DocWriteRequest> requests = bulkRequest.requests();
+        final List<Object> payloads = bulkRequest.payloads();
+        final Map<String, NodeBulk> bulks = new LinkedHashMap<>();
+        NodeBulk unrouted = null;
+        for (int i = 0; i < requests.size(); i++) {
+            final DocWriteRequest request = requests.get(i);
+            // a pipeline may change the routing of a document, so those items are routed by the cluster
+            final boolean withPipeline = request instanceof IndexRequest && ((IndexRequest) request).getPipeline() != null;
+            if (request instanceof IndexRequest && request.id() == null && withPipeline == false) {
+                ((IndexRequest) request).id(UUIDs.base64UUID());
+            }
+            final Object payload = payloads == null ? null : payloads.get(i);
+            final String nodeId = withPipeline ? null : primaryNode(request);
+            final NodeBulk bulk;
+            if (nodeId == null) {
+                if (unrouted == null) {
+                    unrouted = new NodeBulk(null, bulkRequest, AdvanceBulkRequest.NOT_PRE_ROUTED);
+                }
+                bulk = unrouted;
+            } else {
+                bulk = bulks.computeIfAbsent(nodeId,
+                    id -> new NodeBulk(routing.getNodes().get(id), bulkRequest, clusterStateVersion()));
+            }
+            bulk.add(i, request, payload);
+        }
+        final List<NodeBulk> result = new ArrayList<>(bulks.values());
+        if (unrouted != null) {
+            result.add(unrouted);
+        }
+        return result;
+    }
+
+    /**
+     * The items of a bulk going to the same node, with the slots they had in the original bulk.
+     */
+    public static final class NodeBulk {
+        @Nullable
+        private final AdvanceRoutingResponse.Node node;
+        private final AdvanceBulkRequest request;
+        private int[] slots;
+        private int size;
+
+        NodeBulk(@Nullable AdvanceRoutingResponse.Node node, AdvanceBulkRequest original, long routingVersion) {
+            this.node = node;
+            this.request = new AdvanceBulkRequest();
+            request.setRefreshPolicy(original.getRefreshPolicy());
+            request.waitForActiveShards(original.waitForActiveShards());
+            request.timeout(original.timeout());
+            request.responseMode(original.responseMode());
+            request.durability(original.durability(), original.deferredSyncDelay());
+            request.routingVersion(routingVersion);
+            request.tookBreakdown(original.tookBreakdown());
+            this.slots = new int[16];
+        }
+
+        private void add(int slot, DocWriteRequest item, @Nullable Object payload) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, slots.length * 2);
+            }
+            slots[size++] = slot;
+            request.add(item, payload);
+        }
+
+        /**
+         * The node to send the bulk to, <code>null</code> for the bulk of the items the table could not route.
+         */
+        @Nullable
+        public AdvanceRoutingResponse.Node node() {
+            return node;
+        }
+
+        public AdvanceBulkRequest request() {
+            return request;
+        }
+
+        /**
+         * The position in the original bulk of the item with the given position in this one.
+         */
+        public int slot(int item) {
+            return slots[item];
+        }
+    }
+}
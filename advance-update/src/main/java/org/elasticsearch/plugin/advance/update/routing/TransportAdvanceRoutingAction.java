@@ -0,0 +1,74 @@
+package org.elasticsearch.plugin.advance.update.routing;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.HandledTransportAction;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.block.ClusterBlockException;
+import org.elasticsearch.cluster.block.ClusterBlockLevel;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+/**
+ * Reads the routing metadata from the cluster state of the node that received the request. Any node can answer, a client
+ * that gets stale routing learns about it from the rejection of its next pre-routed bulk.
+ */
+public class TransportAdvanceRoutingAction extends HandledTransportAction<AdvanceRoutingRequest, AdvanceRoutingResponse> {
+
+    private final ClusterService clusterService;
+
+    @Inject
+    public TransportAdvanceRoutingAction(Settings settings, ThreadPool threadPool, TransportService transportService,
+                                         ClusterService clusterService, ActionFilters actionFilters,
+                                         IndexNameExpressionResolver indexNameExpressionResolver) {
+        super(settings, AdvanceRoutingAction.NAME, threadPool, transportService, actionFilters, indexNameExpressionResolver,
+            AdvanceRoutingRequest::new);
+        this.clusterService = clusterService;
+    }
+
+    @Override
+    protected void doExecute(AdvanceRoutingRequest request, ActionListener<AdvanceRoutingResponse> listener) {
+        final AdvanceRoutingResponse response;
+        try {
+            response = buildResponse(clusterService.state(), request);
+        } catch (Exception e) {
+            listener.onFailure(e);
+            return;
+        }
+        listener.onResponse(response);
+    }
+
+    private AdvanceRoutingResponse buildResponse(ClusterState clusterState, AdvanceRoutingRequest request) {
+        ClusterBlockException blockException = clusterState.blocks().globalBlockedException(ClusterBlockLevel.METADATA_READ);
+        if (blockException != null) {
+            throw blockException;
+        }
+        final AdvanceRoutingResponse response = new AdvanceRoutingResponse(clusterState.version());
+        for (Index index : indexNameExpressionResolver.concreteIndices(clusterState, request)) {
+            final IndexMetaData indexMetaData = clusterState.metaData().getIndexSafe(index);
+            final String[] primaries = new String[indexMetaData.getNumberOfShards()];
+            for (IndexShardRoutingTable shardRoutingTable : clusterState.routingTable().index(index)) {
+                final ShardRouting primary = shardRoutingTable.primaryShard();
+                if (primary.started()) {
+                    primaries[primary.id()] = primary.currentNodeId();
+                    DiscoveryNode node = clusterState.nodes().get(primary.currentNodeId());
+                    response.addNode(new AdvanceRoutingResponse.Node(node.getId(), node.getName(), node.getHostAddress(),
+                        node.getAddress().toString()));
+                }
+            }
+            response.addIndex(new AdvanceRoutingResponse.IndexRouting(index.getName(), index.getUUID(),
+                indexMetaData.getNumberOfShards(), indexMetaData.getRoutingNumShards(), indexMetaData.getRoutingPartitionSize(),
+                primaries));
+        }
+        return response;
+    }
+}
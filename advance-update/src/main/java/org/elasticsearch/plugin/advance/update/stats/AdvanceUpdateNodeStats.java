@@ -0,0 +1,178 @@
+package org.elasticsearch.plugin.advance.update.stats;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.support.nodes.BaseNodeResponse;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+
+/**
+ * The advance update stats of one node.
+ */
+public class AdvanceUpdateNodeStats extends BaseNodeResponse {
+
+    private Stats stats;
+
+    AdvanceUpdateNodeStats() {
+    }
+
+    AdvanceUpdateNodeStats(DiscoveryNode node, Stats stats) {
+        super(node);
+        this.stats = stats;
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        stats = new Stats(in);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        stats.writeTo(out);
+    }
+
+    /**
+     * The counters and latencies, see {@link AdvanceUpdateStats} for what they count.
+     */
+    public static final class Stats implements Writeable, ToXContentObject {
+        private final long[] items;
+        private final long[] results;
+        private final long conflictRetries;
+        private final long scriptExecutions;
+        private final long bytesIn;
+        private final long bytesOut;
+        private final LatencyHistogram.Snapshot translateLatency;
+        private final LatencyHistogram.Snapshot shardBulkLatency;
+
+        Stats(long[] items, long[] results, long conflictRetries, long scriptExecutions, long bytesIn, long bytesOut,
+              LatencyHistogram.Snapshot translateLatency, LatencyHistogram.Snapshot shardBulkLatency) {
+            this.items = items;
+            this.results = results;
+            this.conflictRetries = conflictRetries;
+            this.scriptExecutions = scriptExecutions;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+            this.translateLatency = translateLatency;
+            this.shardBulkLatency = shardBulkLatency;
+        }
+
+        Stats(StreamInput in) throws IOException {
+            items = readCounts(in, DocWriteRequest.OpType.values().length);
+            results = readCounts(in, DocWriteResponse.Result.values().length);
+            conflictRetries = in.readVLong();
+            scriptExecutions = in.readVLong();
+            bytesIn = in.readVLong();
+            bytesOut = in.readVLong();
+            translateLatency = new LatencyHistogram.Snapshot(in);
+            shardBulkLatency = new LatencyHistogram.Snapshot(in);
+        }
+
+        /**
+         * Reads counts by ordinal, ignoring those of values a newer node knows and defaulting those it doesn't to 0.
+         */
+        private static long[] readCounts(StreamInput in, int size) throws IOException {
+            final long[] counts = new long[size];
+            final int received = in.readVInt();
+            for (int i = 0; i < received; i++) {
+                final long count = in.readVLong();
+                if (i < size) {
+                    counts[i] = count;
+                }
+            }
+            return counts;
+        }
+
+        private static void writeCounts(StreamOutput out, long[] counts) throws IOException {
+            out.writeVInt(counts.length);
+            for (long count : counts) {
+                out.writeVLong(count);
+            }
+        }
+
+        public long getItems(DocWriteRequest.OpType opType) {
+            return items[opType.ordinal()];
+        }
+
+        public long getResults(DocWriteResponse.Result result) {
+            return results[result.ordinal()];
+        }
+
+        public long getConflictRetries() {
+            return conflictRetries;
+        }
+
+        public long getScriptExecutions() {
+            return scriptExecutions;
+        }
+
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        /**
+         * The latency of translating single updates into the request they write.
+         */
+        public LatencyHistogram.Snapshot getTranslateLatency() {
+            return translateLatency;
+        }
+
+        /**
+         * The latency of executing shard bulks on their primaries.
+         */
+        public LatencyHistogram.Snapshot getShardBulkLatency() {
+            return shardBulkLatency;
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            writeCounts(out, items);
+            writeCounts(out, results);
+            out.writeVLong(conflictRetries);
+            out.writeVLong(scriptExecutions);
+            out.writeVLong(bytesIn);
+            out.writeVLong(bytesOut);
+            translateLatency.writeTo(out);
+            shardBulkLatency.writeTo(out);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
+            builder.startObject();
+            builder.startObject("items");
+            for (DocWriteRequest.OpType opType : DocWriteRequest.OpType.values()) {
+                builder.field(opType.getLowercase(), items[opType.ordinal()]);
+            }
+            builder.endObject();
+            builder.startObject("results");
+            for (DocWriteResponse.Result result : DocWriteResponse.Result.values()) {
+                builder.field(result.getLowercase(), results[result.ordinal()]);
+            }
+            builder.endObject();
+            builder.field("conflict_retries", conflictRetries);
+            builder.field("script_executions", scriptExecutions);
+            builder.byteSizeField("bytes_in_in_bytes", "bytes_in", new ByteSizeValue(bytesIn));
+            builder.byteSizeField("bytes_out_in_bytes", "bytes_out", new ByteSizeValue(bytesOut));
+            builder.field("translate_latency", translateLatency);
+            builder.field("shard_bulk_latency", shardBulkLatency);
+            return builder.endObject();
+        }
+    }
+}
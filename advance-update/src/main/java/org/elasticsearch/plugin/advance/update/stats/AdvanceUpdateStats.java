@@ -0,0 +1,120 @@
+package org.elasticsearch.plugin.advance.update.stats;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.plugin.advance.update.action.UpdateRequest;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The counters and latencies of the advance update paths of this node, since it started. The shard bulk action, the single
+ * document update action and the update helper record into it, {@link AdvanceUpdateStatsAction} reads it.
+ */
+@Singleton
+public class AdvanceUpdateStats extends AbstractComponent {
+
+    private final Map<DocWriteRequest.OpType, CounterMetric> items = new EnumMap<>(DocWriteRequest.OpType.class);
+    private final Map<DocWriteResponse.Result, CounterMetric> results = new EnumMap<>(DocWriteResponse.Result.class);
+    private final CounterMetric conflictRetries = new CounterMetric();
+    private final CounterMetric scriptExecutions = new CounterMetric();
+    private final CounterMetric bytesIn = new CounterMetric();
+    private final CounterMetric bytesOut = new CounterMetric();
+    private final LatencyHistogram translateLatency = new LatencyHistogram();
+    private final LatencyHistogram shardBulkLatency = new LatencyHistogram();
+
+    @Inject
+    public AdvanceUpdateStats(Settings settings) {
+        super(settings);
+        for (DocWriteRequest.OpType opType : DocWriteRequest.OpType.values()) {
+            items.put(opType, new CounterMetric());
+        }
+        for (DocWriteResponse.Result result : DocWriteResponse.Result.values()) {
+            results.put(result, new CounterMetric());
+        }
+    }
+
+    /**
+     * An item was executed on a primary, <code>bytesIn</code> being the size of the source it carried, e.g. the partial
+     * document of an update.
+     */
+    public void onItem(DocWriteRequest.OpType opType, long bytesIn) {
+        items.get(opType).inc();
+        this.bytesIn.inc(bytesIn);
+    }
+
+    /**
+     * An item succeeded, <code>bytesOut</code> being the size of the source it wrote to the index.
+     */
+    public void onResult(DocWriteResponse.Result result, long bytesOut) {
+        results.get(result).inc();
+        this.bytesOut.inc(bytesOut);
+    }
+
+    public void onConflictRetry() {
+        conflictRetries.inc();
+    }
+
+    public void onScriptExecution() {
+        scriptExecutions.inc();
+    }
+
+    /**
+     * An update was translated into the request it writes, from the document read to the merged or scripted source.
+     */
+    public void onTranslate(long nanos) {
+        translateLatency.record(nanos);
+    }
+
+    /**
+     * A shard bulk was executed on its primary, from the start of its first item to the end of its last one.
+     */
+    public void onShardBulk(long nanos) {
+        shardBulkLatency.record(nanos);
+    }
+
+    /**
+     * The size of the sources a request carries: the document of an index request, the partial document and the upsert
+     * document of an update.
+     */
+    public static long sourceBytes(DocWriteRequest request) {
+        if (request instanceof IndexRequest) {
+            return length(((IndexRequest) request).source());
+        } else if (request instanceof UpdateRequest) {
+            final UpdateRequest updateRequest = (UpdateRequest) request;
+            long bytes = 0;
+            if (updateRequest.doc() != null) {
+                bytes += length(updateRequest.doc().source());
+            }
+            if (updateRequest.upsertRequest() != null) {
+                bytes += length(updateRequest.upsertRequest().source());
+            }
+            return bytes;
+        }
+        return 0;
+    }
+
+    private static long length(BytesReference source) {
+        return source == null ? 0 : source.length();
+    }
+
+    public AdvanceUpdateNodeStats.Stats stats() {
+        final long[] itemCounts = new long[DocWriteRequest.OpType.values().length];
+        for (DocWriteRequest.OpType opType : DocWriteRequest.OpType.values()) {
+            itemCounts[opType.ordinal()] = items.get(opType).count();
+        }
+        final long[] resultCounts = new long[DocWriteResponse.Result.values().length];
+        for (DocWriteResponse.Result result : DocWriteResponse.Result.values()) {
+            resultCounts[result.ordinal()] = results.get(result).count();
+        }
+        return new AdvanceUpdateNodeStats.Stats(itemCounts, resultCounts, conflictRetries.count(), scriptExecutions.count(),
+            bytesIn.count(), bytesOut.count(), translateLatency.snapshot(), shardBulkLatency.snapshot());
+    }
+}
@@ -0,0 +1,25 @@
+package org.elasticsearch.plugin.advance.update.stats;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+public class AdvanceUpdateStatsAction
+    extends Action<AdvanceUpdateStatsRequest, AdvanceUpdateStatsResponse, AdvanceUpdateStatsRequestBuilder> {
+
+    public static final AdvanceUpdateStatsAction INSTANCE = new AdvanceUpdateStatsAction();
+    public static final String NAME = "cluster:monitor/nodes/stats/advance_update";
+
+    private AdvanceUpdateStatsAction() {
+        super(NAME);
+    }
+
+    @Override
+    public AdvanceUpdateStatsResponse newResponse() {
+        return new AdvanceUpdateStatsResponse();
+    }
+
+    @Override
+    public AdvanceUpdateStatsRequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new AdvanceUpdateStatsRequestBuilder(client, this);
+    }
+}
@@ -0,0 +1,13 @@
+package org.elasticsearch.plugin.advance.update.stats;
+
+import org.elasticsearch.action.support.nodes.BaseNodesRequest;
+
+/**
+ * Asks the given nodes, all of them by default, for their advance update stats.
+ */
+public class AdvanceUpdateStatsRequest extends BaseNodesRequest<AdvanceUpdateStatsRequest> {
+
+    public AdvanceUpdateStatsRequest(String... nodesIds) {
+        super(nodesIds);
+    }
+}
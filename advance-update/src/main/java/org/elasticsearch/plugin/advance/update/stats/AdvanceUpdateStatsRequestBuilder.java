@@ -0,0 +1,12 @@
+package org.elasticsearch.plugin.advance.update.stats;
+
+import org.elasticsearch.action.support.nodes.NodesOperationRequestBuilder;
+import org.elasticsearch.client.ElasticsearchClient;
+
+public class AdvanceUpdateStatsRequestBuilder
+    extends NodesOperationRequestBuilder<AdvanceUpdateStatsRequest, AdvanceUpdateStatsResponse, AdvanceUpdateStatsRequestBuilder> {
+
+    public AdvanceUpdateStatsRequestBuilder(ElasticsearchClient client, AdvanceUpdateStatsAction action) {
+        super(client, action, new AdvanceUpdateStatsRequest());
+    }
+}
@@ -0,0 +1,51 @@
+package org.elasticsearch.plugin.advance.update.stats;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.nodes.BaseNodesResponse;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The advance update stats per node, rendered like the sections of the nodes stats API.
+ */
+public class AdvanceUpdateStatsResponse extends BaseNodesResponse<AdvanceUpdateNodeStats> implements ToXContent {
+
+    AdvanceUpdateStatsResponse() {
+    }
+
+    AdvanceUpdateStatsResponse(ClusterName clusterName, List<AdvanceUpdateNodeStats> nodes, List<FailedNodeException> failures) {
+        super(clusterName, nodes, failures);
+    }
+
+    @Override
+    protected List<AdvanceUpdateNodeStats> readNodesFrom(StreamInput in) throws IOException {
+        return in.readStreamableList(AdvanceUpdateNodeStats::new);
+    }
+
+    @Override
+    protected void writeNodesTo(StreamOutput out, List<AdvanceUpdateNodeStats> nodes) throws IOException {
+        out.writeStreamableList(nodes);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
+        builder.startObject("nodes");
+        for (AdvanceUpdateNodeStats nodeStats : getNodes()) {
+            builder.startObject(nodeStats.getNode().getId());
+            builder.field("name", nodeStats.getNode().getName());
+            builder.field("transport_address", nodeStats.getNode().getAddress().toString());
+            builder.field("host", nodeStats.getNode().getHostName());
+            builder.field("ip", nodeStats.getNode().getAddress());
+            builder.field("advance_update", nodeStats.getStats());
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+}
@@ -0,0 +1,105 @@
+package org.elasticsearch.plugin.advance.update.stats;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencies recorded in microseconds, from one microsecond to an hour with two significant digits, in the HdrHistogram
+ * percentiles aggregations use. Recording is lock free; latencies above an hour are recorded as an hour.
+ */
+public class LatencyHistogram {
+
+    static final double[] PERCENTILES = new double[] {50.0, 90.0, 99.0, 99.9};
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private final Histogram histogram = new ConcurrentHistogram(1, HIGHEST_TRACKABLE_MICROS, 2);
+
+    public void record(long nanos) {
+        histogram.recordValue(Math.max(1, Math.min(HIGHEST_TRACKABLE_MICROS, TimeUnit.NANOSECONDS.toMicros(nanos))));
+    }
+
+    public Snapshot snapshot() {
+        final Histogram copy = histogram.copy();
+        final long[] percentiles = new long[PERCENTILES.length];
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            percentiles[i] = copy.getValueAtPercentile(PERCENTILES[i]);
+        }
+        return new Snapshot(copy.getTotalCount(), percentiles, copy.getTotalCount() == 0 ? 0 : copy.getMaxValue());
+    }
+
+    /**
+     * The count and percentiles of the latencies recorded so far.
+     */
+    public static final class Snapshot implements Writeable, ToXContentObject {
+        private final long count;
+        private final long[] percentilesMicros;
+        private final long maxMicros;
+
+        Snapshot(long count, long[] percentilesMicros, long maxMicros) {
+            this.count = count;
+            this.percentilesMicros = percentilesMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        Snapshot(StreamInput in) throws IOException {
+            count = in.readVLong();
+            percentilesMicros = new long[PERCENTILES.length];
+            for (int i = 0; i < percentilesMicros.length; i++) {
+                percentilesMicros[i] = in.readVLong();
+            }
+            maxMicros = in.readVLong();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * The latency at the given percentile, which must be one of 50, 90, 99 or 99.9.
+         */
+        public long getPercentileMicros(double percentile) {
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                if (PERCENTILES[i] == percentile) {
+                    return percentilesMicros[i];
+                }
+            }
+            throw new IllegalArgumentException("percentile [" + percentile + "] is not tracked");
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVLong(count);
+            for (long percentile : percentilesMicros) {
+                out.writeVLong(percentile);
+            }
+            out.writeVLong(maxMicros);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
+            builder.startObject();
+            builder.field("count", count);
+            builder.startObject("percentiles_in_micros");
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                builder.field(Double.toString(PERCENTILES[i]), percentilesMicros[i]);
+            }
+            builder.endObject();
+            builder.field("max_in_micros", maxMicros);
+            return builder.endObject();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.elasticsearch.plugin.advance.update.stats;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.BaseNodeRequest;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.util.List;
+
+/**
+ * Collects the {@link AdvanceUpdateStats} of every requested node. Reading them only copies counters and histograms, so it
+ * runs on the management pool like the nodes stats API.
+ */
+public class TransportAdvanceUpdateStatsAction extends TransportNodesAction<AdvanceUpdateStatsRequest, AdvanceUpdateStatsResponse,
+    TransportAdvanceUpdateStatsAction.NodeRequest, AdvanceUpdateNodeStats> {
+
+    private final AdvanceUpdateStats stats;
+
+    @Inject
+    public TransportAdvanceUpdateStatsAction(Settings settings, ThreadPool threadPool, ClusterService clusterService,
+                                             TransportService transportService, ActionFilters actionFilters,
+                                             IndexNameExpressionResolver indexNameExpressionResolver, AdvanceUpdateStats stats) {
+        super(settings, AdvanceUpdateStatsAction.NAME, threadPool, clusterService, transportService, actionFilters,
+            indexNameExpressionResolver, AdvanceUpdateStatsRequest::new, NodeRequest::new, ThreadPool.Names.MANAGEMENT,
+            AdvanceUpdateNodeStats.class);
+        this.stats = stats;
+    }
+
+    @Override
+    protected AdvanceUpdateStatsResponse newResponse(AdvanceUpdateStatsRequest request, List<AdvanceUpdateNodeStats> responses,
+                                                     List<FailedNodeException> failures) {
+        return new AdvanceUpdateStatsResponse(clusterService.getClusterName(), responses, failures);
+    }
+
+    @Override
+    protected NodeRequest newNodeRequest(String nodeId, AdvanceUpdateStatsRequest request) {
+        return new NodeRequest(nodeId);
+    }
+
+    @Override
+    protected AdvanceUpdateNodeStats newNodeResponse() {
+        return new AdvanceUpdateNodeStats();
+    }
+
+    @Override
+    protected AdvanceUpdateNodeStats nodeOperation(NodeRequest request) {
+        return new AdvanceUpdateNodeStats(clusterService.localNode(), stats.stats());
+    }
+
+    @Override
+    protected boolean accumulateExceptions() {
+        return false;
+    }
+
+    public static class NodeRequest extends BaseNodeRequest {
+
+        public NodeRequest() {
+        }
+
+        NodeRequest(String nodeId) {
+            super(nodeId);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.elasticsearch.plugin.advance.update.bulk;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+public class IngestBulkResponseListenerTests extends ESTestCase {
+
+    /**
+     * A bulk whose second item fails in its pipeline: the other items go out as a modified request with their own item ids,
+     * and the merged response must report every item under its slot in the original request.
+     */
+    public void testMixedBulkWithFailedPreprocessing() {
+        AdvanceBulkRequest bulkRequest = new AdvanceBulkRequest();
+        bulkRequest.add(new IndexRequest("index", "type", "0").setPipeline("pipeline"));
+        bulkRequest.add(new IndexRequest("index", "type", "1").setPipeline("pipeline"));
+        bulkRequest.add(new IndexRequest("index", "type", "2"));
+
+        AdvanceTransportBulkAction.BulkRequestModifier modifier = new AdvanceTransportBulkAction.BulkRequestModifier(bulkRequest);
+        modifier.markItemAsFailed(1, new IllegalArgumentException("pipeline failed"));
+        AdvanceBulkRequest modifiedRequest = modifier.getBulkRequest();
+        assertEquals(2, modifiedRequest.requests().size());
+
+        AtomicReference<AdvanceBulkResponse> merged = new AtomicReference<>();
+        ActionListener<AdvanceBulkResponse> listener = modifier.wrapActionListenerIfNeeded(5, ActionListener.wrap(merged::set,
+            e -> { throw new AssertionError(e); }));
+
+        ShardId shardId = new ShardId("index", "_na_", 0);
+        AdvanceBulkItemResponse[] items = new AdvanceBulkItemResponse[modifiedRequest.requests().size()];
+        for (int i = 0; i < items.length; i++) {
+            DocWriteRequest request = modifiedRequest.requests().get(i);
+            items[i] = new AdvanceBulkItemResponse(i, DocWriteRequest.OpType.INDEX,
+                new IndexResponse(shardId, request.type(), request.id(), 1, true));
+        }
+        listener.onResponse(new AdvanceBulkResponse(items, 10));
+
+        AdvanceBulkItemResponse[] mergedItems = merged.get().getItems();
+        assertEquals(3, mergedItems.length);
+        for (int i = 0; i < mergedItems.length; i++) {
+            assertEquals(i, mergedItems[i].getItemId());
+            assertEquals(Integer.toString(i), mergedItems[i].getId());
+        }
+        assertFalse(mergedItems[0].isFailed());
+        assertTrue(mergedItems[1].isFailed());
+        assertFalse(mergedItems[2].isFailed());
+        assertEquals(5, merged.get().getIngestTookInMillis());
+    }
+}